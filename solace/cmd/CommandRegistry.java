@@ -82,7 +82,9 @@ public class CommandRegistry {
       new ShopList(),
       new ShopSell(),
       new Inspect(),
-      new Set()
+      new Set(),
+      new Metrics(),
+      new Clock()
     ).forEach(this::add);
 
     // Add scripted commands
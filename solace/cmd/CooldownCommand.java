@@ -332,9 +332,10 @@ public abstract class CooldownCommand extends AbstractCommand {
         connection.skipNextPrompt();
       }
     } else if (player.isFighting() && !target.isFighting()) {
-      Battle playerBattle = BattleManager.getBattleFor(player);
-      playerBattle.add(target);
-      playerBattle.setAttacking(target, player);
+      if (!BattleManager.join(player, target)) {
+        // The player's battle ended since they were marked as fighting
+        BattleManager.initiate(player, target);
+      }
     }
   }
 
@@ -356,7 +357,7 @@ public abstract class CooldownCommand extends AbstractCommand {
           return;
         }
 
-        String eventName = String.format("%s casting %s", player.getName(), getName());
+        String eventName = String.format("cast: %s by %s", getName(), player.getName());
         player.beginCasting(Clock.getInstance().schedule(eventName, castTime, () -> {
           try {
             player.finishCasting();
@@ -407,9 +408,12 @@ public abstract class CooldownCommand extends AbstractCommand {
     Player target = givenTarget;
 
     if (target == null) {
-      if (player.isFighting()) {
-        target = BattleManager.getBattleFor(player).getTargetFor(player);
-      } else {
+      // The battle may have ended since the player was marked as fighting
+      Battle battle = player.isFighting() ? BattleManager.getBattleFor(player) : null;
+      if (battle != null) {
+        target = battle.getTargetFor(player);
+      }
+      if (target == null) {
         throw new InvalidTargetException(String.format(
           "Who would you like to attack with {m}%s{x}?",
           getDisplayName()));
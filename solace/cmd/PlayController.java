@@ -34,7 +34,7 @@ public class PlayController implements Controller {
       .sendMessage(ch.getName() + " has entered the game.", character);
 
     // Place the player in the world
-    Game.getActiveCharacters().add(ch);
+    Game.addActiveCharacter(ch);
     ch.sendln("\n\rNow playing as {y}" + ch.getName() + "{x}, welcome!\n\r");
 
     // Describe the room to the player
@@ -0,0 +1,127 @@
+package solace.cmd.admin;
+
+import solace.cmd.AbstractCommand;
+import solace.game.Player;
+import solace.util.Metrics;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * Admin command that displays the state of the game clock: tick timing,
+ * overruns, lag, deferred events, the catch up policy and the tick budget.
+ * The policy can be changed with <code>clock catch-up [burst|compress|skip]</code>
+ * and the budget with <code>clock budget [ms]</code>.
+ *
+ * <code>clock events [count] [total|p99|rate|live]</code> lists the kinds of
+ * events that cost the most, by total run time (the default), 99th percentile
+ * run time, fires per minute or number scheduled.
+ * @author Ryan Sandor Richards
+ */
+public class Clock extends AbstractCommand {
+  public Clock() {
+    super("clock");
+  }
+
+  @Override
+  public boolean hasCommand(Player player) {
+    return player.getAccount().isAdmin();
+  }
+
+  /**
+   * Lists the kinds of clock events that cost the most.
+   * @param player Player to show the list to.
+   * @param params Command parameters.
+   */
+  private void events(Player player, String[] params) {
+    int count = 10;
+    String sort = params.length > 3 ? params[3] : "total";
+    if (params.length > 2) {
+      try {
+        count = Integer.parseInt(params[2]);
+      } catch (NumberFormatException e) {
+        sort = params[2];
+      }
+    }
+
+    List<solace.util.Clock.Profile> profiles = solace.util.Clock.getProfiles();
+    Comparator<solace.util.Clock.Profile> order;
+    if (sort.equals("p99")) {
+      order = Comparator.comparingLong(solace.util.Clock.Profile::getP99Micros);
+    } else if (sort.equals("rate")) {
+      order = Comparator.comparingLong(solace.util.Clock.Profile::getFiresPerMinute);
+    } else if (sort.equals("live")) {
+      order = Comparator.comparingLong(solace.util.Clock.Profile::getLive);
+    } else if (sort.equals("total")) {
+      order = null;
+    } else {
+      player.sendln("Usage: clock events [count] [total|p99|rate|live]");
+      return;
+    }
+    if (order != null) {
+      profiles.sort(order.reversed());
+    }
+
+    StringBuilder buffer = new StringBuilder();
+    buffer.append(String.format("{c}%-16s %8s %8s %10s %10s %8s %8s %s{x}\n\r",
+      "kind", "live", "fires/m", "fires", "total ms", "p99 us", "deferred",
+      "priority"));
+    profiles = profiles.subList(0, Math.min(count, profiles.size()));
+    for (solace.util.Clock.Profile p : profiles) {
+      buffer.append(String.format("%-16s %8d %8d %10d %10d %8d %8d %s\n\r",
+        p.getKind(), p.getLive(), p.getFiresPerMinute(), p.getFires(),
+        p.getTotalMicros() / 1000, p.getP99Micros(), p.getDeferred(),
+        p.getPriority().toString().toLowerCase()));
+    }
+    player.sendln(buffer.toString());
+  }
+
+  @Override
+  public void run(Player player, String[] params) {
+    solace.util.Clock clock = solace.util.Clock.getInstance();
+
+    if (params.length > 1 && params[1].equals("events")) {
+      events(player, params);
+      return;
+    }
+
+    if (params.length > 1) {
+      if (params.length < 3 ||
+        !(params[1].equals("catch-up") || params[1].equals("budget")))
+      {
+        player.sendln("Usage: clock [catch-up <burst|compress|skip> | " +
+          "budget <ms> | events [count] [total|p99|rate|live]]");
+        return;
+      }
+      if (params[1].equals("budget")) {
+        try {
+          clock.setBudgetMillis(Long.parseLong(params[2]));
+          player.sendln("Clock budget set to {g}" + clock.getBudgetMillis() + "ms{x}.");
+        } catch (NumberFormatException e) {
+          player.sendln("Invalid budget '{r}" + params[2] + "{x}'.");
+        }
+        return;
+      }
+      try {
+        clock.setCatchUpPolicy(params[2]);
+        player.sendln("Clock catch up policy set to '{g}" + params[2] + "{x}'.");
+      } catch (IllegalArgumentException e) {
+        player.sendln("Unknown catch up policy '{r}" + params[2] + "{x}'.");
+      }
+      return;
+    }
+
+    StringBuilder buffer = new StringBuilder();
+    buffer.append(String.format("{c}%-32s{x} %dms\n\r", "tick", clock.getTickMillis()));
+    buffer.append(String.format("{c}%-32s{x} %s\n\r", "catch-up", clock.getCatchUpPolicy()));
+    buffer.append(String.format("{c}%-32s{x} %dms\n\r", "budget", clock.getBudgetMillis()));
+    SortedMap<String, String> metrics = Metrics.snapshot("clock.");
+    metrics.forEach((name, value) -> {
+      if (!name.startsWith("clock.event.")) {
+        buffer.append(String.format("{c}%-32s{x} %s\n\r", name, value));
+      }
+    });
+    player.sendln(buffer.toString());
+  }
+}
@@ -0,0 +1,36 @@
+package solace.cmd.admin;
+
+import solace.cmd.AbstractCommand;
+import solace.game.Player;
+
+import java.util.SortedMap;
+
+/**
+ * Admin command that displays the engine's runtime metrics. An optional name
+ * prefix can be given to limit the output (e.g. <code>metrics net.</code>).
+ * @author Ryan Sandor Richards
+ */
+public class Metrics extends AbstractCommand {
+  public Metrics() {
+    super("metrics");
+  }
+
+  @Override
+  public boolean hasCommand(Player player) {
+    return player.getAccount().isAdmin();
+  }
+
+  @Override
+  public void run(Player player, String[] params) {
+    String prefix = params.length > 1 ? params[1] : "";
+    SortedMap<String, String> metrics = solace.util.Metrics.snapshot(prefix);
+    if (metrics.isEmpty()) {
+      player.sendln("No metrics found with prefix '{g}" + prefix + "{x}'.");
+      return;
+    }
+    StringBuilder buffer = new StringBuilder();
+    metrics.forEach((name, value) ->
+      buffer.append(String.format("{c}%-32s{x} %s\n\r", name, value)));
+    player.sendln(buffer.toString());
+  }
+}
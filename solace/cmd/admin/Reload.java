@@ -168,7 +168,7 @@ public class Reload extends CompositeCommand {
           Connection con = ch.getConnection();
           con.sendln("{y}Areas reloaded, thanks for your patience!{x}\n");
           con.setIgnoreInput(false);
-          con.send(con.getStateController().getPrompt());
+          con.writePrompt();
         }
       }
     }
@@ -65,6 +65,13 @@ public class Set extends AbstractCommand {
           }
           ((solace.game.Character) target).setRace(Races.getInstance().get(value));
           break;
+        case "compression":
+          // Sets the MCCP compression level (0-9) for the target's connection
+          if (target.getConnection() == null) {
+            throw new Exception("Target has no connection.");
+          }
+          target.getConnection().setCompressionLevel(Integer.parseInt(value));
+          break;
         case "immortal":
           // Player immortality can only be set by immortals, it prevents all
           // damage to the player who is currently flagged as such. This shouldn't
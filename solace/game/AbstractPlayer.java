@@ -7,6 +7,7 @@ import solace.game.effect.ScriptedPlayerEffect;
 import solace.script.PassiveNotFoundException;
 import solace.script.ScriptedPassives;
 import solace.util.Clock;
+import solace.util.GameTime;
 import solace.util.Log;
 import solace.io.Buffs;
 import solace.net.Connection;
@@ -19,10 +20,10 @@ import java.util.*;
  */
 public abstract class AbstractPlayer implements Player {
   /**
-   * Timer for tracking cooldown durations.
+   * Timer for tracking cooldown durations, measured in {@link GameTime}.
    */
   protected class CooldownTimer {
-    Date usedAt;
+    long usedAt;
     long duration;
 
     /**
@@ -30,7 +31,7 @@ public abstract class AbstractPlayer implements Player {
      * @param d Duration in seconds when the skill will be available.
      */
     CooldownTimer(int d) {
-      usedAt = new Date();
+      usedAt = GameTime.millis();
       duration = (long)d;
     }
 
@@ -38,8 +39,7 @@ public abstract class AbstractPlayer implements Player {
      * @return The time remaining, in seconds, until the cool down is complete.
      */
     int getTimeRemaining() {
-      long elapsed = new Date().getTime() - usedAt.getTime();
-      elapsed /= 1000;
+      long elapsed = (GameTime.millis() - usedAt) / 1000;
       return (int)Math.max(0, duration - elapsed);
     }
   }
@@ -69,6 +69,7 @@ public abstract class AbstractPlayer implements Player {
   public abstract void die(Player killer);
   public abstract boolean isMobile();
   public abstract void sendMessage(String s);
+  public void sendRoomMessage(String s) { sendMessage(s); }
   public abstract void send(String msg);
   public abstract void sendln(String msg);
   public abstract void sendln(String... lines);
@@ -84,6 +85,7 @@ public abstract class AbstractPlayer implements Player {
   public abstract Connection getConnection();
   public abstract int getWeaponProficiency(String name);
   public abstract Set<DamageType> getBaseAttackDamageTypes();
+  public abstract long getBaseAttackDamageTypeMask();
 
   /**
    * Sets the passives and cooldowns for this character. This method should be
@@ -373,13 +375,15 @@ public abstract class AbstractPlayer implements Player {
     onGCDCooldown = true;
     // TODO GCD cooldowns should really be independent of the global clock...
     Clock.getInstance().schedule(
-      String.format("GCD for %s", getName()),
+      String.format("gcd: %s", getName()),
       2, () -> onGCDCooldown = false);
   }
 
   @Override
   public void setOnCooldown(String name, int duration) {
-    Log.trace(String.format("Setting cooldown at %d for %s", duration, name));
+    if (Log.isTraceEnabled()) {
+      Log.trace(String.format("Setting cooldown at %d for %s", duration, name));
+    }
     cooldownTimers.put(name, new CooldownTimer(duration));
   }
 
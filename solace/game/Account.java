@@ -198,10 +198,22 @@ public class Account
    */
   public void save()
     throws IOException
+  {
+    save(getXML());
+  }
+
+  /**
+   * Saves XML already generated for the account (see {@link #getXML()}) to
+   * disk.
+   * @param xml XML representing the account.
+   * @throws IOException if the file was unable to be written to disk.
+   */
+  public void save(String xml)
+    throws IOException
   {
     File file = new File(Account.accountPath(name));
     PrintWriter out = new PrintWriter(new FileWriter(file));
-    out.print(Strings.prettyXML(getXML()));
+    out.print(Strings.prettyXML(xml));
     out.close();
   }
 
@@ -20,14 +20,80 @@ public class Battle {
    */
   private static final double CRITICAL_CHANCE = 0.05;
 
+  /**
+   * A message sent to a participant at the end of a round. The message's
+   * format is split into its literal parts once, when the template is
+   * created, and rounds append the parts and the values in between directly
+   * to the participant's message buffer rather than formatting a new string.
+   * A format may contain one <code>%s</code> (the name of the other player)
+   * and up to two <code>%d</code>s, which take the numbers in the order they
+   * are given.
+   */
+  static class MessageTemplate {
+    private final String[] parts;
+    private final char[] values;
+
+    /**
+     * Creates a new message template.
+     * @param format Format for the message.
+     */
+    MessageTemplate(String format) {
+      List<String> p = new ArrayList<>();
+      StringBuilder v = new StringBuilder();
+      int start = 0;
+      for (int i = format.indexOf('%'); i >= 0; i = format.indexOf('%', start)) {
+        p.add(format.substring(start, i));
+        v.append(format.charAt(i + 1));
+        start = i + 2;
+      }
+      p.add(format.substring(start));
+      parts = p.toArray(new String[p.size()]);
+      values = v.toString().toCharArray();
+    }
+
+    /**
+     * Appends the message to a buffer.
+     * @param buffer Buffer to append to.
+     * @param name Name of the other player.
+     * @param a First number.
+     * @param b Second number.
+     */
+    void appendTo(StringBuilder buffer, String name, int a, int b) {
+      int numbers = 0;
+      for (int i = 0; i < values.length; i++) {
+        buffer.append(parts[i]);
+        if (values[i] == 's') {
+          buffer.append(name);
+        } else {
+          buffer.append(numbers++ == 0 ? a : b);
+        }
+      }
+      buffer.append(parts[values.length]);
+    }
+  }
+
+  private static final MessageTemplate ATTACKER_MISS =
+    new MessageTemplate("Your attack missed %s.\n\r");
+  private static final MessageTemplate TARGET_MISS =
+    new MessageTemplate("%s {g}missed{x} you completely!\n\r");
+  private static final MessageTemplate ATTACKER_HIT =
+    new MessageTemplate("[{g}%d{x}] You hit %s!\n\r");
+  private static final MessageTemplate TARGET_HIT =
+    new MessageTemplate("<{r}%d{x}> %s hit you!\n\r");
+  private static final MessageTemplate ATTACKER_HITS =
+    new MessageTemplate("[{g}%d{x}] You hit %s {y}%d{x} times!\n\r");
+  private static final MessageTemplate TARGET_HITS =
+    new MessageTemplate("<{r}%d{x}> %s hit you {y}%d{x} times!\n\r");
+
   private final Set<Player> participants = Collections.synchronizedSet(
-    new HashSet<Player>()
+    new LinkedHashSet<Player>()
   );
   private final Hashtable<Player, Player> targets = new Hashtable<>();
   private final Multimap<Player, Player> attackers = Multimaps.synchronizedListMultimap(
     ArrayListMultimap.<Player, Player> create()
   );
-  private Hashtable<Player, StringBuffer> messageBuffers = new Hashtable<>();
+  private final Map<Player, StringBuilder> messageBuffers = new LinkedHashMap<>();
+  private SplittableRandom random = null;
 
   /**
    * Creates a new, empty, battle.
@@ -41,7 +107,8 @@ public class Battle {
    */
   public synchronized void add(Player p) {
     participants.add(p);
-    messageBuffers.put(p, new StringBuffer());
+    messageBuffers.put(p, new StringBuilder());
+    BattleManager.indexPlayer(p, this);
   }
 
   /**
@@ -53,9 +120,19 @@ public class Battle {
     participants.remove(p);
     attackers.removeAll(p);
     targets.remove(p);
+    BattleManager.unindexPlayer(p, this);
     p.setStanding(); // Removes the "fighting" state from the player
   }
 
+  /**
+   * Seeds the battle, so that its rounds roll with their own generator and
+   * can be replayed.
+   * @param seed Seed for the battle's rounds.
+   */
+  public synchronized void seed(long seed) {
+    random = new SplittableRandom(seed);
+  }
+
   /**
    * Sets who a given participant is attacking.
    * @param a The attacker.
@@ -266,20 +343,68 @@ public class Battle {
     return (int)damage;
   }
 
+  /**
+   * Copies a message buffer without its leading and trailing whitespace, as
+   * <code>buffer.toString().trim()</code> does without the intermediate copy.
+   * @param buffer Buffer to copy.
+   * @return The trimmed message.
+   */
+  private static String trimmed(StringBuilder buffer) {
+    int start = 0;
+    int end = buffer.length();
+    while (start < end && buffer.charAt(start) <= ' ') start++;
+    while (end > start && buffer.charAt(end - 1) <= ' ') end--;
+    return buffer.substring(start, end);
+  }
+
   /**
    * Executes a round of the battle.
    */
   public synchronized void round() {
+    List<Player> dead = fight();
+    finish(dead);
+    for (Player p : dead) {
+      p.die(null);
+    }
+  }
+
+  /**
+   * Executes the attacks of a round of the battle. The round's messages are
+   * kept in the participants' message buffers until the round is finished
+   * with {@link #finish(List)}. A round only touches the battle and its
+   * participants, so the rounds of battles that share no participants can be
+   * fought at the same time. The rolls of a seeded battle are made with the
+   * battle's own generator.
+   * @return The participants that died, in the order they joined the battle.
+   */
+  synchronized List<Player> fight() {
+    if (random == null) {
+      return fightRound();
+    }
+    SplittableRandom previous = Roll.use(random);
+    try {
+      return fightRound();
+    } finally {
+      Roll.use(previous);
+    }
+  }
+
+  /**
+   * Fights a round of the battle (see {@link #fight()}).
+   */
+  private List<Player> fightRound() {
     Log.trace("Battle: Synchronizing participants.");
     for (Player attacker : participants) {
       Player target = targets.get(attacker);
       if (target == null) continue;
 
-      Log.trace(String.format(
-        "Battle: %s attacks %s.", attacker.getName(), target.getName()));
+      if (Log.isTraceEnabled()) {
+        Log.trace(String.format(
+          "Battle: %s attacks %s.", attacker.getName(), target.getName()));
+      }
 
       Damage<Player> damage = new Damage<>(0.0, target, attacker);
-      attacker.getBaseAttackDamageTypes().forEach(damage::addType);
+      damage.addTypes(attacker.getBaseAttackDamageTypeMask());
       int numberOfAttacks = attacker.hasBuff("stun") ? 0 : attacker.getNumberOfAttacks();
       int hits = 0;
 
@@ -298,41 +423,49 @@ public class Battle {
       }
 
       int actualDamage = target.applyDamage(damage);
+      StringBuilder attackerBuffer = messageBuffers.get(attacker);
+      StringBuilder targetBuffer = messageBuffers.get(target);
 
       if (hits == 0) {
-        messageBuffers.get(attacker).append(String.format(
-          "Your attack missed %s.\n\r", target.getName()));
-        messageBuffers.get(target).append(String.format(
-          "%s {g}missed{x} you completely!\n\r", attacker.getName()));
+        ATTACKER_MISS.appendTo(attackerBuffer, target.getName(), 0, 0);
+        TARGET_MISS.appendTo(targetBuffer, attacker.getName(), 0, 0);
       } else if (hits == 1) {
-        messageBuffers.get(attacker).append(String.format(
-          "[{g}%d{x}] You hit %s!\n\r", actualDamage, target.getName()));
-        messageBuffers.get(target).append(String.format(
-          "<{r}%d{x}> %s hit you!\n\r", actualDamage, attacker.getName()));
+        ATTACKER_HIT.appendTo(attackerBuffer, target.getName(), actualDamage, 0);
+        TARGET_HIT.appendTo(targetBuffer, attacker.getName(), actualDamage, 0);
       } else {
-        messageBuffers.get(attacker).append(String.format(
-          "[{g}%d{x}] You hit %s {y}%d{x} times!\n\r", actualDamage, target.getName(), hits));
-        messageBuffers.get(target).append(String.format(
-          "<{r}%d{x}> %s hit you {y}%d{x} times!\n\r", actualDamage, attacker.getName(), hits));
+        ATTACKER_HITS.appendTo(attackerBuffer, target.getName(), actualDamage, hits);
+        TARGET_HITS.appendTo(targetBuffer, attacker.getName(), actualDamage, hits);
       }
     }
 
-    Set<Player> dead = new HashSet<>();
+    List<Player> dead = Collections.emptyList();
     for (Player p : participants) {
-      if (p.isDead()) dead.add(p);
+      if (!p.isDead()) continue;
+      if (dead.isEmpty()) dead = new ArrayList<>();
+      dead.add(p);
     }
 
+    return dead;
+  }
+
+  /**
+   * Finishes a round of the battle by sending the round's messages to the
+   * participants and removing the participants that died from the battle.
+   * Dying affects more than the battle (the room, the mobile manager, and so
+   * on) so it is left to the caller.
+   * @param dead Participants that died during the round.
+   */
+  synchronized void finish(List<Player> dead) {
     Log.trace("Cleaning up and sending messages.");
 
-    for (Player p : messageBuffers.keySet()) {
-      StringBuffer messageBuffer = messageBuffers.get(p);
-      p.sendMessage(messageBuffers.get(p).toString().trim());
-      messageBuffer.setLength(0);
+    for (Map.Entry<Player, StringBuilder> entry : messageBuffers.entrySet()) {
+      StringBuilder buffer = entry.getValue();
+      entry.getKey().sendMessage(trimmed(buffer));
+      buffer.setLength(0);
     }
 
     for (Player p : dead) {
       remove(p);
-      p.die(null);
     }
   }
 }
@@ -1,17 +1,63 @@
 package solace.game;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import solace.io.Config;
 import solace.util.*;
 
 /**
  * Manages battles between players and mobiles.
+ *
+ * The battle each player is fighting in is kept in an index, updated as
+ * players are added to and removed from battles (and when battles end), so
+ * that finding a player's battle takes constant time and does not lock the
+ * set of battles. Lookups happen for every prompt, cooldown and player
+ * cleanup.
+ *
+ * Each round is fought in two phases. First the attacks of every battle are
+ * fought, in parallel on a work stealing pool of
+ * <code>game.battle.threads</code> threads (see {@link Battle#fight()}).
+ * Battles that share a participant are grouped and fought one after another
+ * by the same thread, so a player is only ever touched by one thread during
+ * the round. Then, on the clock thread and in the order the battles began,
+ * each battle's messages are sent, the participants that died are killed and
+ * finished battles are cleaned up. Messages and deaths reach outside of a
+ * battle (into connections, rooms, the mobile manager, and so on) so applying
+ * them in one deterministic pass keeps battles independent during the
+ * parallel phase. The set of battles is locked for the whole round, and
+ * players only join battles through the manager, so no battle gains a
+ * participant while a round is being fought. In single writer mode rounds
+ * are fought one battle at a time.
+ *
+ * When <code>game.battle.seed</code> is set each battle rolls its rounds
+ * with its own generator, seeded with the configured seed plus the number of
+ * battles begun before it, so that a battle can be replayed from its seed.
+ *
  * @author Ryan Sandor Richards
  */
 public class BattleManager {
+  /**
+   * Number of clock ticks between battle rounds.
+   */
+  public static final int ROUND_TICKS = 2;
+
   static Set<Battle> battles = Collections.synchronizedSet(
-    new HashSet<Battle>()
+    new LinkedHashSet<Battle>()
   );
+  private static final Map<Player, Battle> index = new ConcurrentHashMap<>();
   static Clock.Event roundEvent = null;
+  private static ForkJoinPool pool = null;
+  private static Long seed = null;
+  private static long seeded = 0;
+  private static final Metrics.Histogram roundTime =
+    Metrics.histogram("battle.round.us");
+  static {
+    Metrics.gauge("battle.active", battles::size);
+  }
 
   /**
    * Finds the battle in which the current player is engaged.
@@ -19,15 +65,51 @@ public class BattleManager {
    * @return        The battle if one was found, null otherwise.
    */
   public static Battle getBattleFor(Player player) {
-    // TODO This will be far too slow at scale, refactor later...
-    synchronized(battles) {
-      for (Battle b : battles) {
-        if (b.getParticipants().contains(player)) {
-          return b;
-        }
-      }
+    return index.get(player);
+  }
+
+  /**
+   * Records that a player has joined a battle.
+   * @param player Player that joined.
+   * @param battle Battle the player joined.
+   */
+  static void indexPlayer(Player player, Battle battle) {
+    index.put(player, battle);
+  }
+
+  /**
+   * Records that a player has left a battle. Has no effect if the player has
+   * since joined another battle.
+   * @param player Player that left.
+   * @param battle Battle the player left.
+   */
+  static void unindexPlayer(Player player, Battle battle) {
+    index.remove(player, battle);
+  }
+
+  /**
+   * Sets the number of threads that fight the rounds of battles.
+   * @param threads Number of threads, 0 for one per processor, or 1 to fight
+   *   battles one at a time on the calling thread.
+   */
+  public static synchronized void setThreads(int threads) {
+    if (threads < 1) {
+      threads = Runtime.getRuntime().availableProcessors();
+    }
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+    if (threads > 1) {
+      final AtomicInteger count = new AtomicInteger();
+      pool = new ForkJoinPool(threads, p -> {
+        ForkJoinWorkerThread thread =
+          ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+        thread.setName("solace-battle-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }, null, false);
     }
-    return null;
   }
 
   /**
@@ -36,21 +118,28 @@ public class BattleManager {
   public static void start() {
     if (roundEvent != null) { return; }
     Log.info("Starting battle manager");
-    roundEvent = Clock.getInstance().interval("battle-round", 2, new Runnable() {
+    int threads = GameLoop.isEnabled() ? 1 :
+      Integer.parseInt(Config.get("game.battle.threads", "0"));
+    setThreads(threads);
+    String seedConfig = Config.get("game.battle.seed", "");
+    setSeed(seedConfig.isEmpty() ? null : Long.parseLong(seedConfig));
+    roundEvent = Clock.getInstance().interval("battle-round", ROUND_TICKS, new Runnable() {
       public void run() { BattleManager.round(); }
     });
   }
 
   /**
-   * Performs a round for each battle being managed.
+   * Performs a round for each battle being managed. Run by the game clock
+   * every other tick.
    */
-  protected static void round() {
+  public static void round() {
     Log.trace("Battle Round");
+    long start = System.nanoTime();
+    List<Battle> active = new ArrayList<>();
     synchronized(battles) {
       Iterator<Battle> iterator = battles.iterator();
       while (iterator.hasNext()) {
         Battle b = iterator.next();
-        Log.trace("Battle round for battle: " + b);
 
         // Check if the battle is over before we attempt another round
         // This can happen with the flee command, admin intervention, etc.
@@ -59,18 +148,138 @@ public class BattleManager {
           cleanup(b);
           continue;
         }
+        active.add(b);
+      }
 
-        // Perform a round of the battle
-        b.round();
+      // Fight each battle, in parallel if there is a pool
+      List<List<Player>> deaths = fight(active);
+
+      // Send messages, apply deaths and clean up finished battles, in the
+      // order the battles began, once every battle has been fought
+      for (int i = 0; i < active.size(); i++) {
+        Battle b = active.get(i);
+        List<Player> dead = deaths.get(i);
+        finishSafely(b, dead);
+        for (Player p : dead) {
+          p.die(null);
+        }
 
         // Check to see if the battle is over after the last round.
         // This happens when someone dies, etc.
         if (b.isOver()) {
-          iterator.remove();
+          battles.remove(b);
           cleanup(b);
         }
       }
     }
+    roundTime.record((System.nanoTime() - start) / 1000);
+  }
+
+  /**
+   * Fights a round of each of the given battles.
+   * @param active Battles to fight.
+   * @return The participants that died in each battle.
+   */
+  private static List<List<Player>> fight(List<Battle> active) {
+    List<List<Player>> deaths = new ArrayList<>(
+      Collections.<List<Player>>nCopies(active.size(), null));
+    ForkJoinPool p = pool;
+    List<List<Integer>> groups = p == null ? null : group(active);
+    if (groups == null || groups.size() < 2) {
+      for (int i = 0; i < active.size(); i++) {
+        deaths.set(i, fightSafely(active.get(i)));
+      }
+      return deaths;
+    }
+
+    // Each task only sets the deaths of its own group's battles
+    List<ForkJoinTask<?>> tasks = new ArrayList<>(groups.size());
+    for (List<Integer> group : groups) {
+      tasks.add(p.submit(() -> {
+        for (int i : group) {
+          deaths.set(i, fightSafely(active.get(i)));
+        }
+      }));
+    }
+    for (ForkJoinTask<?> task : tasks) {
+      task.join();
+    }
+    return deaths;
+  }
+
+  /**
+   * Groups battles so that battles sharing a participant are in the same
+   * group, and no two groups share a participant.
+   * @param active Battles to group.
+   * @return The indexes of the battles in each group, in the order the
+   *   battles began.
+   */
+  static List<List<Integer>> group(List<Battle> active) {
+    int[] parent = new int[active.size()];
+    Map<Player, Integer> seen = new HashMap<>();
+    for (int i = 0; i < active.size(); i++) {
+      parent[i] = i;
+      Battle b = active.get(i);
+      synchronized(b) {
+        for (Player p : b.getParticipants()) {
+          Integer j = seen.putIfAbsent(p, i);
+          if (j != null) {
+            parent[root(parent, i)] = root(parent, j);
+          }
+        }
+      }
+    }
+
+    Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < active.size(); i++) {
+      groups.computeIfAbsent(root(parent, i), k -> new ArrayList<>()).add(i);
+    }
+    return new ArrayList<>(groups.values());
+  }
+
+  /**
+   * Finds the battle at the root of a battle's group.
+   */
+  private static int root(int[] parent, int i) {
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
+  /**
+   * Fights a round of a battle, logging any error so that one broken battle
+   * does not stop the others.
+   * @param b Battle to fight.
+   * @return The participants that died.
+   */
+  private static List<Player> fightSafely(Battle b) {
+    if (Log.isTraceEnabled()) {
+      Log.trace("Battle round for battle: " + b);
+    }
+    try {
+      return b.fight();
+    } catch (Throwable t) {
+      Log.error("Error in battle round: " + t.getMessage());
+      t.printStackTrace();
+      return Collections.emptyList();
+    }
+  }
+
+  /**
+   * Finishes a round of a battle, logging any error so that one broken
+   * battle does not stop the others.
+   * @param b Battle to finish.
+   * @param dead Participants that died during the round.
+   */
+  private static void finishSafely(Battle b, List<Player> dead) {
+    try {
+      b.finish(dead);
+    } catch (Throwable t) {
+      Log.error("Error finishing battle round: " + t.getMessage());
+      t.printStackTrace();
+    }
   }
 
   /**
@@ -78,6 +287,7 @@ public class BattleManager {
    */
   protected static void cleanup(Battle b) {
     for (Player p : b.getParticipants()) {
+      unindexPlayer(p, b);
       p.setStanding();
     }
   }
@@ -90,6 +300,41 @@ public class BattleManager {
     Log.info("Stopping battle manager");
     roundEvent.cancel();
     roundEvent = null;
+    setThreads(1);
+  }
+
+  /**
+   * Sets the seed for the rounds of new battles.
+   * @param s Seed for the first new battle (the battles after it use the
+   *   following seeds), or null for battles to roll with the thread's
+   *   generator.
+   */
+  public static void setSeed(Long s) {
+    synchronized(battles) {
+      seed = s;
+      seeded = 0;
+    }
+  }
+
+  /**
+   * Adds a target to the battle of the player attacking it.
+   * @param attacker Player attacking the target.
+   * @param target Target of the attack.
+   * @return True if the target joined the attacker's battle (or was already
+   *   in it), false if the attacker is not in a battle.
+   */
+  public static boolean join(Player attacker, Player target) {
+    synchronized(battles) {
+      Battle battle = getBattleFor(attacker);
+      if (battle == null || battle.isOver()) {
+        return false;
+      }
+      if (getBattleFor(target) == null) {
+        battle.add(target);
+        battle.setAttacking(target, attacker);
+      }
+      return true;
+    }
   }
 
   /**
@@ -105,6 +350,15 @@ public class BattleManager {
         target.getName()
       ));
 
+      // Never put a player in two battles
+      Battle existing = getBattleFor(target);
+      if (existing != null && !existing.isOver()) {
+        return;
+      }
+      if (join(attacker, target)) {
+        return;
+      }
+
       attacker.resetVisibilityOnAction("attack");
       target.resetVisibilityOnAction("defend");
 
@@ -114,6 +368,12 @@ public class BattleManager {
 
       // Create the new battle
       Battle battle = new Battle();
+      if (seed != null) {
+        long battleSeed = seed + seeded++;
+        battle.seed(battleSeed);
+        Log.debug(String.format("Battle between %s and %s seeded with %d.",
+          attacker.getName(), target.getName(), battleSeed));
+      }
       battle.add(attacker);
       battle.add(target);
       battle.setAttacking(attacker, target);
@@ -143,6 +403,7 @@ public class BattleManager {
       // Attacker always gets the first shots
       battle.round();
       if (battle.isOver()) {
+        battles.remove(battle);
         cleanup(battle);
         return;
       }
@@ -1,7 +1,7 @@
 package solace.game;
 
 import solace.io.Buffs;
-import java.util.Date;
+import solace.util.GameTime;
 
 /**
  * Represents a temporary passive ability that affects the player in some way.
@@ -16,6 +16,9 @@ import java.util.Date;
  * As is noted above a buff may affect a player in a positive or negative way.
  * When a buff affects a player in a negative way it is called a "debuff".
  *
+ * Buffs are checked constantly during combat, so their durations are measured
+ * with the cached {@link GameTime} rather than by reading the system clock.
+ *
  * @author Ryan Sandor Richards
  */
 public class Buff {
@@ -24,7 +27,7 @@ public class Buff {
 
   String name;
   int level;
-  Date expiry;
+  long expiry;
   boolean indefinite = false;
 
   /**
@@ -37,7 +40,7 @@ public class Buff {
     if (s < 0) {
       indefinite = true;
     }
-    expiry = new Date(new Date().getTime() + 1000 * s);
+    expiry = GameTime.millis() + 1000L * s;
   }
 
   /**
@@ -108,7 +111,7 @@ public class Buff {
     if (indefinite) {
       return false;
     }
-    return new Date().after(expiry);
+    return GameTime.millis() > expiry;
   }
 
   /**
@@ -118,7 +121,7 @@ public class Buff {
    */
   public void setExpired() {
     indefinite = false;
-    expiry = new Date(new Date().getTime() - 1000 * 86400);
+    expiry = GameTime.millis() - 1000L * 86400;
   }
 
   /**
@@ -128,8 +131,7 @@ public class Buff {
   public int getTimeRemaining() {
     if (indefinite) return TIME_REMAINING_INDEFINATE;
     if (hasExpired()) return TIME_REMAINING_EXPIRED;
-    return Math.max(
-      0, (int)((expiry.getTime() - new Date().getTime()) / 1000));
+    return Math.max(0, (int)((expiry - GameTime.millis()) / 1000));
   }
 
   /**
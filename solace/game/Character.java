@@ -272,7 +272,7 @@ public class Character extends AbstractPlayer {
         throw new GameException("Default room not defined.");
       }
 
-      origin.getPlayers().remove(this);
+      origin.removePlayer(this);
 
       if (killer != null) {
         Player[] excludes = { this, killer };
@@ -287,7 +287,7 @@ public class Character extends AbstractPlayer {
         "A bright light flashes and %s reconstitues here battered and bruised.",
         getName()
       ));
-      destination.getPlayers().add(this);
+      destination.addPlayer(this);
 
       setPlayState(PlayState.RESTING);
       setRoom(destination);
@@ -534,8 +534,20 @@ public class Character extends AbstractPlayer {
    */
   public void sendMessage(String msg) {
     Connection c = getConnection();
-    c.sendln("\n" + msg);
-    c.send(c.getStateController().getPrompt());
+    c.send("\n" + msg + "\n\r");
+    c.writePrompt();
+  }
+
+  /**
+   * Sends a message about what others in the character's room are doing,
+   * which is dropped if the character's client is backlogged (see
+   * {@link Connection#sendCosmetic(String)}).
+   * @param msg Message to send.
+   */
+  public void sendRoomMessage(String msg) {
+    Connection c = getConnection();
+    c.sendCosmetic("\n" + msg + "\n\r");
+    c.writePrompt();
   }
 
   /**
@@ -743,4 +755,18 @@ public class Character extends AbstractPlayer {
     }
     return types;
   }
+
+  @Override
+  public long getBaseAttackDamageTypeMask() {
+    Item weapon = getEquipment("weapon");
+    if (weapon != null) {
+      return weapon.getDamageTypeMask();
+    }
+    try {
+      return DamageTypes.getInstance().get("bludgeoning").getMask();
+    } catch (AssetNotFoundException e) {
+      Log.warn("Missing 'bludgeoning' damage type for unarmed.");
+      return 0L;
+    }
+  }
 }
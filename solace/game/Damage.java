@@ -4,17 +4,17 @@ import solace.io.AssetNotFoundException;
 import solace.io.DamageTypes;
 import solace.util.Log;
 
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
 
 /**
- * Represents damage from a single source in the game world.
+ * Represents damage from a single source in the game world. The types of
+ * damage being dealt are held as a mask of the types' bits (see
+ * {@link DamageType#getMask()}).
  * @author Ryan Sandor Richards
  */
 public class Damage<S> {
   private double amount;
-  private Set<DamageType> damageTypes = new HashSet<>();
+  private long types = 0L;
   private Player target;
   private S source;
 
@@ -49,12 +49,18 @@ public class Damage<S> {
   public void mult(double value) { amount *= value; }
 
   /**
-   * @return An unmodifiable set of the types of damage being dealt.
+   * @return An unmodifiable set of the types of damage being dealt (prefer
+   *   {@link #getTypeMask()} or {@link #hasType(DamageType)}).
    */
   public Set<DamageType> getTypes() {
-    return Collections.unmodifiableSet(damageTypes);
+    return DamageTypes.getInstance().getTypes(types);
   }
 
+  /**
+   * @return The mask of the types of damage being dealt.
+   */
+  public long getTypeMask() { return types; }
+
   /**
    * Adds a damage type to the damage.
    * @param damageTypeName Name of the damage type to add.
@@ -73,7 +79,15 @@ public class Damage<S> {
    * @param type The damage type to add.
    */
   public void addType(DamageType type) {
-    damageTypes.add(type);
+    types |= type.getMask();
+  }
+
+  /**
+   * Adds each of the damage types in a mask to the damage.
+   * @param mask Mask of the types to add.
+   */
+  public void addTypes(long mask) {
+    types |= mask;
   }
 
   /**
@@ -97,21 +111,21 @@ public class Damage<S> {
    * @return True if the damage has the given type, false otherwise.
    */
   public boolean hasType(DamageType type) {
-    return damageTypes.contains(type);
+    return (types & type.getMask()) != 0;
   }
 
   /**
    * @return True if this damage has a physical type.
    */
   public boolean isPhysical() {
-    return damageTypes.stream().anyMatch(DamageType::isPhysical);
+    return (types & DamageTypes.getInstance().getPhysicalMask()) != 0;
   }
 
   /**
    * @return True if this damage has a magical type.
    */
   public boolean isMagical() {
-    return damageTypes.stream().anyMatch(DamageType::isMagical);
+    return (types & DamageTypes.getInstance().getMagicalMask()) != 0;
   }
 
   /**
@@ -1,15 +1,60 @@
 package solace.game;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import solace.util.Log;
+
 /**
- * Represents a type of damage in the game world.
+ * Represents a type of damage in the game world. Each type is given a bit, by
+ * name, the first time it is created, so that a set of damage types can be
+ * held as a mask (see {@link Damage}). Types created again with the same name
+ * (when the damage types are reloaded) keep their bit.
  * @author Ryan Sandor Richards
  */
 public class DamageType {
   private static String CATEGORY_PHYSICAL = "physical";
   private static String CATEGORY_MAGICAL = "magical";
 
+  private static final Map<String, Long> bits = new ConcurrentHashMap<>();
+
+  /**
+   * Finds the bit for the type with the given name, assigning it the next
+   * free bit if it has none.
+   * @param name Name of the type.
+   * @return The bit for the type, or 0 if every bit has been assigned.
+   */
+  private static synchronized long bitFor(String name) {
+    Long bit = bits.get(name);
+    if (bit == null) {
+      if (bits.size() >= Long.SIZE) {
+        Log.error(String.format(
+          "Too many damage types, '%s' will be ignored in damage masks.", name));
+        return 0L;
+      }
+      bit = 1L << bits.size();
+      bits.put(name, bit);
+    }
+    return bit;
+  }
+
+  /**
+   * Builds the mask for a collection of damage types.
+   * @param types Types to include in the mask.
+   * @return The mask.
+   */
+  public static long maskOf(Collection<DamageType> types) {
+    long mask = 0L;
+    for (DamageType type : types) {
+      mask |= type.getMask();
+    }
+    return mask;
+  }
+
   private String name;
   private String category;
+  private long mask;
 
   /**
    * Creates a new damage type.
@@ -19,6 +64,7 @@ public class DamageType {
   public DamageType(String n, String c) {
     name = n;
     category = c;
+    mask = bitFor(n);
   }
 
   /**
@@ -31,6 +77,11 @@ public class DamageType {
    */
   public String getCategory() { return category; }
 
+  /**
+   * @return The bit for the damage type in damage masks.
+   */
+  public long getMask() { return mask; }
+
   /**
    * @return `true` if this is a physical damage type.
    */
@@ -1,5 +1,8 @@
 package solace.game;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import solace.game.*;
 import solace.util.*;
 
@@ -8,6 +11,8 @@ import solace.util.*;
  * @author Ryan Sandor Richards.
  */
 public class DotBuff extends Buff {
+  private static final Set<Player> dying = ConcurrentHashMap.newKeySet();
+
   private int averageDamage;
   private Player target;
   private Clock.Event tickInterval;
@@ -47,8 +52,18 @@ public class DotBuff extends Buff {
     Damage<Buff> dmg = new Damage<>((double)damage, target, this);
     target.applyDamage(dmg);
     target.sendMessage(String.format(damageMessage, damage));
-    if (target.isDead()) {
-      target.die(null);
+    // Dying moves the target out of the area. Another DoT on the target may
+    // find it dead on the same tick, so only the first hands off its death.
+    if (target.isDead() && dying.add(target)) {
+      Clock.handOff(() -> {
+        try {
+          if (target.isDead()) {
+            target.die(null);
+          }
+        } finally {
+          dying.remove(target);
+        }
+      });
     }
   }
 
@@ -57,11 +72,17 @@ public class DotBuff extends Buff {
    */
   public void scheduleTickAction() {
     String intervalName = String.format(
-      "DoT (%s) for %s", getName(), target.getName());
+      "dot: %s on %s", getName(), target.getName());
+    // The damage follows the target, so it runs in whichever area the target
+    // is in when it ticks
+    Clock.Partitioner area = () -> {
+      Room room = target.getRoom();
+      return room == null ? null : room.getArea();
+    };
     tickInterval = Clock.getInstance().interval(
       intervalName, frequency, new Runnable() {
         public void run() { applyShockDamage(); }
-      });
+      }, area);
   }
 
   /**
@@ -6,13 +6,16 @@ import solace.io.Config;
 import solace.io.Dreams;
 import solace.util.Clock;
 import solace.util.Log;
+import solace.util.PhaseBuckets;
 import solace.util.Roll;
 
 import java.util.Arrays;
 import java.util.stream.Stream;
 
 /**
- * Manages dreams for all sleeping characters in the game world.
+ * Manages dreams for all sleeping characters in the game world. Like
+ * recovery, each character's dream cycle comes around once every cycle but
+ * characters are spread across the ticks of the cycle.
  * @author Ryan Sandor Richards
  */
 public class DreamManager {
@@ -20,6 +23,8 @@ public class DreamManager {
    * Clock event used by the dream manager.
    */
   private static Clock.Event dreamEvent = null;
+  private static PhaseBuckets<Character> characters =
+    new PhaseBuckets<>(24, Character::getName);
 
   /**
    * Starts the character dream manager.
@@ -28,7 +33,11 @@ public class DreamManager {
     if (dreamEvent != null) return;
     Log.info("Starting dream manager");
     int ticks = 2 * Integer.parseInt(Config.get("game.recovery.ticks", "12"));
-    dreamEvent = Clock.getInstance().interval("dream-cycle", ticks, DreamManager::cycle);
+    characters = new PhaseBuckets<>(ticks, Character::getName);
+    synchronized (Game.getActiveCharacters()) {
+      Game.getActiveCharacters().forEach(characters::add);
+    }
+    dreamEvent = Clock.getInstance().interval("dream-cycle", 1, DreamManager::cycle);
   }
 
   /**
@@ -42,10 +51,31 @@ public class DreamManager {
   }
 
   /**
-   * Performs a dream cycle for all sleeping players.
+   * Adds a character that has entered the game world to the dream cycle.
+   * @param ch Character to add.
+   */
+  static void add(Character ch) {
+    characters.add(ch);
+  }
+
+  /**
+   * Removes a character that has left the game world from the dream cycle.
+   * @param ch Character to remove.
+   */
+  static void remove(Character ch) {
+    characters.remove(ch);
+  }
+
+  /**
+   * Performs a dream cycle for the sleeping players whose turn it is this
+   * tick.
    */
   private static void cycle() {
-    Game.getActiveCharacters().stream().filter(AbstractPlayer::isSleeping).forEach((c) -> {
+    characters.forEachDue(Clock.getInstance().getTicks(), (c) -> {
+      if (!c.isSleeping()) {
+        return;
+      }
+
       // Determine if we present the player with a dream
       if (Roll.uniform() <= 0.25) {
         // Fetch a random dream and blank out random words
@@ -42,12 +42,16 @@ public class Game {
 
     new Thread(writer).start();
 
+    Tasks.initialize();
+    GameLoop.start();
+    Clock.getInstance().addTickListener(Game::flushConnections);
     Clock.getInstance().start();
 
     BattleManager.start();
     RecoveryManager.start();
     PlayerManager.start();
     DreamManager.start();
+    SessionManager.start();
 
     ScriptingEngine.reload();
     CommandRegistry.reload();
@@ -60,7 +64,7 @@ public class Game {
     } catch (Throwable t) {
       port = 4000;
     }
-    server = new Server(port);
+    server = Server.create(port);
     server.listen();
   }
 
@@ -72,6 +76,7 @@ public class Game {
     Clock.getInstance().stop();
     writer.stop();
     server.shutdown();
+    GameLoop.stop();
   }
 
   /**
@@ -131,6 +136,21 @@ public class Game {
     connections.remove(c);
   }
 
+  /**
+   * Sends pending GMCP updates and flushes buffered output for every
+   * connection. This is run at the end of each clock tick, once the events
+   * fired during the tick have finished, so that players receive a single
+   * write per tick with all of the tick's output.
+   */
+  static void flushConnections() {
+    synchronized (connections) {
+      for (Connection c : connections) {
+        c.updateGmcp();
+        c.flush();
+      }
+    }
+  }
+
   /**
    * @return All the connections currently playing a character in the game
    *   world.
@@ -139,6 +159,26 @@ public class Game {
     return playing;
   }
 
+  /**
+   * Places a character in the game world.
+   * @param ch Character that has entered the game.
+   */
+  public static void addActiveCharacter(Character ch) {
+    playing.add(ch);
+    RecoveryManager.add(ch);
+    DreamManager.add(ch);
+  }
+
+  /**
+   * Removes a character from the game world.
+   * @param ch Character that has left the game.
+   */
+  public static void removeActiveCharacter(Character ch) {
+    playing.remove(ch);
+    RecoveryManager.remove(ch);
+    DreamManager.remove(ch);
+  }
+
   /**
    * @return An unmodifiable collection of all player players and mobiles
    *   in the game world.
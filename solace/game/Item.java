@@ -53,6 +53,23 @@ public class Item extends Template {
     return types;
   }
 
+  /**
+   * Gets the mask of the damage types for this item if it is a weapon.
+   * @return The mask of the damage types for the item if it is a weapon with
+   *   an associated proficiency, 0 if it is not.
+   */
+  public long getDamageTypeMask() {
+    String slot = get("slot");
+    if (slot == null || !slot.equals("weapon")) {
+      return 0L;
+    }
+    String profName = get("proficiency");
+    if (profName == null || !WeaponProficiencies.getInstance().has(profName)) {
+      return 0L;
+    }
+    return WeaponProficiencies.getInstance().get(profName).getDamageTypeMask();
+  }
+
   /**
    * Returns the XML describing the item (primarily used to save character
    * inventory and equipment).
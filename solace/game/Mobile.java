@@ -9,6 +9,7 @@ import solace.util.EventListener;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -20,6 +21,8 @@ public class Mobile extends AbstractPlayer {
   private boolean isPlaced = false;
   private EventEmitter events;
   private Template template;
+  private String attackTypeNames = null;
+  private long attackTypeMask = -1L;
 
   /**
    * Creates a new mobile.
@@ -279,4 +282,19 @@ public class Mobile extends AbstractPlayer {
     });
     return types;
   }
+
+  /**
+   * The mask is built once and rebuilt only if the template's attack types
+   * change.
+   * @see solace.game.Player
+   */
+  @Override
+  public long getBaseAttackDamageTypeMask() {
+    String typeNames = template.get("attack.type");
+    if (attackTypeMask == -1L || !Objects.equals(attackTypeNames, typeNames)) {
+      attackTypeMask = DamageType.maskOf(getBaseAttackDamageTypes());
+      attackTypeNames = typeNames;
+    }
+    return attackTypeMask;
+  }
 }
@@ -111,6 +111,14 @@ public interface Player {
    */
   void sendMessage(String s);
 
+  /**
+   * Sends the Player a message about what others in their room are doing.
+   * Unlike {@link #sendMessage(String)} the message is not essential, and may
+   * be dropped if the Player's client is falling behind.
+   * @param s Message to sent the Player.
+   */
+  void sendRoomMessage(String s);
+
   /**
    * Sends a message to the player.
    * @param msg Message to send.
@@ -589,4 +597,11 @@ public interface Player {
    * @return A set of damage types dealt by base attacks.
    */
   Set<DamageType> getBaseAttackDamageTypes();
+
+  /**
+   * Determines the types of damage dealt by base attacks for this player as
+   * a mask (see {@link DamageType#getMask()}).
+   * @return The mask of damage types dealt by base attacks.
+   */
+  long getBaseAttackDamageTypeMask();
 }
@@ -6,7 +6,10 @@ import solace.util.*;
 
 /**
  * Manages the recovery of resources for all mobiles and players in the game
- * world.
+ * world. Each character recovers once every recovery cycle, but rather than
+ * recovering every character on the same tick the manager runs each tick and
+ * recovers the characters whose phase (see {@link PhaseBuckets}) matches it,
+ * spreading the work across the cycle.
  *
  * - TODO Add mobile recovery
  *
@@ -14,6 +17,8 @@ import solace.util.*;
  */
 public class RecoveryManager {
   private static Clock.Event recoveryEvent = null;
+  private static PhaseBuckets<Character> characters =
+    new PhaseBuckets<>(10, Character::getName);
 
   /**
    * Initializes and starts the battle manager.
@@ -23,8 +28,12 @@ public class RecoveryManager {
     Log.info("Starting recovery manager");
     String ticksString = Config.get("game.recovery.ticks");
     int ticks = ticksString != null ? Integer.parseInt(ticksString) : 10;
+    characters = new PhaseBuckets<>(ticks, Character::getName);
+    synchronized (Game.getActiveCharacters()) {
+      Game.getActiveCharacters().forEach(characters::add);
+    }
     recoveryEvent = Clock.getInstance().interval(
-      "recovery-cycle", ticks, RecoveryManager::cycle);
+      "recovery-cycle", 1, RecoveryManager::cycle);
   }
 
   /**
@@ -38,11 +47,28 @@ public class RecoveryManager {
   }
 
   /**
-   * Performs a recovery cycle for all players and mobiles in the game world.
+   * Adds a character that has entered the game world to the recovery cycle.
+   * @param ch Character to add.
+   */
+  static void add(Character ch) {
+    characters.add(ch);
+  }
+
+  /**
+   * Removes a character that has left the game world from the recovery cycle.
+   * @param ch Character to remove.
+   */
+  static void remove(Character ch) {
+    characters.remove(ch);
+  }
+
+  /**
+   * Performs the recovery for the players and mobiles in the game world
+   * whose turn it is this tick.
    */
   private static void cycle() {
     // TODO This will need to be updated to heal mobiles as well
-    Game.getActiveCharacters().forEach(player -> {
+    characters.forEachDue(Clock.getInstance().getTicks(), player -> {
       // Fighting players do not,  recover resources
       if (player.isFighting()) {
         return;
@@ -60,13 +60,15 @@ public class Room {
   }
 
   /**
-   * Sends a message to all of the players in a room.
+   * Sends a message to all of the players in a room. Room messages are not
+   * essential, so they are dropped for players whose clients are backlogged
+   * (see {@link Player#sendRoomMessage(String)}).
    * @param message Messages to send.
    */
   public void sendMessage(String message) {
     synchronized(players) {
       for (Player ch : players) {
-        ch.sendMessage(message);
+        ch.sendRoomMessage(message);
       }
     }
   }
@@ -84,7 +86,7 @@ public class Room {
       for (Player ch : players) {
         if (ch == exclude || !exclude.isVisibleTo(ch))
           continue;
-        ch.sendMessage(message);
+        ch.sendRoomMessage(message);
       }
     }
   }
@@ -106,7 +108,7 @@ public class Room {
           }
         }
         if (exclude) continue;
-        ch.sendMessage(message);
+        ch.sendRoomMessage(message);
       }
     }
   }
@@ -0,0 +1,158 @@
+package solace.game;
+
+import java.util.*;
+import solace.cmd.*;
+import solace.io.Config;
+import solace.net.Connection;
+import solace.util.*;
+
+/**
+ * Reaps idle and dead sessions. A single clock interval periodically sweeps
+ * all connections, disconnecting those that have not sent input for longer
+ * than the idle timeout for their current state and removing those whose
+ * client has already gone away.
+ *
+ * Idle timeouts are given in seconds by <code>game.idle.login</code> (logging
+ * in), <code>game.idle.menu</code> (main menu, character creation, and out of
+ * game chat), and <code>game.idle.play</code> (playing a character). A timeout
+ * of zero disables reaping for that state. The sweep runs every
+ * <code>game.idle.sweep-ticks</code> clock ticks.
+ *
+ * Characters that are in battle are not removed from the world until their
+ * battle has ended.
+ *
+ * @author Ryan Sandor Richards
+ */
+public class SessionManager {
+  private static final Metrics.Counter reapedLogin =
+    Metrics.counter("session.reaped.login");
+  private static final Metrics.Counter reapedMenu =
+    Metrics.counter("session.reaped.menu");
+  private static final Metrics.Counter reapedPlay =
+    Metrics.counter("session.reaped.play");
+  private static final Metrics.Counter reapedClosed =
+    Metrics.counter("session.reaped.closed");
+  static {
+    Metrics.gauge("session.connections", () -> Game.getConnections().size());
+  }
+
+  private static Clock.Event sweepEvent = null;
+  private static long loginTimeout;
+  private static long menuTimeout;
+  private static long playTimeout;
+
+  /**
+   * Initializes and starts the session manager.
+   */
+  public static void start() {
+    if (sweepEvent != null) { return; }
+    Log.info("Starting session manager");
+    loginTimeout = getTimeout("game.idle.login", "120");
+    menuTimeout = getTimeout("game.idle.menu", "900");
+    playTimeout = getTimeout("game.idle.play", "3600");
+    int ticks = Integer.parseInt(Config.get("game.idle.sweep-ticks", "5"));
+    sweepEvent = Clock.getInstance().interval(
+      "session-sweep", ticks, SessionManager::sweep);
+  }
+
+  /**
+   * Stops the session manager.
+   */
+  public static void stop() {
+    if (sweepEvent == null) { return; }
+    Log.info("Stopping session manager");
+    sweepEvent.cancel();
+    sweepEvent = null;
+  }
+
+  /**
+   * Reads an idle timeout from the game configuration.
+   * @param name Name of the configuration option.
+   * @param defaultValue Default timeout, in seconds.
+   * @return The timeout in milliseconds.
+   */
+  private static long getTimeout(String name, String defaultValue) {
+    return 1000L * Long.parseLong(Config.get(name, defaultValue));
+  }
+
+  /**
+   * Sweeps all connections, reaping those that are closed or idle.
+   */
+  private static void sweep() {
+    List<Connection> connections;
+    Collection<Connection> all = Game.getConnections();
+    synchronized (all) {
+      connections = new ArrayList<>(all);
+    }
+    for (Connection c : connections) {
+      Controller controller = c.getStateController();
+      if (!c.isOpen()) {
+        if (reap(c, null)) {
+          reapedClosed.increment();
+        }
+        continue;
+      }
+
+      long timeout;
+      Metrics.Counter counter;
+      if (controller instanceof PlayController) {
+        timeout = playTimeout;
+        counter = reapedPlay;
+      } else if (controller == null || controller instanceof LoginController) {
+        timeout = loginTimeout;
+        counter = reapedLogin;
+      } else {
+        timeout = menuTimeout;
+        counter = reapedMenu;
+      }
+
+      if (timeout > 0 && c.getIdleTime() > timeout &&
+        reap(c, "\n\rYou have been idle for too long, goodbye!\n\r"))
+      {
+        counter.increment();
+      }
+    }
+  }
+
+  /**
+   * Logs a connection out of the game and closes it.
+   * @param c Connection to reap.
+   * @param message Message to send before closing the connection, or null.
+   * @return True if the connection was reaped, false if it must wait (because
+   *   its character is in battle).
+   */
+  private static boolean reap(Connection c, String message) {
+    Account account = c.getAccount();
+    if (account != null && account.hasActiveCharacter() &&
+      c.getStateController() instanceof PlayController)
+    {
+      solace.game.Character ch = account.getActiveCharacter();
+      if (ch.isFighting()) {
+        return false;
+      }
+      Room room = ch.getRoom();
+      if (room != null) {
+        room.removePlayer(ch);
+        room.sendMessage(String.format("%s has left the game.", ch.getName()));
+      }
+      Game.removeActiveCharacter(ch);
+      Game.writer.save(ch);
+    }
+
+    if (account != null) {
+      Game.removeAccount(account);
+    }
+    Game.removeChatconnection(c);
+    Game.removeConnection(c);
+
+    if (c.isOpen()) {
+      Log.info("Reaping idle connection from " + c.getInetAddress());
+      if (message != null) {
+        c.sendln(message);
+        c.flush();
+      }
+      c.close();
+    }
+    return true;
+  }
+}
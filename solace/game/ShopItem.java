@@ -117,7 +117,10 @@ public class ShopItem {
       restockInterval = 600;
     }
 
-    // Register the event with the game clock
+    // Register the event with the game clock, restocks only touch the shop
+    // so they can run alongside the events of other areas. Items are spread
+    // across the interval so that every shop does not restock on one tick.
+    Area area = shop.room == null ? null : shop.room.getArea();
     restockEvent = Clock.getInstance().interval(
       "shop.restock",
       restockInterval,
@@ -125,7 +128,10 @@ public class ShopItem {
         public void run() {
           restock();
         }
-      }
+      },
+      area,
+      Clock.phaseFor(shop.id + ":" + itemId, restockInterval),
+      restockInterval / 10
     );
   }
 
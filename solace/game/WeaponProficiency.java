@@ -21,6 +21,7 @@ public class WeaponProficiency {
   private String skill;
   private int hands;
   private List<DamageType> damageTypes = new ArrayList<>();
+  private long damageTypeMask = 0L;
 
   /**
    * Creates a new weapon proficiency with the given parameters.
@@ -52,6 +53,7 @@ public class WeaponProficiency {
           dmgTypeName, name));
       }
     });
+    damageTypeMask = DamageType.maskOf(damageTypes);
   }
 
   /**
@@ -92,6 +94,11 @@ public class WeaponProficiency {
    */
   public Collection<DamageType> getDamageTypes() { return Collections.unmodifiableCollection(damageTypes); }
 
+  /**
+   * @return The mask of damage types for weapons that have the proficiency.
+   */
+  public long getDamageTypeMask() { return damageTypeMask; }
+
   /**
    * @return Number of hands needed to wield weapons with this proficiency.
    */
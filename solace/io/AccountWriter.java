@@ -3,6 +3,7 @@ package solace.io;
 import java.net.*;
 import java.util.*;
 import java.io.*;
+import java.util.concurrent.*;
 import solace.util.*;
 import solace.game.*;
 import solace.cmd.*;
@@ -11,6 +12,10 @@ import solace.cmd.*;
  * Resonisible for saving the state of characters / accounts in
  * the game periodically.
  *
+ * In single writer mode (see {@link GameLoop}) the accounts' XML is built on
+ * the game loop, so that characters are not read while the loop changes
+ * them, and only the files are written by the writer's own thread.
+ *
  * @author Ryan Sandor Richards
  */
 public class AccountWriter implements Runnable {
@@ -47,41 +52,88 @@ public class AccountWriter implements Runnable {
    */
   protected void saveActive() {
     Collection<solace.game.Character> active = Game.getActiveCharacters();
+    List<solace.game.Character> characters;
     synchronized(active) {
-      for (solace.game.Character ch : active) {
-        try {
-          Account act = ch.getAccount();
-          act.save();
-        }
-        catch (IOException ioe) {
-          Log.error(
-            "Error while saving character '" +
-            ch.getName() + "': " + ioe.getMessage()
-          );
-        }
-      }
+      characters = new ArrayList<solace.game.Character>(active);
     }
+    save(characters);
   }
 
   /**
    * Saves all characters who have been put into the save queue.
    */
   protected void saveQueued() {
+    List<solace.game.Character> characters;
     synchronized(saveQueue) {
-      while (saveQueue.size() > 0) {
-        solace.game.Character ch = saveQueue.remove(0);
-        try {
-          Account act = ch.getAccount();
-          act.save();
-        }
-        catch (IOException ioe) {
-          Log.error(
-            "Error while saving character '" +
-            ch.getName() + "': " + ioe.getMessage()
-          );
+      characters = new ArrayList<solace.game.Character>(saveQueue);
+      saveQueue.clear();
+    }
+    if (!save(characters)) {
+      // Try again on the next save
+      saveQueue.addAll(0, characters);
+    }
+  }
+
+  /**
+   * Saves the accounts of the given characters.
+   * @param characters Characters to save.
+   * @return False if the accounts' XML could not be built, true otherwise.
+   */
+  private boolean save(List<solace.game.Character> characters) {
+    if (characters.isEmpty()) {
+      return true;
+    }
+    List<String> xml = getXML(characters);
+    if (xml == null) {
+      return false;
+    }
+    for (int i = 0; i < xml.size(); i++) {
+      solace.game.Character ch = characters.get(i);
+      try {
+        ch.getAccount().save(xml.get(i));
+      }
+      catch (IOException ioe) {
+        Log.error(
+          "Error while saving character '" +
+          ch.getName() + "': " + ioe.getMessage()
+        );
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Builds the XML for the accounts of the given characters, on the game
+   * loop when the game runs in single writer mode.
+   * @param characters Characters whose accounts to build.
+   * @return The XML for each character's account, or null if the game loop
+   *   did not build it in time.
+   */
+  private List<String> getXML(final List<solace.game.Character> characters) {
+    Callable<List<String>> build = new Callable<List<String>>() {
+      public List<String> call() {
+        List<String> xml = new ArrayList<String>(characters.size());
+        for (solace.game.Character ch : characters) {
+          xml.add(ch.getAccount().getXML());
         }
+        return xml;
       }
+    };
+    try {
+      if (!GameLoop.isEnabled() || GameLoop.isLoopThread()) {
+        return build.call();
+      }
+      FutureTask<List<String>> task = new FutureTask<List<String>>(build);
+      GameLoop.execute(task);
+      return task.get(10, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+    catch (Exception e) {
+      Log.error("Error while building account XML: " + e.getMessage());
     }
+    return null;
   }
 
   /**
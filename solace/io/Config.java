@@ -7,7 +7,9 @@ import java.nio.file.Path;
 import java.util.Hashtable;
 
 /**
- * Helper class for loading and accessing configuration files.
+ * Helper class for loading and accessing configuration files. Any value can
+ * be overridden with a Java system property of the same scoped name (e.g.
+ * <code>-Dgame.loop.mode=single-writer</code>).
  * @author Ryan Sandor Richards.
  */
 public class Config {
@@ -48,6 +50,10 @@ public class Config {
    *   be found.
    */
   public static String get(String name) {
+    String override = System.getProperty(name);
+    if (override != null)
+      return override;
+
     String[] parts = name.split("\\.");
     String cfgName = parts[0];
 
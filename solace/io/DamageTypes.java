@@ -7,6 +7,11 @@ import solace.util.Log;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Asset manager for loading damage types from the game directory.
@@ -15,6 +20,10 @@ public class DamageTypes extends AbstractAssetManager<DamageType> {
   private static final DamageTypes instance = new DamageTypes();
   public static DamageTypes getInstance() { return instance; }
 
+  private volatile long physical = 0L;
+  private volatile long magical = 0L;
+  private final Map<Long, Set<DamageType>> sets = new ConcurrentHashMap<>();
+
   /**
    * Creates a new damage types asset manager.
    */
@@ -22,9 +31,47 @@ public class DamageTypes extends AbstractAssetManager<DamageType> {
     super("damage-type", ".damage.json");
   }
 
+  /**
+   * @return The mask of every physical damage type.
+   */
+  public long getPhysicalMask() { return physical; }
+
+  /**
+   * @return The mask of every magical damage type.
+   */
+  public long getMagicalMask() { return magical; }
+
+  /**
+   * Finds the damage types in a mask. Each distinct mask is only decoded
+   * once (until the damage types change), since the same few masks are
+   * decoded over and over.
+   * @param mask Mask of damage types.
+   * @return An unmodifiable set of the types in the mask.
+   */
+  public Set<DamageType> getTypes(long mask) {
+    return sets.computeIfAbsent(mask, m -> {
+      Set<DamageType> set = new HashSet<>();
+      forEach(type -> {
+        if ((m & type.getMask()) != 0) set.add(type);
+      });
+      return Collections.unmodifiableSet(set);
+    });
+  }
+
+  @Override
+  protected void add(String name, DamageType type) {
+    super.add(name, type);
+    sets.clear();
+  }
+
+  /**
+   * Loads the damage types, then recomputes the physical and magical masks
+   * from scratch from the types that were loaded.
+   */
   @Override
   public void reload() {
     Log.info("Loading damage types");
+    long[] masks = new long[2];
     try {
       load().forEach(path -> {
         String filename = String.valueOf(path);
@@ -33,7 +80,10 @@ public class DamageTypes extends AbstractAssetManager<DamageType> {
           JSONObject object = new JSONObject(json);
           String name = object.getString("name");
           String category = object.getString("category");
-          add(name, new DamageType(name, category));
+          DamageType type = new DamageType(name, category);
+          add(name, type);
+          if (type.isPhysical()) masks[0] |= type.getMask();
+          if (type.isMagical()) masks[1] |= type.getMask();
         } catch (JSONException je) {
           Log.warn(String.format("Invalid JSON for damage type '%s', skipping.", filename));
           Log.warn(je.getMessage());
@@ -43,6 +93,9 @@ public class DamageTypes extends AbstractAssetManager<DamageType> {
       });
     } catch (IOException e) {
       Log.error(String.format("Unable to load damage types: %s", e.getMessage()));
+      return;
     }
+    physical = masks[0];
+    magical = masks[1];
   }
 }
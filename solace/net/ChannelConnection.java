@@ -0,0 +1,204 @@
+package solace.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import solace.util.GameLoop;
+import solace.util.Log;
+import solace.util.Tasks;
+
+/**
+ * Connection backed by a non-blocking socket channel. Channel connections do
+ * not own a thread, instead they are driven by one of the selector server's
+ * I/O workers which notifies the connection when its channel is readable or
+ * writable.
+ *
+ * The I/O worker only reads and decodes input. Each line it decodes is queued
+ * on the connection, and the connection's queued lines are run in order by a
+ * game task (see {@link Tasks}), or by the game loop in single writer mode,
+ * so that a slow command never holds up the other connections on the worker.
+ * @author Ryan Sandor Richards
+ */
+public class ChannelConnection extends Connection {
+  static final int READ_BUFFER_SIZE = 4096;
+
+  private final SocketChannel channel;
+  private final SelectorServer.IoWorker worker;
+  private final SelectionKey key;
+  private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+  final TelnetDecoder decoder = new TelnetDecoder(this);
+  private boolean closing = false;
+  private boolean closed = false;
+
+  /**
+   * Creates a new connection for the given channel. The connection's session
+   * does not begin until it is started.
+   * @param c Channel for the connection.
+   * @param w I/O worker that services the channel.
+   * @param k Selection key for the channel on the worker's selector.
+   */
+  ChannelConnection(SocketChannel c, SelectorServer.IoWorker w, SelectionKey k) {
+    channel = c;
+    worker = w;
+    key = k;
+    key.attach(this);
+  }
+
+  /**
+   * Begins the connection's session and sends the first prompt.
+   */
+  void start() {
+    begin();
+    sendPrompt();
+    flush();
+  }
+
+  /**
+   * @return The channel for this connection.
+   */
+  SocketChannel getChannel() { return channel; }
+
+  /**
+   * Closes the connection's channel, or has the I/O worker close it once it
+   * has written any queued output.
+   */
+  protected void closeTransport() {
+    synchronized (outbound) {
+      closing = true;
+      if (!outbound.isEmpty()) return;
+    }
+    closeChannel();
+  }
+
+  /**
+   * Closes the connection's channel.
+   */
+  private void closeChannel() {
+    synchronized (outbound) {
+      if (closed) return;
+      closed = true;
+    }
+    key.cancel();
+    try {
+      channel.close();
+    } catch (IOException ioe) {
+      Log.error(ioe.getMessage());
+    }
+  }
+
+  /**
+   * Writes bytes to the channel. If the channel cannot accept all of the bytes
+   * immediately the remainder is queued and written by the I/O worker once the
+   * channel becomes writable. This method never blocks.
+   * @param bytes Bytes to write.
+   */
+  @Override
+  protected void writeRaw(byte[] bytes) {
+    synchronized (outbound) {
+      if (closing) return;
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      if (!outbound.isEmpty()) {
+        outbound.add(buffer);
+        return;
+      }
+      try {
+        channel.write(buffer);
+        if (!buffer.hasRemaining()) return;
+        outbound.add(buffer);
+        worker.enableWrites(this);
+        return;
+      } catch (IOException ioe) {
+        // Abort below, outside of the outbound lock
+      }
+    }
+    abort();
+  }
+
+  /**
+   * Enables write interest for the channel. Must be called from the I/O
+   * worker's thread.
+   */
+  void onWriteRequested() {
+    if (key.isValid()) {
+      key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+    }
+  }
+
+  /**
+   * Called by the I/O worker when the channel can accept more output.
+   */
+  void onWritable() {
+    try {
+      synchronized (outbound) {
+        while (!outbound.isEmpty()) {
+          ByteBuffer buffer = outbound.peek();
+          outbound.written(channel.write(buffer));
+          if (buffer.hasRemaining()) return;
+        }
+        if (!closing && key.isValid()) {
+          key.interestOps(SelectionKey.OP_READ);
+          return;
+        }
+      }
+    } catch (IOException ioe) {
+      abort();
+      return;
+    }
+    closeChannel();
+  }
+
+  /**
+   * Called by the I/O worker when the channel has input available. Input is
+   * decoded into lines which are queued to be run off the I/O worker.
+   */
+  void onReadable() {
+    readBuffer.clear();
+    int read;
+    try {
+      read = channel.read(readBuffer);
+    } catch (IOException ioe) {
+      abort();
+      return;
+    }
+    if (read < 0) {
+      abort();
+      return;
+    }
+    onInput(readBuffer.array(), read);
+  }
+
+  /**
+   * Handles input read from the channel.
+   * @param bytes Buffer holding the input.
+   * @param length Number of bytes of input.
+   */
+  protected void onInput(byte[] bytes, int length) {
+    decoder.decode(bytes, 0, length);
+  }
+
+  /**
+   * Queues a line of input decoded by the I/O worker. When the queue becomes
+   * non-empty a game task is started to run the queued lines in order.
+   * @param input Line of input.
+   */
+  @Override
+  protected void processInput(String input) {
+    if (GameLoop.isEnabled()) {
+      super.processInput(input);
+      return;
+    }
+    queueCommand(input, commands -> Tasks.execute(() -> {
+      while (commands.runNext());
+    }));
+  }
+
+  /**
+   * Returns the internet address from which this connection is connected.
+   * @return The internet address of the connection.
+   */
+  public InetAddress getInetAddress() {
+    return channel.socket().getInetAddress();
+  }
+}
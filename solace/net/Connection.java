@@ -1,44 +1,199 @@
 package solace.net;
 
+import java.io.ByteArrayOutputStream;
 import java.net.*;
+import java.nio.charset.Charset;
 import java.util.*;
-import java.io.*;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import org.json.JSONObject;
+import solace.io.Config;
 import solace.util.*;
 import solace.game.*;
 import solace.cmd.*;
 
 /**
  * Player connection object, handles basic user input and output, login and main
- * menu.
+ * menu. The connection is transport agnostic, subclasses are responsible for
+ * moving bytes to and from the client (see {@link SocketConnection} and
+ * {@link ChannelConnection}).
+ *
+ * Output sent to a connection is buffered and written to the client in a
+ * single write when the connection is flushed. Connections are flushed at the
+ * end of every game clock tick, after handling each line of input, and
+ * whenever the buffered output exceeds the
+ * <code>game.output.flush-threshold</code> configuration option. Setting
+ * <code>game.output.coalesce</code> to <code>false</code> flushes on every
+ * send.
+ *
+ * Connections offer MCCP2 (telnet option 86) to clients when
+ * <code>game.mccp.enabled</code> is set. Once a client accepts, all further
+ * output is streamed through a zlib deflater at the connection's compression
+ * level (which defaults to <code>game.mccp.level</code>).
+ *
+ * Output that has been flushed but not yet accepted by the client waits in a
+ * bounded {@link OutputQueue}, so game threads never block on a slow client.
+ * Once more than <code>game.output.queue-limit</code> bytes are waiting the
+ * client is considered backlogged: room messages are dropped (when
+ * <code>game.output.drop-cosmetic</code> is set), at most one prompt is queued
+ * (when <code>game.output.collapse-prompts</code> is set), and the client is
+ * disconnected if it remains backlogged for longer than
+ * <code>game.output.stall-timeout</code> seconds or more than
+ * <code>game.output.queue-max</code> bytes are waiting.
+ *
+ * Connections also offer GMCP (telnet option 201) when
+ * <code>game.gmcp.enabled</code> is set. Clients that accept it are sent
+ * structured vitals, room, and combat target updates whenever those values
+ * change (see {@link Gmcp}), and are given the minimal prompt set by
+ * <code>game.gmcp.prompt</code> during play instead of their custom prompt.
+ *
+ * When the game runs in single writer mode (see {@link GameLoop}) each line
+ * of input is placed on the connection's command queue rather than handled
+ * by the thread that read it. The game loop runs one queued command per
+ * connection at a time, moving on to other connections before running the
+ * next, so no client can starve the others (as soon as it can, or once per
+ * tick, depending on <code>game.loop.drain</code>). At most
+ * <code>game.loop.command-queue</code> commands may wait, further input is
+ * dropped until the queue drains.
+ *
  * @author Ryan Sandor Richards (Gaius)
  */
-public class Connection implements Runnable {
-  Socket socket;
-  PrintWriter out;
-  BufferedReader in;
+public abstract class Connection implements TelnetDecoder.Handler {
+  private static final Metrics.Counter flushes = Metrics.counter("net.flushes");
+  private static final Metrics.Histogram messagesPerFlush =
+    Metrics.histogram("net.flush.messages");
+  private static final Metrics.Histogram bytesPerFlush =
+    Metrics.histogram("net.flush.bytes");
+
+  static final Charset charset = Charset.defaultCharset();
+  private static final boolean coalesce =
+    Boolean.parseBoolean(Config.get("game.output.coalesce", "true"));
+  private static final int flushThreshold =
+    Integer.parseInt(Config.get("game.output.flush-threshold", "8192"));
+
+  private static final Metrics.Counter droppedMessages =
+    Metrics.counter("net.output.dropped");
+  private static final Metrics.Counter collapsedPrompts =
+    Metrics.counter("net.output.prompts.collapsed");
+  private static final Metrics.Counter evictions =
+    Metrics.counter("net.output.evictions");
+  private static final Metrics.Histogram queueHighWater =
+    Metrics.histogram("net.output.queue.high-water");
+  private static final int queueLimit =
+    Integer.parseInt(Config.get("game.output.queue-limit", "65536"));
+  private static final int queueMax =
+    Integer.parseInt(Config.get("game.output.queue-max", "1048576"));
+  private static final boolean dropCosmetic =
+    Boolean.parseBoolean(Config.get("game.output.drop-cosmetic", "true"));
+  private static final boolean collapsePrompts =
+    Boolean.parseBoolean(Config.get("game.output.collapse-prompts", "true"));
+  private static final long stallTimeout = 1000000000L *
+    Long.parseLong(Config.get("game.output.stall-timeout", "30"));
+  private static final long closeLinger =
+    Long.parseLong(Config.get("game.output.close-linger", "5"));
+
+  private static final Metrics.Counter compressedSessions =
+    Metrics.counter("net.mccp.sessions");
+  private static final Metrics.Counter uncompressedBytes =
+    Metrics.counter("net.mccp.bytes.raw");
+  private static final Metrics.Counter compressedBytes =
+    Metrics.counter("net.mccp.bytes.compressed");
+  private static final Metrics.Counter deflateNanos =
+    Metrics.counter("net.mccp.deflate.ns");
+  static {
+    Metrics.gauge("net.mccp.ratio.pct", () -> {
+      long raw = uncompressedBytes.get();
+      return raw == 0 ? 0 : 100 * compressedBytes.get() / raw;
+    });
+    Metrics.gauge("net.mccp.deflate.ns-per-kb", () -> {
+      long raw = uncompressedBytes.get();
+      return raw == 0 ? 0 : 1024 * deflateNanos.get() / raw;
+    });
+  }
+
+  private static final boolean compressionEnabled =
+    Boolean.parseBoolean(Config.get("game.mccp.enabled", "true"));
+  private static final int defaultCompressionLevel =
+    Integer.parseInt(Config.get("game.mccp.level", "6"));
+
+  private static final Metrics.Counter gmcpSessions =
+    Metrics.counter("net.gmcp.sessions");
+  private static final Metrics.Counter gmcpMessages =
+    Metrics.counter("net.gmcp.messages");
+  private static final boolean gmcpEnabled =
+    Boolean.parseBoolean(Config.get("game.gmcp.enabled", "true"));
+  private static final String gmcpPrompt = Config.get("game.gmcp.prompt", "> ");
+
+  private static final Metrics.Counter droppedCommands =
+    Metrics.counter("loop.commands.dropped");
+  private static final int commandQueueLimit =
+    Integer.parseInt(Config.get("game.loop.command-queue", "32"));
+
   Account account;
   Controller controller;
   Date connectionTime;
   boolean skipPrompt = false;
+  private volatile boolean open = true;
+  private volatile long lastInputTime = System.nanoTime();
 
   // Useful for disabling characters while major game actions are taking place
   // such as area reloading or reboots. See the setIgnoreInput() method.
   boolean ignoreInput = false;
 
+  // Input waiting to be run by the game loop (in single writer mode)
+  private final ArrayDeque<String> commands = new ArrayDeque<>();
+
+  // Output buffered since the last flush
+  private final StringBuilder output = new StringBuilder();
+  private int bufferedMessages = 0;
+
+  // Output waiting to be written to the client's transport, subclasses must
+  // synchronize on the queue when using it.
+  protected final OutputQueue outbound = new OutputQueue();
+  private long backloggedSince = 0;
+  private boolean promptQueued = false;
+  private boolean evicted = false;
+
+  // MCCP2 compression state
+  private Deflater deflater = null;
+  private int compressionLevel = defaultCompressionLevel;
+  private final byte[] deflateBuffer = new byte[8192];
+  private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+  // GMCP state
+  private final Gmcp gmcp = new Gmcp(this);
+
   /**
-   * Creates a new connection through the given socket.
-   * @param s Socket for the connection
-   * @throws IOException If the input and output streams could not be used for
-   *   the socket.
+   * Creates a new connection. Subclasses must call {@link #begin()} once they
+   * are able to send output to the client.
    */
-  public Connection(Socket s) throws IOException {
-    socket = s;
+  protected Connection() {
     connectionTime = new Date();
-    out = new PrintWriter(socket.getOutputStream());
-    in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+  }
+
+  /**
+   * Begins the connection's session by offering telnet options to the client
+   * and placing the connection into the login state.
+   */
+  protected void begin() {
+    negotiate();
     controller = new LoginController(this);
   }
 
+  /**
+   * Offers the telnet options supported by the server to the client.
+   */
+  protected void negotiate() {
+    if (compressionEnabled) {
+      writeCommand(new byte[] {
+        (byte)Telnet.IAC, (byte)Telnet.WILL, (byte)Telnet.COMPRESS2 });
+    }
+    if (gmcpEnabled) {
+      writeCommand(new byte[] {
+        (byte)Telnet.IAC, (byte)Telnet.WILL, (byte)Telnet.GMCP });
+    }
+  }
+
   /**
    * Sets the state controller for the connection.
    * @param c State controller.
@@ -55,54 +210,369 @@ public class Connection implements Runnable {
   }
 
   /**
-   * Closes this connection.
+   * Closes this connection. Output that has already been sent to the
+   * connection is written to the client before the transport is closed, if
+   * the client does not accept it within <code>game.output.close-linger</code>
+   * clock ticks the connection is aborted.
    */
   public void close() {
-    try {
-      socket.close();
-    } catch (IOException ioe) {
-      Log.error(ioe.getMessage());
+    int queued;
+    synchronized (output) {
+      if (!open) return;
+      open = false;
+      flush();
+      endCompression();
+    }
+    synchronized (outbound) {
+      queueHighWater.record(outbound.getHighWater());
+      queued = outbound.size();
+    }
+    closeTransport();
+    if (queued > 0) {
+      Clock.getInstance().schedule("close-linger", closeLinger, this::abort);
+    }
+  }
+
+  /**
+   * Closes this connection immediately, discarding any output that has not
+   * yet been written to the client.
+   */
+  public void abort() {
+    synchronized (output) {
+      open = false;
+      output.setLength(0);
+      endCompression();
+    }
+    synchronized (outbound) {
+      outbound.clear();
+    }
+    closeTransport();
+  }
+
+  /**
+   * Releases the connection's deflater, if any. Callers must hold the output
+   * lock.
+   */
+  private void endCompression() {
+    if (deflater != null) {
+      deflater.end();
+      deflater = null;
+    }
+  }
+
+  /**
+   * Determines whether the client is backlogged, that is whether it has more
+   * than <code>game.output.queue-limit</code> bytes of output waiting to be
+   * written. Clients that have been backlogged for too long, or that have
+   * reached <code>game.output.queue-max</code> bytes of waiting output, are
+   * disconnected. Callers must hold the output lock.
+   * @return True if the client is backlogged.
+   */
+  private boolean checkBacklog() {
+    int queued;
+    synchronized (outbound) {
+      queued = outbound.size();
+    }
+    if (queued < queueLimit) {
+      backloggedSince = 0;
+      promptQueued = false;
+      return false;
+    }
+    long now = System.nanoTime();
+    if (backloggedSince == 0) {
+      backloggedSince = now;
+    }
+    if (!evicted && (queued >= queueMax ||
+      (stallTimeout > 0 && now - backloggedSince > stallTimeout)))
+    {
+      evicted = true;
+      evictions.increment();
+      Log.info(String.format(
+        "Disconnecting %s, %d bytes of output waiting",
+        getInetAddress(), queued));
+      abort();
+    }
+    return true;
+  }
+
+  /**
+   * @return The number of bytes of output waiting to be written to the
+   *   client.
+   */
+  public int getQueuedBytes() {
+    synchronized (outbound) {
+      return outbound.size();
+    }
+  }
+
+  /**
+   * @return True if the connection has not been closed.
+   */
+  public boolean isOpen() {
+    return open;
+  }
+
+  /**
+   * Closes the underlying transport for the connection. If output is still
+   * waiting in the outbound queue the transport must write it before closing.
+   */
+  protected abstract void closeTransport();
+
+  /**
+   * Writes bytes to the client, bypassing compression.
+   * @param bytes Bytes to write.
+   */
+  protected abstract void writeRaw(byte[] bytes);
+
+  /**
+   * Writes bytes to the client, compressing them if compression has been
+   * negotiated. Callers must hold the output lock.
+   * @param bytes Bytes to write.
+   */
+  private void writeOutput(byte[] bytes) {
+    if (deflater == null) {
+      writeRaw(bytes);
+      return;
+    }
+    long start = System.nanoTime();
+    compressed.reset();
+    deflater.setInput(bytes);
+    int n;
+    do {
+      n = deflater.deflate(deflateBuffer, 0, deflateBuffer.length, Deflater.SYNC_FLUSH);
+      compressed.write(deflateBuffer, 0, n);
+    } while (n == deflateBuffer.length);
+    deflateNanos.add(System.nanoTime() - start);
+    uncompressedBytes.add(bytes.length);
+    compressedBytes.add(compressed.size());
+    writeRaw(compressed.toByteArray());
+  }
+
+  /**
+   * Handles a line of input decoded from the client.
+   * @param line Buffer holding the line.
+   * @param length Number of bytes in the line.
+   */
+  public void onLine(byte[] line, int length) {
+    lastInputTime = System.nanoTime();
+    if (open) {
+      processInput(new String(line, 0, length, charset));
+    }
+  }
+
+  /**
+   * Handles telnet option negotiation from the client. Replies to options
+   * the connection did not offer (such as echo) are ignored.
+   * @param command Negotiation command (WILL, WONT, DO, or DONT).
+   * @param option The option being negotiated.
+   */
+  public void onNegotiation(int command, int option) {
+    if (option == Telnet.COMPRESS2) {
+      if (command == Telnet.DO && compressionEnabled) {
+        startCompression();
+      } else if (command == Telnet.DONT) {
+        stopCompression();
+      }
+    } else if (option == Telnet.GMCP) {
+      if (command == Telnet.DO && gmcpEnabled) {
+        if (!gmcp.isEnabled()) {
+          gmcpSessions.increment();
+        }
+        gmcp.setEnabled(true);
+      } else if (command == Telnet.DONT) {
+        gmcp.setEnabled(false);
+      }
+    }
+  }
+
+  /**
+   * Begins compressing output to the client (MCCP2).
+   */
+  private void startCompression() {
+    synchronized (output) {
+      if (deflater != null) return;
+      flush();
+      writeRaw(new byte[] {
+        (byte)Telnet.IAC, (byte)Telnet.SB, (byte)Telnet.COMPRESS2,
+        (byte)Telnet.IAC, (byte)Telnet.SE });
+      deflater = new Deflater(compressionLevel);
+      compressedSessions.increment();
+    }
+  }
+
+  /**
+   * Ends the compressed stream, further output is sent uncompressed.
+   */
+  private void stopCompression() {
+    synchronized (output) {
+      if (deflater == null) return;
+      flush();
+      compressed.reset();
+      deflater.finish();
+      while (!deflater.finished()) {
+        int n = deflater.deflate(deflateBuffer);
+        compressed.write(deflateBuffer, 0, n);
+      }
+      deflater.end();
+      deflater = null;
+      writeRaw(compressed.toByteArray());
+    }
+  }
+
+  /**
+   * @return True if output to the client is being compressed.
+   */
+  public boolean isCompressed() {
+    synchronized (output) {
+      return deflater != null;
+    }
+  }
+
+  /**
+   * Sets the zlib compression level for this connection.
+   * @param level Compression level from 0 (none) to 9 (best).
+   */
+  public void setCompressionLevel(int level) {
+    if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level: " + level);
+    }
+    synchronized (output) {
+      compressionLevel = level;
+      if (deflater != null) {
+        deflater.setLevel(level);
+      }
     }
   }
 
+  /**
+   * @return The zlib compression level for this connection.
+   */
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  /**
+   * @return True if the client has accepted GMCP.
+   */
+  public boolean hasGmcp() {
+    return gmcp.isEnabled();
+  }
+
+  /**
+   * Sends a GMCP message to the client. The message is written immediately
+   * after any output that has already been buffered.
+   * @param message Package and message name (e.g. "Char.Vitals").
+   * @param data Data for the message.
+   */
+  public void sendGmcp(String message, JSONObject data) {
+    if (!gmcp.isEnabled()) {
+      return;
+    }
+    byte[] payload = (message + " " + data).getBytes(charset);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 8);
+    bytes.write(Telnet.IAC);
+    bytes.write(Telnet.SB);
+    bytes.write(Telnet.GMCP);
+    for (byte b : payload) {
+      bytes.write(b);
+      if ((b & 0xFF) == Telnet.IAC) {
+        bytes.write(Telnet.IAC);
+      }
+    }
+    bytes.write(Telnet.IAC);
+    bytes.write(Telnet.SE);
+    gmcpMessages.increment();
+    writeCommand(bytes.toByteArray());
+  }
+
+  /**
+   * Sends GMCP updates for any of the player's values that have changed since
+   * they were last sent. Does nothing if the client has not accepted GMCP.
+   */
+  public void updateGmcp() {
+    gmcp.update();
+  }
+
+  /**
+   * Returns the internet address from which this connection is connected.
+   * @return The internet address of the connection.
+   */
+  public abstract InetAddress getInetAddress();
+
   /**
    * Turns client echo off.
    */
   public void echoOff() {
-    try {
-      int[] cmd = {255, 251, 1};
-      for (int i : cmd)
-        socket.getOutputStream().write(i);
-      byte[] bytes = {0, 0, 0};
-      socket.getInputStream().read(bytes);
-    } catch (IOException ioe) {
-      ioe.printStackTrace();
-    }
+    writeCommand(new byte[] { (byte)Telnet.IAC, (byte)Telnet.WILL, (byte)Telnet.ECHO });
   }
 
   /**
    * Turns client echo on.
    */
   public void echoOn() {
-    try {
-      int[] cmd = {255, 252, 1};
-      for (int i : cmd)
-        socket.getOutputStream().write(i);
-      byte[] bytes = {0, 0, 0};
-      socket.getInputStream().read(bytes);
-    } catch (IOException ioe) {
-      ioe.printStackTrace();
-    }
+    writeCommand(new byte[] { (byte)Telnet.IAC, (byte)Telnet.WONT, (byte)Telnet.ECHO });
   }
 
+  /**
+   * Writes a telnet command to the client immediately after any output that
+   * has already been buffered.
+   * @param bytes Command bytes to write.
+   */
+  protected void writeCommand(byte[] bytes) {
+    synchronized (output) {
+      flush();
+      writeOutput(bytes);
+    }
+  }
 
   /**
    * Basic output function for connections.
    * @param s String to send.
    */
   public void send(String s) {
-    out.print(Color.format(s));
-    out.flush();
+    String formatted = Color.format(s);
+    synchronized (output) {
+      output.append(formatted);
+      bufferedMessages++;
+      if (!coalesce || output.length() >= flushThreshold) {
+        flush();
+      }
+    }
+  }
+
+  /**
+   * Sends a string that is not essential to the client, such as a message
+   * about another player's actions. The string is dropped if the client is
+   * backlogged and <code>game.output.drop-cosmetic</code> is set.
+   * @param s String to send.
+   */
+  public void sendCosmetic(String s) {
+    synchronized (output) {
+      if (dropCosmetic && checkBacklog()) {
+        droppedMessages.increment();
+        return;
+      }
+      send(s);
+    }
+  }
+
+  /**
+   * Writes all buffered output to the client.
+   */
+  public void flush() {
+    synchronized (output) {
+      checkBacklog();
+      if (output.length() == 0) {
+        return;
+      }
+      byte[] bytes = output.toString().getBytes(charset);
+      flushes.increment();
+      messagesPerFlush.record(bufferedMessages);
+      bytesPerFlush.record(bytes.length);
+      output.setLength(0);
+      bufferedMessages = 0;
+      writeOutput(bytes);
+    }
   }
 
   /**
@@ -122,24 +592,133 @@ public class Connection implements Runnable {
   }
 
   /**
-   * Continuously collects commands from the user and handles them.
+   * Determines the prompt for the connection. Clients that have accepted GMCP
+   * receive their vitals out of band, so during play they are sent the
+   * minimal prompt given by <code>game.gmcp.prompt</code> (if one is set)
+   * rather than the player's custom prompt.
+   * @return The prompt for the connection's current state.
    */
-  public void run() {
-    try {
-      while (socket.isConnected()) {
-        if (skipPrompt) {
-          skipPrompt = false;
-        } else {
-          send(controller.getPrompt());
-        }
+  public String getPrompt() {
+    if (gmcp.isEnabled() && !gmcpPrompt.isEmpty() &&
+      controller instanceof PlayController)
+    {
+      return gmcpPrompt;
+    }
+    return controller.getPrompt();
+  }
 
-        String input = in.readLine();
-        if (input != null && !ignoreInput) {
-          controller.parse(input);
+  /**
+   * Sends the prompt for the connection's current state controller. If the
+   * client is backlogged and <code>game.output.collapse-prompts</code> is set
+   * the prompt is only sent if no other prompt has been queued since the
+   * client became backlogged.
+   */
+  public void writePrompt() {
+    synchronized (output) {
+      if (collapsePrompts && checkBacklog()) {
+        if (promptQueued) {
+          collapsedPrompts.increment();
+          return;
         }
+        promptQueued = true;
       }
-    } catch (IOException ioe) {
-      close();
+      send(getPrompt());
+    }
+  }
+
+  /**
+   * Sends the prompt for the connection's current state controller, unless
+   * the prompt has been explicitly skipped.
+   */
+  protected void sendPrompt() {
+    if (skipPrompt) {
+      skipPrompt = false;
+    } else {
+      writePrompt();
+    }
+  }
+
+  /**
+   * Handles a single line of input from the client.
+   * @param input Line of input.
+   */
+  protected void handleInput(String input) {
+    if (input != null && !ignoreInput) {
+      controller.parse(input);
+    }
+  }
+
+  /**
+   * Handles a single line of input from the client, then sends any GMCP
+   * updates and the prompt, and flushes the response. In single writer mode
+   * the line is queued for the game loop instead.
+   * @param input Line of input.
+   */
+  protected void processInput(String input) {
+    if (GameLoop.isEnabled()) {
+      queueCommand(input, GameLoop::ready);
+      return;
+    }
+    runCommand(input);
+  }
+
+  /**
+   * Runs a single line of input and sends the response.
+   * @param input Line of input.
+   */
+  private void runCommand(String input) {
+    handleInput(input);
+    updateGmcp();
+    sendPrompt();
+    flush();
+  }
+
+  /**
+   * Queues a line of input to be run later, by the game loop or by a worker.
+   * At most <code>game.loop.command-queue</code> lines may wait.
+   * @param input Line of input.
+   * @param ready Told about the connection's queue when it becomes non-empty,
+   *   so that it can arrange for the queued commands to be run.
+   */
+  void queueCommand(String input, Consumer<GameLoop.CommandQueue> ready) {
+    boolean submit;
+    synchronized (commands) {
+      if (commands.size() >= commandQueueLimit) {
+        droppedCommands.increment();
+        return;
+      }
+      commands.add(input);
+      submit = commands.size() == 1;
+    }
+    if (submit) {
+      ready.accept(this::runQueuedCommand);
+    }
+  }
+
+  /**
+   * Runs the oldest queued command.
+   * @return True if more commands remain queued.
+   */
+  private boolean runQueuedCommand() {
+    String input;
+    synchronized (commands) {
+      input = commands.peek();
+    }
+    if (input == null) {
+      return false;
+    }
+    try {
+      if (open) {
+        runCommand(input);
+      }
+    } catch (Throwable e) {
+      // Keep running the commands queued after it, even if it threw an error
+      Log.error("Error running command '" + input + "': " + e.getMessage());
+      e.printStackTrace();
+    }
+    synchronized (commands) {
+      commands.poll();
+      return !commands.isEmpty();
     }
   }
 
@@ -166,18 +745,18 @@ public class Connection implements Runnable {
   }
 
   /**
-   * Returns the internet address from which this connection is connected.
-   * @return The internet address of the connection.
+   * @return the connectionTime
    */
-  public InetAddress getInetAddress() {
-    return socket.getInetAddress();
+  public Date getConnectionTime() {
+    return connectionTime;
   }
 
   /**
-   * @return the connectionTime
+   * @return Milliseconds since the client last sent a line of input (or
+   *   since it connected, if it has not sent any).
    */
-  public Date getConnectionTime() {
-    return connectionTime;
+  public long getIdleTime() {
+    return (System.nanoTime() - lastInputTime) / 1000000;
   }
 
   /**
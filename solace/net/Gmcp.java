@@ -0,0 +1,180 @@
+package solace.net;
+
+import org.json.*;
+import solace.cmd.PlayController;
+import solace.game.*;
+import solace.util.Log;
+
+/**
+ * Generic MUD Communication Protocol (telnet option 201) state for a
+ * connection. Once a client has accepted GMCP the connection pushes
+ * structured <code>Char.Vitals</code>, <code>Room.Info</code>, and
+ * <code>Char.Target</code> messages to it. Each message is only sent when
+ * its values have changed since it was last sent, so updating a connection
+ * whose character is idle costs a handful of comparisons.
+ * @author Ryan Sandor Richards
+ */
+class Gmcp {
+  private final Connection connection;
+  private volatile boolean enabled = false;
+
+  // Last values sent to the client
+  private solace.game.Character character = null;
+  private final int[] vitals = new int[6];
+  private Room room = null;
+  private Player target = null;
+  private int targetHealth = -1;
+
+  /**
+   * Creates GMCP state for the given connection.
+   * @param c Connection for the state.
+   */
+  Gmcp(Connection c) {
+    connection = c;
+  }
+
+  /**
+   * @return True if the client has accepted GMCP.
+   */
+  boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Enables or disables GMCP for the connection. Enabling GMCP forces all
+   * messages to be resent on the next update.
+   * @param e Whether or not GMCP should be enabled.
+   */
+  synchronized void setEnabled(boolean e) {
+    enabled = e;
+    reset();
+  }
+
+  /**
+   * Forgets the last values sent to the client.
+   */
+  private void reset() {
+    character = null;
+    vitals[0] = -1;
+    room = null;
+    target = null;
+    targetHealth = -1;
+  }
+
+  /**
+   * Sends updates for any values that have changed since the last update.
+   */
+  synchronized void update() {
+    if (!enabled || !connection.hasAccount()) {
+      return;
+    }
+    Account account = connection.getAccount();
+    if (!account.hasActiveCharacter() ||
+      !(connection.getStateController() instanceof PlayController))
+    {
+      return;
+    }
+
+    solace.game.Character ch = account.getActiveCharacter();
+    if (ch != character) {
+      reset();
+      character = ch;
+    }
+
+    try {
+      updateVitals(ch);
+      updateRoom(ch);
+      updateTarget(ch);
+    } catch (JSONException je) {
+      Log.error("Unable to build GMCP message: " + je.getMessage());
+    }
+  }
+
+  /**
+   * Sends <code>Char.Vitals</code> if the character's resources have changed.
+   * @param ch Character for the connection.
+   * @throws JSONException If the message could not be built.
+   */
+  private void updateVitals(solace.game.Character ch) throws JSONException {
+    int hp = ch.getHp(), maxHp = ch.getMaxHp();
+    int mp = ch.getMp(), maxMp = ch.getMaxMp();
+    int sp = ch.getSp(), maxSp = ch.getMaxSp();
+    if (vitals[0] == hp && vitals[1] == maxHp && vitals[2] == mp &&
+      vitals[3] == maxMp && vitals[4] == sp && vitals[5] == maxSp)
+    {
+      return;
+    }
+    vitals[0] = hp; vitals[1] = maxHp;
+    vitals[2] = mp; vitals[3] = maxMp;
+    vitals[4] = sp; vitals[5] = maxSp;
+
+    JSONObject data = new JSONObject();
+    data.put("hp", hp);
+    data.put("maxhp", maxHp);
+    data.put("mp", mp);
+    data.put("maxmp", maxMp);
+    data.put("sp", sp);
+    data.put("maxsp", maxSp);
+    connection.sendGmcp("Char.Vitals", data);
+  }
+
+  /**
+   * Sends <code>Room.Info</code> if the character has changed rooms.
+   * @param ch Character for the connection.
+   * @throws JSONException If the message could not be built.
+   */
+  private void updateRoom(solace.game.Character ch) throws JSONException {
+    Room r = ch.getRoom();
+    if (r == null || r == room) {
+      return;
+    }
+    room = r;
+
+    JSONArray exits = new JSONArray();
+    for (Exit exit : r.getExits()) {
+      if (!exit.getNames().isEmpty()) {
+        exits.put(exit.getNames().getFirst());
+      }
+    }
+
+    JSONObject data = new JSONObject();
+    data.put("num", r.getId());
+    data.put("name", r.getTitle().trim());
+    data.put("area", r.getArea().getTitle());
+    data.put("exits", exits);
+    connection.sendGmcp("Room.Info", data);
+  }
+
+  /**
+   * Sends <code>Char.Target</code> if the character's combat target, or the
+   * target's health, has changed. An empty message is sent when the
+   * character no longer has a target.
+   * @param ch Character for the connection.
+   * @throws JSONException If the message could not be built.
+   */
+  private void updateTarget(solace.game.Character ch) throws JSONException {
+    Player t = null;
+    int health = -1;
+    if (ch.isFighting()) {
+      Battle battle = ch.getBattle();
+      if (battle != null) {
+        t = battle.getTargetFor(ch);
+      }
+      if (t != null) {
+        health = (int)(100.0 * (double)t.getHp() / (double)t.getMaxHp());
+      }
+    }
+    if (t == target && health == targetHealth) {
+      return;
+    }
+    target = t;
+    targetHealth = health;
+
+    JSONObject data = new JSONObject();
+    if (t != null) {
+      data.put("name", t.getName());
+      data.put("hp", health);
+    }
+    connection.sendGmcp("Char.Target", data);
+  }
+}
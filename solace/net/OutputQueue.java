@@ -0,0 +1,85 @@
+package solace.net;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import solace.util.Metrics;
+
+/**
+ * Queue of output waiting to be written to a client's transport. The queue
+ * keeps track of how many bytes are waiting and the largest number of bytes
+ * that have ever been waiting (its high-water mark) so that connections can
+ * detect slow clients. Output queues are not thread safe, callers must
+ * synchronize on the queue.
+ * @author Ryan Sandor Richards
+ */
+class OutputQueue {
+  private static final Metrics.Histogram depth =
+    Metrics.histogram("net.output.queue.bytes");
+
+  private final Deque<ByteBuffer> buffers = new ArrayDeque<>();
+  private int size = 0;
+  private int highWater = 0;
+
+  /**
+   * Adds a buffer to the end of the queue.
+   * @param buffer Buffer to add.
+   */
+  void add(ByteBuffer buffer) {
+    buffers.add(buffer);
+    size += buffer.remaining();
+    if (size > highWater) {
+      highWater = size;
+    }
+    depth.record(size);
+  }
+
+  /**
+   * @return The buffer at the head of the queue, or null if it is empty.
+   */
+  ByteBuffer peek() {
+    return buffers.peek();
+  }
+
+  /**
+   * Records that bytes from the buffer at the head of the queue have been
+   * written, removing the buffer once it has been completely written.
+   * @param n Number of bytes written.
+   */
+  void written(int n) {
+    size -= n;
+    ByteBuffer head = buffers.peek();
+    if (head != null && !head.hasRemaining()) {
+      buffers.poll();
+    }
+  }
+
+  /**
+   * Removes all buffers from the queue.
+   */
+  void clear() {
+    buffers.clear();
+    size = 0;
+  }
+
+  /**
+   * @return True if there is no output in the queue.
+   */
+  boolean isEmpty() {
+    return buffers.isEmpty();
+  }
+
+  /**
+   * @return The number of bytes in the queue.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * @return The largest number of bytes that have been in the queue.
+   */
+  int getHighWater() {
+    return highWater;
+  }
+}
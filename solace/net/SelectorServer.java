@@ -0,0 +1,362 @@
+package solace.net;
+
+import solace.game.*;
+import solace.io.Config;
+import solace.util.Log;
+
+import java.net.*;
+import java.io.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Non-blocking game server. Incoming connections are accepted on the listening
+ * thread and then handed off to a small, fixed pool of I/O workers. Each
+ * worker multiplexes many connections over a single selector, so the number
+ * of threads used by the server does not grow with the number of players.
+ *
+ * The number of workers is set via the <code>game.server.io-threads</code>
+ * configuration option.
+ *
+ * If <code>game.server.websocket-port</code> is set the server also accepts
+ * WebSocket connections from browser clients on that port (see
+ * {@link WebSocketConnection}). WebSocket connections are accepted by the
+ * first I/O worker and serviced by the same workers as telnet connections.
+ *
+ * @author Ryan Sandor Richards
+ */
+public class SelectorServer extends Server
+{
+  private ServerSocketChannel serverChannel;
+  private ServerSocketChannel webSocketChannel = null;
+  private IoWorker[] workers;
+  private int nextWorker = 0;
+
+  /**
+   * An I/O worker owns a selector and a thread, and services all of the
+   * channel connections registered with it.
+   */
+  static class IoWorker implements Runnable
+  {
+    private final Selector selector;
+    private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+    private final Queue<SocketChannel> pendingWebSockets = new ConcurrentLinkedQueue<>();
+    private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+    private final Queue<ChannelConnection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    /**
+     * Creates a new I/O worker.
+     * @throws IOException If the worker's selector could not be opened.
+     */
+    IoWorker()
+      throws IOException
+    {
+      selector = Selector.open();
+    }
+
+    /**
+     * Registers a newly accepted channel with this worker.
+     * @param channel Channel to register.
+     */
+    void register(SocketChannel channel)
+    {
+      pendingChannels.add(channel);
+      selector.wakeup();
+    }
+
+    /**
+     * Registers a newly accepted WebSocket channel with this worker.
+     * @param channel Channel to register.
+     */
+    void registerWebSocket(SocketChannel channel)
+    {
+      pendingWebSockets.add(channel);
+      selector.wakeup();
+    }
+
+    /**
+     * Runs a task on the worker's thread before its next selection.
+     * @param task Task to run.
+     */
+    void execute(Runnable task)
+    {
+      pendingTasks.add(task);
+      selector.wakeup();
+    }
+
+    /**
+     * Requests that the worker begin watching the connection's channel for
+     * writability.
+     * @param c Connection with pending output.
+     */
+    void enableWrites(ChannelConnection c)
+    {
+      pendingWrites.add(c);
+      selector.wakeup();
+    }
+
+    /**
+     * Stops the worker.
+     */
+    void stop()
+    {
+      running = false;
+      selector.wakeup();
+    }
+
+    /**
+     * Creates connections for each channel that has been handed to the worker
+     * since the last select.
+     */
+    private void registerPendingChannels()
+    {
+      SocketChannel channel;
+      while ((channel = pendingChannels.poll()) != null) {
+        try {
+          channel.configureBlocking(false);
+          SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+          ChannelConnection c = new ChannelConnection(channel, this, key);
+          Game.addConnection(c);
+          c.start();
+        } catch (IOException ioe) {
+          Log.error("Unable to register incoming connection: " + ioe.getMessage());
+        }
+      }
+      while ((channel = pendingWebSockets.poll()) != null) {
+        try {
+          channel.configureBlocking(false);
+          SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+          // The session begins once the client completes the handshake
+          Game.addConnection(new WebSocketConnection(channel, this, key));
+        } catch (IOException ioe) {
+          Log.error("Unable to register incoming connection: " + ioe.getMessage());
+        }
+      }
+    }
+
+    /**
+     * Runs each task that has been handed to the worker since the last
+     * select.
+     */
+    private void runPendingTasks()
+    {
+      Runnable task;
+      while ((task = pendingTasks.poll()) != null) {
+        task.run();
+      }
+    }
+
+    /**
+     * Enables write interest for each connection that has requested it.
+     */
+    private void enablePendingWrites()
+    {
+      ChannelConnection c;
+      while ((c = pendingWrites.poll()) != null) {
+        c.onWriteRequested();
+      }
+    }
+
+    /**
+     * Main selection loop for the worker.
+     */
+    public void run()
+    {
+      while (running) {
+        try {
+          selector.select();
+          runPendingTasks();
+          registerPendingChannels();
+          enablePendingWrites();
+
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (key.isValid() && key.isAcceptable()) {
+              ((Runnable)key.attachment()).run();
+              continue;
+            }
+            ChannelConnection c = (ChannelConnection)key.attachment();
+            try {
+              if (key.isValid() && key.isReadable()) {
+                c.onReadable();
+              }
+              if (key.isValid() && key.isWritable()) {
+                c.onWritable();
+              }
+            } catch (CancelledKeyException cke) {
+              c.abort();
+            } catch (Throwable t) {
+              Log.error("Error handling connection I/O: " + t.getMessage());
+              t.printStackTrace();
+            }
+          }
+        } catch (IOException ioe) {
+          Log.error("I/O worker selection failed: " + ioe.getMessage());
+        }
+      }
+
+      try {
+        selector.close();
+      } catch (IOException ioe) {
+        Log.error("Unable to close I/O worker selector");
+      }
+    }
+  }
+
+  /**
+   * Creates a new selector server for listening on the given port.
+   * @param port Port for the server to listen.
+   * @throws IOException If the server could not be initialized on the given
+   *   port.
+   */
+  public SelectorServer(int port)
+    throws IOException
+  {
+    super(port);
+  }
+
+  /**
+   * Initalizes the server channel and starts the I/O workers.
+   * @param p Port to listen on.
+   * @throws IOException If the server could not be initialized properly on the
+   *   given port.
+   */
+  @Override
+  protected void initialize(int p)
+    throws IOException
+  {
+    port = p;
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.socket().bind(new InetSocketAddress(port));
+
+    int threads = Math.max(1, Integer.parseInt(
+      Config.get("game.server.io-threads", "2")));
+    workers = new IoWorker[threads];
+    for (int i = 0; i < threads; i++) {
+      workers[i] = new IoWorker();
+      Thread thread = new Thread(workers[i], "solace-io-" + i);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    Log.info("Game Server Initialized (selector mode, " + threads + " I/O threads)");
+
+    int webSocketPort = Integer.parseInt(
+      Config.get("game.server.websocket-port", "0"));
+    if (webSocketPort > 0) {
+      listenForWebSockets(webSocketPort);
+    }
+  }
+
+  /**
+   * Begins accepting WebSocket connections on the given port. Connections are
+   * accepted by the first I/O worker, no additional threads are used.
+   * @param p Port to listen on.
+   * @throws IOException If the server could not listen on the port.
+   */
+  public void listenForWebSockets(int p)
+    throws IOException
+  {
+    webSocketChannel = ServerSocketChannel.open();
+    webSocketChannel.socket().bind(new InetSocketAddress(p));
+    webSocketChannel.configureBlocking(false);
+    final IoWorker acceptor = workers[0];
+    acceptor.execute(() -> {
+      try {
+        webSocketChannel.register(acceptor.selector, SelectionKey.OP_ACCEPT,
+          (Runnable)this::acceptWebSockets);
+      } catch (IOException ioe) {
+        Log.error("Unable to accept WebSocket connections: " + ioe.getMessage());
+      }
+    });
+    Log.info("Accepting WebSocket connections on port " + p);
+  }
+
+  /**
+   * Accepts all pending WebSocket connections, handing each to the next I/O
+   * worker. Called by the accepting I/O worker.
+   */
+  private void acceptWebSockets()
+  {
+    try {
+      SocketChannel channel;
+      while ((channel = webSocketChannel.accept()) != null) {
+        Log.info("Incoming WebSocket connection from " +
+          channel.socket().getInetAddress().toString());
+        nextWorker().registerWebSocket(channel);
+      }
+    } catch (IOException ioe) {
+      Log.error("Unable to accept WebSocket connection: " + ioe.getMessage());
+    }
+  }
+
+  /**
+   * @return The next I/O worker to be given a connection, round robin.
+   */
+  private synchronized IoWorker nextWorker()
+  {
+    IoWorker worker = workers[nextWorker];
+    nextWorker = (nextWorker + 1) % workers.length;
+    return worker;
+  }
+
+  /**
+   * Begins the main accept loop for the server.
+   */
+  @Override
+  public void listen()
+  {
+    listening = true;
+    Log.info("Game server running and listening on port " + port);
+
+    while (listening)
+    {
+      try
+      {
+        SocketChannel channel = serverChannel.accept();
+        Log.info("Incoming connection from " +
+          channel.socket().getInetAddress().toString());
+        initChannel(channel);
+      }
+      catch (IOException ioe)
+      {
+        if (listening)
+          Log.error("Unable to accept connection on port " + port);
+      }
+    }
+  }
+
+  /**
+   * Hands an incoming channel to the next I/O worker, round robin.
+   * @param channel Channel to initialize.
+   */
+  public void initChannel(SocketChannel channel)
+  {
+    nextWorker().register(channel);
+  }
+
+  /**
+   * Stops listening for new connections and stops all I/O workers.
+   */
+  @Override
+  protected void closeListener()
+  {
+    try {
+      serverChannel.close();
+      if (webSocketChannel != null) {
+        webSocketChannel.close();
+      }
+    }
+    catch (IOException ioe)
+    {
+      Log.error("I/O Error on server channel close during shutdown");
+    }
+    for (IoWorker worker : workers) {
+      worker.stop();
+    }
+  }
+}
@@ -1,7 +1,9 @@
 package solace.net;
 
 import solace.game.*;
+import solace.io.Config;
 import solace.util.Log;
+import solace.util.Tasks;
 
 import java.net.*;
 import java.io.*;
@@ -13,11 +15,34 @@ import java.util.*;
  */
 public class Server
 {
-  private int port;
+  protected int port;
+  protected boolean listening = false;
   private ServerSocket serverSocket;
-  private boolean listening = false;
   LinkedList connections = new LinkedList();
 
+  /**
+   * Creates a new server for the connection model given by the
+   * <code>game.server.mode</code> configuration option. The "selector" mode
+   * uses non-blocking I/O on a small pool of threads, any other value results
+   * in the default thread-per-connection server.
+   * @param port Port for the server to listen.
+   * @return The newly created server.
+   * @throws IOException If the server could not be initialized on the given
+   *   port.
+   */
+  public static Server create(int port)
+    throws IOException
+  {
+    String mode = Config.get("game.server.mode", "thread");
+    if (mode.equals("selector")) {
+      return new SelectorServer(port);
+    }
+    if (Integer.parseInt(Config.get("game.server.websocket-port", "0")) > 0) {
+      Log.warn("WebSocket connections require the \"selector\" server mode");
+    }
+    return new Server(port);
+  }
+
   /**
    * Creates a new server for listening on port 4000.
    * @throws IOException If the server was unable to be initialized on port
@@ -87,13 +112,13 @@ public class Server
     throws IOException
   {
     // Create the new connection
-    Connection c = new Connection(s);
+    SocketConnection c = new SocketConnection(s);
 
     // Add the connection to the game world
     Game.addConnection(c);
 
-    // Start the connection thread
-    (new Thread(c)).start();
+    // Start the connection loop
+    Tasks.execute(c);
   }
 
   /**
@@ -103,10 +128,15 @@ public class Server
   public void shutdown()
   {
     listening = false;
+    closeConnections();
+    closeListener();
+  }
 
-    /*
-     * Close all connections to the server.
-     */
+  /**
+   * Closes all connections to the server.
+   */
+  protected void closeConnections()
+  {
     Collection connections = Collections.synchronizedCollection(
       Game.getConnections()
     );
@@ -120,7 +150,13 @@ public class Server
         c.close();
       }
     }
+  }
 
+  /**
+   * Stops listening for new connections.
+   */
+  protected void closeListener()
+  {
     try {
       serverSocket.close();
     }
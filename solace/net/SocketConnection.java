@@ -0,0 +1,139 @@
+package solace.net;
+
+import java.net.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import solace.util.*;
+
+/**
+ * Connection backed by a blocking socket. Each socket connection runs its own
+ * input loop, and as such requires a dedicated thread. Output is queued and
+ * written to the socket by a separate task, so threads sending output to the
+ * connection never block on a slow client.
+ * @author Ryan Sandor Richards (Gaius)
+ */
+public class SocketConnection extends Connection implements Runnable {
+  Socket socket;
+  OutputStream out;
+  InputStream in;
+  private final byte[] readBuffer = new byte[4096];
+  private final TelnetDecoder decoder = new TelnetDecoder(this);
+  private boolean writing = false;
+  private boolean closed = false;
+
+  /**
+   * Creates a new connection through the given socket.
+   * @param s Socket for the connection
+   * @throws IOException If the input and output streams could not be used for
+   *   the socket.
+   */
+  public SocketConnection(Socket s) throws IOException {
+    socket = s;
+    out = socket.getOutputStream();
+    in = socket.getInputStream();
+    begin();
+  }
+
+  /**
+   * Closes the connection's socket, or has the writer task close it once it
+   * has written any queued output.
+   */
+  protected void closeTransport() {
+    synchronized (outbound) {
+      closed = true;
+      if (!outbound.isEmpty()) return;
+    }
+    closeSocket();
+  }
+
+  /**
+   * Closes the connection's socket.
+   */
+  private void closeSocket() {
+    try {
+      socket.close();
+    } catch (IOException ioe) {
+      Log.error(ioe.getMessage());
+    }
+  }
+
+  /**
+   * Queues bytes to be written to the socket, starting a writer task if one
+   * is not already running. This method never blocks.
+   * @param bytes Bytes to write.
+   */
+  @Override
+  protected void writeRaw(byte[] bytes) {
+    synchronized (outbound) {
+      if (closed) return;
+      outbound.add(ByteBuffer.wrap(bytes));
+      if (writing) return;
+      writing = true;
+    }
+    Tasks.execute(this::drain);
+  }
+
+  /**
+   * Writes queued output to the socket until the queue is empty.
+   */
+  private void drain() {
+    try {
+      while (true) {
+        ByteBuffer buffer;
+        synchronized (outbound) {
+          buffer = outbound.peek();
+          if (buffer == null) {
+            writing = false;
+            if (!closed) return;
+            break;
+          }
+        }
+        int n = buffer.remaining();
+        out.write(buffer.array(), buffer.position(), n);
+        out.flush();
+        synchronized (outbound) {
+          if (outbound.peek() == buffer) {
+            buffer.position(buffer.position() + n);
+            outbound.written(n);
+          }
+        }
+      }
+    } catch (IOException ioe) {
+      Log.debug("Unable to write to connection: " + ioe.getMessage());
+      synchronized (outbound) {
+        writing = false;
+      }
+      abort();
+      return;
+    }
+    closeSocket();
+  }
+
+  /**
+   * Continuously collects commands from the user and handles them.
+   */
+  public void run() {
+    try {
+      sendPrompt();
+      flush();
+      int read;
+      while (isOpen() && (read = in.read(readBuffer)) >= 0) {
+        decoder.decode(readBuffer, 0, read);
+      }
+    } catch (IOException ioe) {
+      Log.debug("Unable to read from connection: " + ioe.getMessage());
+    }
+    if (isOpen()) {
+      // The client went away
+      abort();
+    }
+  }
+
+  /**
+   * Returns the internet address from which this connection is connected.
+   * @return The internet address of the connection.
+   */
+  public InetAddress getInetAddress() {
+    return socket.getInetAddress();
+  }
+}
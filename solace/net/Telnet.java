@@ -0,0 +1,23 @@
+package solace.net;
+
+/**
+ * Telnet protocol constants.
+ * @author Ryan Sandor Richards
+ */
+final class Telnet {
+  // Commands
+  static final int IAC = 255;
+  static final int DONT = 254;
+  static final int DO = 253;
+  static final int WONT = 252;
+  static final int WILL = 251;
+  static final int SB = 250;
+  static final int SE = 240;
+
+  // Options
+  static final int ECHO = 1;
+  static final int COMPRESS2 = 86;
+  static final int GMCP = 201;
+
+  private Telnet() {}
+}
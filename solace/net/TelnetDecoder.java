@@ -0,0 +1,182 @@
+package solace.net;
+
+/**
+ * Decodes raw client input into lines and telnet commands. The decoder is a
+ * byte level state machine that never blocks and never allocates once it has
+ * been created: complete lines and sub-negotiations are handed to the handler
+ * as views of the decoder's internal buffers, which are reused for the next
+ * line. Handlers that need to keep the bytes must copy them.
+ *
+ * Lines may be terminated by CR LF, CR NUL, a lone LF, or a lone CR. Bytes
+ * beyond the maximum line length are dropped.
+ *
+ * @author Ryan Sandor Richards
+ */
+public class TelnetDecoder {
+  /**
+   * Receives lines and telnet commands from the decoder.
+   */
+  public interface Handler {
+    /**
+     * Called for each complete line of input.
+     * @param line Buffer holding the line, without its terminator.
+     * @param length Number of bytes in the line.
+     */
+    void onLine(byte[] line, int length);
+
+    /**
+     * Called for each option negotiation command.
+     * @param command Negotiation command (WILL, WONT, DO, or DONT).
+     * @param option The option being negotiated.
+     */
+    void onNegotiation(int command, int option);
+
+    /**
+     * Called for each sub-negotiation.
+     * @param option The option for the sub-negotiation.
+     * @param data Buffer holding the sub-negotiation data, unescaped.
+     * @param length Number of bytes of data.
+     */
+    default void onSubnegotiation(int option, byte[] data, int length) {}
+  }
+
+  public static final int MAX_LINE_LENGTH = 4096;
+  public static final int MAX_SUBNEGOTIATION_LENGTH = 8192;
+
+  private static final int STATE_DATA = 0;
+  private static final int STATE_CR = 1;
+  private static final int STATE_IAC = 2;
+  private static final int STATE_OPTION = 3;
+  private static final int STATE_SUB_OPTION = 4;
+  private static final int STATE_SUB = 5;
+  private static final int STATE_SUB_IAC = 6;
+
+  private final Handler handler;
+  private final byte[] line = new byte[MAX_LINE_LENGTH];
+  private int lineLength = 0;
+  private final byte[] sub = new byte[MAX_SUBNEGOTIATION_LENGTH];
+  private int subLength = 0;
+  private int subOption;
+  private int command;
+  private int state = STATE_DATA;
+  private int dataState = STATE_DATA;
+
+  /**
+   * Creates a new decoder.
+   * @param h Handler for decoded lines and commands.
+   */
+  public TelnetDecoder(Handler h) {
+    handler = h;
+  }
+
+  /**
+   * Decodes a block of input bytes.
+   * @param bytes Buffer holding the input.
+   * @param offset Offset of the first byte to decode.
+   * @param length Number of bytes to decode.
+   */
+  public void decode(byte[] bytes, int offset, int length) {
+    int end = offset + length;
+    for (int i = offset; i < end; i++) {
+      decode(bytes[i] & 0xFF);
+    }
+  }
+
+  /**
+   * Decodes a single input byte.
+   * @param b The byte (0-255).
+   */
+  public void decode(int b) {
+    switch (state) {
+      case STATE_DATA:
+      case STATE_CR:
+        if (b == Telnet.IAC) {
+          dataState = state;
+          state = STATE_IAC;
+        } else {
+          data(b);
+        }
+        return;
+      case STATE_IAC:
+        if (b == Telnet.IAC) {
+          state = dataState;
+          data(b);
+        } else if (b == Telnet.SB) {
+          state = STATE_SUB_OPTION;
+        } else if (b >= Telnet.WILL) {
+          command = b;
+          state = STATE_OPTION;
+        } else {
+          state = dataState;
+        }
+        return;
+      case STATE_OPTION:
+        state = dataState;
+        handler.onNegotiation(command, b);
+        return;
+      case STATE_SUB_OPTION:
+        subOption = b;
+        subLength = 0;
+        state = STATE_SUB;
+        return;
+      case STATE_SUB:
+        if (b == Telnet.IAC) {
+          state = STATE_SUB_IAC;
+        } else {
+          appendToSub(b);
+        }
+        return;
+      case STATE_SUB_IAC:
+        if (b == Telnet.SE) {
+          state = dataState;
+          handler.onSubnegotiation(subOption, sub, subLength);
+        } else {
+          // An escaped IAC, or a malformed command which we treat as data
+          state = STATE_SUB;
+          appendToSub(b);
+        }
+    }
+  }
+
+  /**
+   * Handles a data byte, dispatching the current line when a line terminator
+   * is reached.
+   * @param b The byte.
+   */
+  private void data(int b) {
+    if (state == STATE_CR) {
+      state = STATE_DATA;
+      if (b == '\n' || b == 0) {
+        return;
+      }
+    }
+    if (b == '\r') {
+      state = STATE_CR;
+      endLine();
+    } else if (b == '\n') {
+      endLine();
+    } else if (b != 0 && lineLength < line.length) {
+      line[lineLength++] = (byte)b;
+    }
+  }
+
+  /**
+   * Dispatches the current line to the handler.
+   */
+  private void endLine() {
+    int length = lineLength;
+    lineLength = 0;
+    handler.onLine(line, length);
+  }
+
+  /**
+   * Appends a byte to the current sub-negotiation, dropping bytes that would
+   * exceed the maximum sub-negotiation length.
+   * @param b Byte to append.
+   */
+  private void appendToSub(int b) {
+    if (subLength < sub.length) {
+      sub[subLength++] = (byte)b;
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package solace.net;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * WebSocket protocol constants and helpers (RFC 6455).
+ * @author Ryan Sandor Richards
+ */
+public final class WebSocket {
+  // Opcodes
+  public static final int CONTINUATION = 0x0;
+  public static final int TEXT = 0x1;
+  public static final int BINARY = 0x2;
+  public static final int CLOSE = 0x8;
+  public static final int PING = 0x9;
+  public static final int PONG = 0xA;
+
+  // Close status codes
+  public static final int NORMAL_CLOSURE = 1000;
+  public static final int PROTOCOL_ERROR = 1002;
+  public static final int UNSUPPORTED_DATA = 1003;
+  public static final int MESSAGE_TOO_BIG = 1009;
+
+  private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+  private WebSocket() {}
+
+  /**
+   * Computes the <code>Sec-WebSocket-Accept</code> value for a handshake.
+   * @param key The client's <code>Sec-WebSocket-Key</code>.
+   * @return The accept value for the server's response.
+   */
+  public static String acceptKey(String key) {
+    try {
+      MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+      byte[] digest = sha1.digest(
+        (key.trim() + GUID).getBytes(StandardCharsets.US_ASCII));
+      return Base64.getEncoder().encodeToString(digest);
+    } catch (NoSuchAlgorithmException nsae) {
+      // Every Java platform is required to support SHA-1
+      throw new IllegalStateException(nsae);
+    }
+  }
+
+  /**
+   * Creates a single, final, unmasked frame (as sent by a server).
+   * @param opcode Opcode for the frame.
+   * @param payload Buffer holding the payload.
+   * @param offset Offset of the payload in the buffer.
+   * @param length Length of the payload.
+   * @return The frame.
+   */
+  public static byte[] frame(int opcode, byte[] payload, int offset, int length) {
+    int header = length < 126 ? 2 : (length <= 0xFFFF ? 4 : 10);
+    byte[] frame = new byte[header + length];
+    frame[0] = (byte)(0x80 | opcode);
+    if (length < 126) {
+      frame[1] = (byte)length;
+    } else if (length <= 0xFFFF) {
+      frame[1] = 126;
+      frame[2] = (byte)(length >>> 8);
+      frame[3] = (byte)length;
+    } else {
+      frame[1] = 127;
+      for (int i = 0; i < 8; i++) {
+        frame[9 - i] = (byte)((long)length >>> (8 * i));
+      }
+    }
+    System.arraycopy(payload, offset, frame, header, length);
+    return frame;
+  }
+
+  /**
+   * Creates a close frame with the given status code.
+   * @param status Close status code.
+   * @return The frame.
+   */
+  public static byte[] closeFrame(int status) {
+    return frame(CLOSE, new byte[] { (byte)(status >>> 8), (byte)status }, 0, 2);
+  }
+}
@@ -0,0 +1,245 @@
+package solace.net;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import solace.util.Log;
+import solace.util.Metrics;
+
+/**
+ * Connection for browser clients speaking the WebSocket protocol. The
+ * connection begins by reading the client's HTTP upgrade request, once the
+ * handshake is complete each text message from the client is handled as one
+ * or more lines of input and all output is sent to the client as text
+ * messages. WebSocket connections share the selector server's I/O workers
+ * with telnet connections, and do not negotiate telnet options.
+ * @author Ryan Sandor Richards
+ */
+public class WebSocketConnection extends ChannelConnection
+  implements WebSocketDecoder.Handler
+{
+  static final int MAX_REQUEST_LENGTH = 8192;
+
+  private static final Metrics.Counter handshakes =
+    Metrics.counter("net.websocket.sessions");
+  private static final Metrics.Counter rejected =
+    Metrics.counter("net.websocket.rejected");
+  private static final Metrics.Counter messagesIn =
+    Metrics.counter("net.websocket.messages.in");
+  private static final Metrics.Counter messagesOut =
+    Metrics.counter("net.websocket.messages.out");
+
+  private final byte[] request = new byte[MAX_REQUEST_LENGTH];
+  private int requestLength = 0;
+  private boolean upgraded = false;
+  private boolean closeSent = false;
+  private final WebSocketDecoder frames = new WebSocketDecoder(this);
+
+  /**
+   * Creates a new WebSocket connection for the given channel.
+   * @param c Channel for the connection.
+   * @param w I/O worker that services the channel.
+   * @param k Selection key for the channel on the worker's selector.
+   */
+  WebSocketConnection(SocketChannel c, SelectorServer.IoWorker w, SelectionKey k) {
+    super(c, w, k);
+  }
+
+  /**
+   * Handles input from the client, performing the handshake if it has not
+   * yet been completed and decoding frames otherwise.
+   * @param bytes Buffer holding the input.
+   * @param length Number of bytes of input.
+   */
+  @Override
+  protected void onInput(byte[] bytes, int length) {
+    if (upgraded) {
+      frames.decode(bytes, 0, length);
+      return;
+    }
+    int n = Math.min(length, request.length - requestLength);
+    System.arraycopy(bytes, 0, request, requestLength, n);
+    int searchFrom = Math.max(0, requestLength - 3);
+    requestLength += n;
+
+    int end = findEndOfRequest(searchFrom);
+    if (end < 0) {
+      if (requestLength == request.length) {
+        reject("431 Request Header Fields Too Large");
+      }
+      return;
+    }
+    if (handshake(new String(request, 0, end, StandardCharsets.ISO_8859_1))) {
+      // Frames sent along with the request
+      int consumed = end + 4 - (requestLength - n);
+      if (consumed < length) {
+        frames.decode(bytes, consumed, length - consumed);
+      }
+    }
+  }
+
+  /**
+   * Finds the blank line ending the client's HTTP request.
+   * @param from Index from which to search.
+   * @return Index of the "\r\n\r\n" ending the request, or -1 if the request
+   *   is incomplete.
+   */
+  private int findEndOfRequest(int from) {
+    for (int i = from; i + 3 < requestLength; i++) {
+      if (request[i] == '\r' && request[i + 1] == '\n' &&
+        request[i + 2] == '\r' && request[i + 3] == '\n')
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Validates the client's upgrade request and completes the handshake.
+   * @param http The request, without the trailing blank line.
+   * @return True if the connection was upgraded.
+   */
+  private boolean handshake(String http) {
+    String[] lines = http.split("\r\n");
+    String key = null;
+    boolean upgrade = false;
+    boolean connectionUpgrade = false;
+    String version = null;
+    for (int i = 1; i < lines.length; i++) {
+      int colon = lines[i].indexOf(':');
+      if (colon < 0) continue;
+      String name = lines[i].substring(0, colon).trim().toLowerCase();
+      String value = lines[i].substring(colon + 1).trim();
+      if (name.equals("upgrade")) {
+        upgrade = value.equalsIgnoreCase("websocket");
+      } else if (name.equals("connection")) {
+        connectionUpgrade = value.toLowerCase().contains("upgrade");
+      } else if (name.equals("sec-websocket-key")) {
+        key = value;
+      } else if (name.equals("sec-websocket-version")) {
+        version = value;
+      }
+    }
+
+    if (!lines[0].startsWith("GET ") || !upgrade || !connectionUpgrade ||
+      key == null || key.isEmpty())
+    {
+      reject("400 Bad Request");
+      return false;
+    }
+    if (!"13".equals(version)) {
+      reject("426 Upgrade Required\r\nSec-WebSocket-Version: 13");
+      return false;
+    }
+
+    super.writeRaw((
+      "HTTP/1.1 101 Switching Protocols\r\n" +
+      "Upgrade: websocket\r\n" +
+      "Connection: Upgrade\r\n" +
+      "Sec-WebSocket-Accept: " + WebSocket.acceptKey(key) + "\r\n\r\n"
+    ).getBytes(StandardCharsets.ISO_8859_1));
+    upgraded = true;
+    handshakes.increment();
+    start();
+    return true;
+  }
+
+  /**
+   * Rejects the client's upgrade request and closes the connection.
+   * @param status HTTP status line (and any extra headers) for the response.
+   */
+  private void reject(String status) {
+    Log.info("Rejecting WebSocket handshake from " + getInetAddress() +
+      ": " + status);
+    rejected.increment();
+    super.writeRaw(("HTTP/1.1 " + status + "\r\nConnection: close\r\n\r\n")
+      .getBytes(StandardCharsets.ISO_8859_1));
+    closeSent = true;
+    close();
+  }
+
+  /**
+   * Handles a message from the client.
+   * @param opcode Opcode for the message.
+   * @param data Buffer holding the payload.
+   * @param length Length of the payload.
+   */
+  public void onMessage(int opcode, byte[] data, int length) {
+    switch (opcode) {
+      case WebSocket.TEXT:
+        messagesIn.increment();
+        decoder.decode(data, 0, length);
+        if (length == 0 || (data[length - 1] != '\n' && data[length - 1] != '\r')) {
+          decoder.decode('\n');
+        }
+        return;
+      case WebSocket.BINARY:
+        onError(WebSocket.UNSUPPORTED_DATA);
+        return;
+      case WebSocket.PING:
+        super.writeRaw(WebSocket.frame(WebSocket.PONG, data, 0, length));
+        return;
+      case WebSocket.CLOSE:
+        if (!closeSent) {
+          closeSent = true;
+          super.writeRaw(WebSocket.frame(WebSocket.CLOSE, data, 0, Math.min(length, 2)));
+        }
+        close();
+    }
+  }
+
+  /**
+   * Closes the connection when the client violates the protocol.
+   * @param status Close status code describing the error.
+   */
+  public void onError(int status) {
+    if (!closeSent) {
+      closeSent = true;
+      super.writeRaw(WebSocket.closeFrame(status));
+    }
+    close();
+  }
+
+  /**
+   * Sends output to the client as a text message.
+   * @param bytes Bytes to send.
+   */
+  @Override
+  protected void writeRaw(byte[] bytes) {
+    if (!upgraded) return;
+    messagesOut.increment();
+    super.writeRaw(WebSocket.frame(WebSocket.TEXT, bytes, 0, bytes.length));
+  }
+
+  /**
+   * Sends a close frame to the client (if one has not been sent already)
+   * before closing the channel.
+   */
+  @Override
+  protected void closeTransport() {
+    if (upgraded && !closeSent) {
+      closeSent = true;
+      super.writeRaw(WebSocket.closeFrame(WebSocket.NORMAL_CLOSURE));
+    }
+    super.closeTransport();
+  }
+
+  /**
+   * WebSocket clients do not support telnet options.
+   */
+  @Override
+  protected void negotiate() {}
+
+  /**
+   * WebSocket clients do not support telnet echo negotiation.
+   */
+  @Override
+  public void echoOff() {}
+
+  /**
+   * WebSocket clients do not support telnet echo negotiation.
+   */
+  @Override
+  public void echoOn() {}
+}
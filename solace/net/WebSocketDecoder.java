@@ -0,0 +1,230 @@
+package solace.net;
+
+/**
+ * Decodes WebSocket frames sent by a client. Like the {@link TelnetDecoder}
+ * this is a byte level state machine that never blocks and reuses its
+ * buffers: fragmented messages are reassembled and handed to the handler as
+ * a view of the decoder's message buffer. Control frames may arrive between
+ * the fragments of a message, as allowed by the protocol.
+ *
+ * Client frames must be masked. Unmasked frames, unexpected continuation
+ * frames, and messages longer than the maximum message length are reported
+ * to the handler as errors, after which the decoder ignores further input.
+ *
+ * @author Ryan Sandor Richards
+ */
+public class WebSocketDecoder {
+  /**
+   * Receives messages decoded from the client.
+   */
+  public interface Handler {
+    /**
+     * Called for each complete message or control frame.
+     * @param opcode Opcode for the message (TEXT, BINARY, CLOSE, PING, PONG).
+     * @param data Buffer holding the unmasked payload.
+     * @param length Length of the payload.
+     */
+    void onMessage(int opcode, byte[] data, int length);
+
+    /**
+     * Called when the client violates the protocol.
+     * @param status Close status code describing the error.
+     */
+    void onError(int status);
+  }
+
+  public static final int MAX_MESSAGE_LENGTH = 65536;
+  private static final int MAX_CONTROL_LENGTH = 125;
+
+  private static final int STATE_HEADER = 0;
+  private static final int STATE_LENGTH = 1;
+  private static final int STATE_EXTENDED_LENGTH = 2;
+  private static final int STATE_MASK = 3;
+  private static final int STATE_PAYLOAD = 4;
+  private static final int STATE_FAILED = 5;
+
+  private final Handler handler;
+  private final byte[] message = new byte[MAX_MESSAGE_LENGTH];
+  private int messageLength = 0;
+  private int messageOpcode = -1;
+  private final byte[] control = new byte[MAX_CONTROL_LENGTH];
+  private final byte[] mask = new byte[4];
+
+  private int state = STATE_HEADER;
+  private boolean fin;
+  private int opcode;
+  private long payloadLength;
+  private int lengthBytes;
+  private int maskIndex;
+  private long payloadRead;
+
+  /**
+   * Creates a new decoder.
+   * @param h Handler for decoded messages.
+   */
+  public WebSocketDecoder(Handler h) {
+    handler = h;
+  }
+
+  /**
+   * Decodes a block of input bytes.
+   * @param bytes Buffer holding the input.
+   * @param offset Offset of the first byte to decode.
+   * @param length Number of bytes to decode.
+   */
+  public void decode(byte[] bytes, int offset, int length) {
+    int end = offset + length;
+    int i = offset;
+    while (i < end && state != STATE_FAILED) {
+      if (state == STATE_PAYLOAD) {
+        i = readPayload(bytes, i, end);
+      } else {
+        decode(bytes[i++] & 0xFF);
+      }
+    }
+  }
+
+  /**
+   * Decodes a single header byte.
+   * @param b The byte (0-255).
+   */
+  private void decode(int b) {
+    switch (state) {
+      case STATE_HEADER:
+        fin = (b & 0x80) != 0;
+        opcode = b & 0x0F;
+        state = STATE_LENGTH;
+        return;
+      case STATE_LENGTH:
+        if ((b & 0x80) == 0) {
+          fail(WebSocket.PROTOCOL_ERROR);
+          return;
+        }
+        payloadLength = b & 0x7F;
+        if (payloadLength == 126) {
+          lengthBytes = 2;
+          payloadLength = 0;
+          state = STATE_EXTENDED_LENGTH;
+        } else if (payloadLength == 127) {
+          lengthBytes = 8;
+          payloadLength = 0;
+          state = STATE_EXTENDED_LENGTH;
+        } else {
+          beginMask();
+        }
+        return;
+      case STATE_EXTENDED_LENGTH:
+        if (lengthBytes == 8 && (b & 0x80) != 0) {
+          // The most significant bit of a 64-bit length must be zero
+          fail(WebSocket.PROTOCOL_ERROR);
+          return;
+        }
+        payloadLength = (payloadLength << 8) | b;
+        if (--lengthBytes == 0) {
+          beginMask();
+        }
+        return;
+      case STATE_MASK:
+        mask[maskIndex++] = (byte)b;
+        if (maskIndex == 4) {
+          beginPayload();
+        }
+    }
+  }
+
+  /**
+   * Moves to reading the masking key, validating the frame header first.
+   */
+  private void beginMask() {
+    if (payloadLength < 0) {
+      fail(WebSocket.PROTOCOL_ERROR);
+      return;
+    }
+    boolean isControl = (opcode & 0x08) != 0;
+    if (isControl) {
+      if (!fin || payloadLength > MAX_CONTROL_LENGTH) {
+        fail(WebSocket.PROTOCOL_ERROR);
+        return;
+      }
+    } else if (opcode == WebSocket.CONTINUATION) {
+      if (messageOpcode < 0) {
+        fail(WebSocket.PROTOCOL_ERROR);
+        return;
+      }
+    } else if (messageOpcode >= 0) {
+      // A new message started before the last one was finished
+      fail(WebSocket.PROTOCOL_ERROR);
+      return;
+    } else {
+      messageOpcode = opcode;
+      messageLength = 0;
+    }
+    if (!isControl && messageLength + payloadLength > MAX_MESSAGE_LENGTH) {
+      fail(WebSocket.MESSAGE_TOO_BIG);
+      return;
+    }
+    maskIndex = 0;
+    state = STATE_MASK;
+  }
+
+  /**
+   * Moves to reading the payload, completing the frame if it is empty.
+   */
+  private void beginPayload() {
+    payloadRead = 0;
+    maskIndex = 0;
+    state = STATE_PAYLOAD;
+    if (payloadLength == 0) {
+      endFrame();
+    }
+  }
+
+  /**
+   * Reads and unmasks as much of the current payload as is available.
+   * @param bytes Buffer holding the input.
+   * @param i Index of the next input byte.
+   * @param end Index after the last input byte.
+   * @return Index of the next unread input byte.
+   */
+  private int readPayload(byte[] bytes, int i, int end) {
+    boolean isControl = (opcode & 0x08) != 0;
+    byte[] target = isControl ? control : message;
+    int position = isControl ? (int)payloadRead : messageLength;
+    int n = (int)Math.min(end - i, payloadLength - payloadRead);
+    for (int k = 0; k < n; k++) {
+      target[position + k] = (byte)(bytes[i + k] ^ mask[maskIndex]);
+      maskIndex = (maskIndex + 1) & 3;
+    }
+    payloadRead += n;
+    if (!isControl) {
+      messageLength += n;
+    }
+    if (payloadRead == payloadLength) {
+      endFrame();
+    }
+    return i + n;
+  }
+
+  /**
+   * Completes the current frame, dispatching it if it completes a message.
+   */
+  private void endFrame() {
+    state = STATE_HEADER;
+    if ((opcode & 0x08) != 0) {
+      handler.onMessage(opcode, control, (int)payloadLength);
+    } else if (fin) {
+      int op = messageOpcode;
+      messageOpcode = -1;
+      handler.onMessage(op, message, messageLength);
+    }
+  }
+
+  /**
+   * Stops decoding and reports an error to the handler.
+   * @param status Close status code describing the error.
+   */
+  private void fail(int status) {
+    state = STATE_FAILED;
+    handler.onError(status);
+  }
+}
@@ -2,6 +2,8 @@ package solace.util;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import solace.io.Config;
 
@@ -11,19 +13,104 @@ import solace.io.Config;
  * time measurement in the game. Events can be scheduled in the future in terms
  * of ticks. The clock manages the events and ensures that they fire at the
  * appropriate time.
+ *
+ * Events are kept on a {@link TimingWheel}, so scheduling and cancelling an
+ * event take constant time and each tick only does work for the events that
+ * fire. The actions of fired events are run by an {@link EventDispatcher},
+ * a bounded pool of worker threads configured by the
+ * <code>game.clock.dispatch-*</code> options, or by the {@link GameLoop}
+ * when the game runs in single writer mode (along with the tick listeners).
+ *
+ * Events may also be scheduled with a partition, the part of the world they
+ * touch (the game partitions by area). Partitioned events that fire on a tick
+ * are grouped by partition and run by a {@link PartitionedExecutor}: events
+ * in the same partition run in order on one thread while different
+ * partitions run in parallel, on <code>game.clock.partition-threads</code>
+ * threads, and the tick waits for all of them. Partitioned events must hand
+ * off any work outside of their partition with {@link #handOff(Runnable)}.
+ * Events that follow something that moves between partitions (such as a
+ * player's damage over time, which follows the player from area to area)
+ * are scheduled with a {@link Partitioner}, which gives the event's
+ * partition each time it fires. Partitions only keep partitioned events
+ * apart from one another, unpartitioned events and player commands may run
+ * alongside them (see {@link PartitionedExecutor}). In single writer mode
+ * partitions are ignored.
+ *
+ * Intervals may be given a phase offset and jitter, so that many intervals
+ * with the same period (such as shop restocks) do not all fire on the same
+ * tick. The number of events fired on each tick is recorded in the
+ * <code>clock.tick.events</code> histogram.
+ *
+ * Each kind of event has a priority (see {@link Priority}), set by the
+ * <code>game.clock.priority-high</code> and <code>priority-low</code> options
+ * or {@link #setPriority(String, Priority)}. The events that fire on a tick
+ * are run in priority order, and once the events of a tick have used up the
+ * tick's time budget (<code>game.clock.budget</code>) low priority events are
+ * deferred to the next tick rather than run. An event is deferred at most
+ * {@link #MAX_DEFERRALS} times in a row before it runs regardless. Deferred
+ * events are counted by <code>clock.deferred</code>, and by kind.
+ *
+ * The installed clock also keeps {@link GameTime} up to date (on a timer
+ * thread of its own, so long ticks do not leave it stale), and measures
+ * how often each kind of event fires. Use {@link #getProfiles()} to find the
+ * kinds of events that are costing the most.
+ *
+ * Each tick is timed, and ticks that take longer than the tick duration are
+ * counted as overruns. When ticks fall behind their schedule the clock
+ * catches up according to the <code>game.clock.catch-up</code> policy:
+ *
+ * - <code>burst</code> - Missed ticks are run back to back, in full, until
+ *   the clock is back on schedule (this is the default).
+ * - <code>compress</code> - Missed ticks are folded into the next tick: the
+ *   events for each missed tick are run, but tick listeners run only once.
+ * - <code>skip</code> - Missed ticks are dropped, and game time slips behind
+ *   wall clock time.
+ *
+ * A simulated clock (see {@link #simulated(long)}) is never started. Instead
+ * it is stepped by calling {@link #advance(long)}, which runs each tick,
+ * along with the actions of the events that fire, on the calling thread. This
+ * allows tests and simulations to run thousands of ticks a second with the
+ * same results every time. To drive the game with a simulated clock install
+ * it with {@link #setInstance(Clock)} before starting the game's managers.
  * @author Ryan Sandor Richards
  */
 public class Clock implements Runnable {
+  /**
+   * Priority classes for clock events. When a tick is overloaded high
+   * priority events (such as combat) run first and low priority events
+   * (such as cosmetic messages) may be deferred.
+   */
+  public enum Priority { HIGH, NORMAL, LOW }
+
+  /**
+   * Finds the partition of an event each time it fires, for events that
+   * follow something that moves between partitions.
+   */
+  public interface Partitioner {
+    /**
+     * @return The partition the event should run in, or null to run it
+     *   outside of any partition.
+     */
+    Object getPartition();
+  }
+
   /**
    * An event that can be scheduled on the game clock.
    */
-  public class Event {
+  public class Event extends TimingWheel.Timer {
     private String id;
     private String label;
-    private long delay;
     private long initialDelay;
     private Runnable action;
     private boolean isInterval = false;
+    private long jitter = 0;
+    private long nominal;
+    private int deferrals = 0;
+    private Event origin = null;
+    private Event retry = null;
+    private volatile boolean cancelled = false;
+    private final Object partition;
+    private final EventDispatcher.Stats stats;
 
     /**
      * Creates a new game clock event with the given delay.
@@ -31,14 +118,16 @@ public class Clock implements Runnable {
      * @param d Delay in game ticks.
      * @param a Action to perform.
      * @param i True if the action is a set interval, false otherwise.
+     * @param p Partition for the event, or null if it has none.
      */
-    Event(String l, long d, Runnable a, boolean i) {
+    Event(String l, long d, Runnable a, boolean i, Object p) {
       id = UUID.randomUUID().toString();
       label = l;
       initialDelay = d;
-      delay = d;
       action = a;
       isInterval = i;
+      partition = p;
+      stats = EventDispatcher.statsFor(l);
     }
 
     /**
@@ -47,48 +136,109 @@ public class Clock implements Runnable {
     public String getId() { return id; }
 
     /**
-     * Advances the delay clock forward by one tick. If the duration has
-     * elapsed, then this also executes the event action.
-     * @return <code>true</code> if the event should be removed from the
-     *   schedule, <code>false</code> otherwise.
+     * @return The partition the event runs in, or null if it has none. For
+     *   events scheduled with a {@link Partitioner} this is the partition it
+     *   gives now.
      */
-    boolean tick() {
-      delay--;
-
-      if (delay < 0) {
-        return false;
+    public Object getPartition() {
+      if (partition instanceof Partitioner) {
+        return ((Partitioner)partition).getPartition();
       }
+      return partition;
+    }
 
-      if (delay == 0) {
-        Log.trace(String.format("Running event %s (id: %s).", label, id));
+    /**
+     * @return The priority of the event's kind.
+     */
+    public Priority getPriority() { return stats.priority; }
 
-        // Run the action in a new thread, and continue processing event
-        new Thread(() -> action.run()).start();
+    /**
+     * @return True if the event has been cancelled.
+     */
+    public boolean isCancelled() { return cancelled; }
 
-        if (!isInterval) {
-          return true;
+    /**
+     * Queues the event to be dispatched at the end of the tick, rescheduling
+     * it if it is an interval. Called by the timing wheel (with the wheel
+     * locked) when the event's delay has elapsed.
+     */
+    protected void expire() {
+      if (Log.isTraceEnabled()) {
+        Log.trace(String.format("Running event %s (id: %s).", label, id));
+      }
+      due.add(this);
+      stats.fired();
+      if (!isInterval) {
+        stats.live.decrement();
+      } else {
+        // Jitter moves each run around its place on the interval's schedule
+        // rather than delaying the runs after it, so intervals do not drift
+        nominal += initialDelay;
+        long deadline = nominal;
+        if (jitter > 0) {
+          deadline += random.nextInt((int)(2 * jitter + 1)) - jitter;
         }
-        delay = initialDelay;
+        wheel.add(this, deadline - wheel.getTime());
       }
-
-      return false;
     }
 
     /**
      * Cancels the game event.
      */
     public void cancel() {
-      Log.debug(String.format(
-        "Clock: cancelling event %s (id: %s).", label, id));
-      isInterval = false;
-      delay = -1;
+      if (Log.isDebugEnabled()) {
+        Log.debug(String.format(
+          "Clock: cancelling event %s (id: %s).", label, id));
+      }
+      synchronized (wheel) {
+        isInterval = false;
+        cancelled = true;
+        if (wheel.cancel(this)) {
+          stats.live.decrement();
+        }
+      }
     }
   }
 
   /**
-   * The game wold has but one clock.
+   * The game world has but one clock (though it may be replaced, see
+   * {@link #setInstance(Clock)}).
    */
-  private static final Clock instance = new Clock();
+  private static volatile Clock instance = new Clock();
+
+  private static final Metrics.Counter ticks = Metrics.counter("clock.ticks");
+  private static final Metrics.Histogram tickLag =
+    Metrics.histogram("clock.tick.lag.us");
+  private static final Metrics.Histogram tickDuration =
+    Metrics.histogram("clock.tick.duration.us");
+  private static final Metrics.Counter overruns =
+    Metrics.counter("clock.tick.overruns");
+  private static final Metrics.Counter skipped =
+    Metrics.counter("clock.ticks.skipped");
+  private static final Metrics.Counter compressed =
+    Metrics.counter("clock.ticks.compressed");
+  private static final Metrics.Histogram tickEvents =
+    Metrics.histogram("clock.tick.events");
+  private static final Metrics.Counter deferred =
+    Metrics.counter("clock.deferred");
+  private static final Metrics.Counter forced =
+    Metrics.counter("clock.deferred.forced");
+  static {
+    Metrics.gauge("clock.tick.lag.current.us", () -> getInstance().getLag() / 1000);
+    Metrics.gauge("clock.events", () -> getInstance().getEventCount());
+  }
+
+  public static final String BURST = "burst";
+  public static final String COMPRESS = "compress";
+  public static final String SKIP = "skip";
+
+  /**
+   * Number of ticks in a row a low priority event may be deferred.
+   */
+  public static final int MAX_DEFERRALS = 10;
+
+  private static final Comparator<Event> BY_PRIORITY =
+    Comparator.comparing(Event::getPriority);
 
   /**
    * Returns the game clock instance.
@@ -97,52 +247,509 @@ public class Clock implements Runnable {
     return instance;
   }
 
+  /**
+   * Replaces the game clock instance, for instance with a simulated clock.
+   * Events and tick listeners already registered with the old clock stay
+   * with it.
+   * @param clock The new game clock.
+   */
+  public static void setInstance(Clock clock) {
+    instance = clock;
+  }
+
+  /**
+   * Runs an action that reaches outside the partition of the calling event.
+   * If called while partitioned events are running the action is held until
+   * every partition has finished and then run on the clock thread, otherwise
+   * it is run immediately.
+   * @param action Action to run.
+   */
+  public static void handOff(Runnable action) {
+    if (!PartitionedExecutor.defer(action)) {
+      action.run();
+    }
+  }
+
+  /**
+   * Determines a stable phase offset for an interval, spreading intervals
+   * with the same period evenly across it. The same key always has the same
+   * phase, so intervals keep their place when they are rescheduled (for
+   * instance when areas are reloaded).
+   * @param key Key for the interval (such as the id of what it updates).
+   * @param period Period of the interval, in ticks.
+   * @return Phase offset in the range [0, period).
+   */
+  public static long phaseFor(Object key, long period) {
+    if (period < 2) {
+      return 0;
+    }
+    // Fibonacci hashing, so that similar keys are spread apart
+    long hash = (key.hashCode() * 0x9E3779B97F4A7C15L) >>> 32;
+    return hash % period;
+  }
+
+  /**
+   * Sets the priority of a kind of event.
+   * @param kind Kind of event (the part of its label before any colon).
+   * @param priority Priority for the events.
+   */
+  public static void setPriority(String kind, Priority priority) {
+    EventDispatcher.statsFor(kind).priority = priority;
+  }
+
+  /**
+   * @param kind Kind of event.
+   * @return The priority of the kind of event.
+   */
+  public static Priority getPriority(String kind) {
+    return EventDispatcher.statsFor(kind).priority;
+  }
+
+  /**
+   * Profile of a kind of clock event.
+   */
+  public static class Profile {
+    private final String kind;
+    private final long live;
+    private final long fires;
+    private final long firesPerMinute;
+    private final long totalMicros;
+    private final long p99Micros;
+    private final long deferred;
+    private final Priority priority;
+
+    Profile(EventDispatcher.Stats s) {
+      kind = s.kind;
+      live = s.live.sum();
+      fires = s.fires.get();
+      firesPerMinute = s.firesPerMinute;
+      totalMicros = s.run.getSum();
+      p99Micros = s.run.getPercentile(0.99);
+      deferred = s.deferred.get();
+      priority = s.priority;
+    }
+
+    /**
+     * @return The kind of event.
+     */
+    public String getKind() { return kind; }
+
+    /**
+     * @return The number of events of the kind currently scheduled.
+     */
+    public long getLive() { return live; }
+
+    /**
+     * @return The number of times events of the kind have fired.
+     */
+    public long getFires() { return fires; }
+
+    /**
+     * @return The number of times events of the kind fired in the last
+     *   minute (zero until the clock has run for a minute).
+     */
+    public long getFiresPerMinute() { return firesPerMinute; }
+
+    /**
+     * @return The total time spent running events of the kind, in
+     *   microseconds.
+     */
+    public long getTotalMicros() { return totalMicros; }
+
+    /**
+     * @return The approximate 99th percentile of the time spent running an
+     *   event of the kind, in microseconds.
+     */
+    public long getP99Micros() { return p99Micros; }
+
+    /**
+     * @return The number of times events of the kind were deferred.
+     */
+    public long getDeferred() { return deferred; }
+
+    /**
+     * @return The priority of the kind.
+     */
+    public Priority getPriority() { return priority; }
+  }
+
+  /**
+   * @return A profile of each kind of event that has been scheduled, sorted
+   *   by the total time spent running them (most first).
+   */
+  public static List<Profile> getProfiles() {
+    List<Profile> profiles = new ArrayList<>();
+    for (EventDispatcher.Stats s : EventDispatcher.allStats()) {
+      profiles.add(new Profile(s));
+    }
+    profiles.sort(Comparator.comparingLong(Profile::getTotalMicros).reversed());
+    return profiles;
+  }
+
+  /**
+   * Creates a simulated clock that only moves when it is advanced.
+   * @param tickMs Duration of each tick, in milliseconds of simulated time.
+   * @return The simulated clock.
+   */
+  public static Clock simulated(long tickMs) {
+    Clock clock = new Clock(new SimulatedTime());
+    clock.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+    clock.nextTickTime = clock.tickNanos;
+    return clock;
+  }
+
+  private final TimeSource time;
   private ScheduledExecutorService executor;
   private ScheduledFuture tickFuture;
-  private final List<Event> events = Collections.synchronizedList(new LinkedList<Event>());
-  private final List<Event> scheduleQueue = Collections.synchronizedList(new LinkedList<Event>());
-  private final Semaphore scheduleLock = new Semaphore(1);
+  private ScheduledExecutorService refresher;
+  private ScheduledFuture<?> refreshFuture;
+  private final TimingWheel wheel = new TimingWheel();
+  private final List<Event> due = new ArrayList<>();
+  private final Random random;
+  private EventDispatcher dispatcher;
+  private volatile PartitionedExecutor partitions;
+  private final List<Runnable> tickListeners = new CopyOnWriteArrayList<>();
+  private long tickNanos;
+  private long nextTickTime;
+  private volatile boolean running = false;
+  private volatile String catchUp = BURST;
+  private volatile long lag = 0;
+  private volatile long budgetNanos = 0;
+  private long windowStart;
+  private final LongAdder spent = new LongAdder();
 
   /**
    * Creates a new clock.
    */
   public Clock() {
-    executor = Executors.newScheduledThreadPool(1);
+    this(TimeSource.SYSTEM);
+  }
+
+  /**
+   * Creates a new clock that uses the given time source. Clocks with a
+   * simulated time source are advanced manually rather than started.
+   * @param t Time source for the clock.
+   */
+  public Clock(TimeSource t) {
+    time = t;
+    windowStart = t.nanoTime();
+    // Simulated clocks jitter intervals the same way every time
+    random = isSimulated() ? new Random(0) : new Random();
+    if (isSimulated()) {
+      tickNanos = TimeUnit.SECONDS.toNanos(1);
+      nextTickTime = tickNanos;
+      partitions = new PartitionedExecutor(1);
+    } else {
+      executor = Executors.newScheduledThreadPool(1);
+    }
   }
 
   /**
    * Moves the game time clock forward one tick.
    */
   public void run() {
+    long begin = time.nanoTime();
+    // How far behind its schedule this tick has started
+    lag = Math.max(0, begin - nextTickTime);
+    tickLag.record(lag / 1000);
+    spent.reset();
+    if (instance == this) {
+      GameTime.refresh(begin);
+      if (begin - windowStart >= TimeUnit.MINUTES.toNanos(1)) {
+        for (EventDispatcher.Stats s : EventDispatcher.allStats()) {
+          s.roll(begin - windowStart);
+        }
+        windowStart = begin;
+      }
+    }
+
+    int advances = 1;
+    long missed = lag / tickNanos;
+    if (missed > 0) {
+      if (catchUp.equals(COMPRESS)) {
+        advances += missed;
+        compressed.add(missed);
+        nextTickTime += missed * tickNanos;
+      } else if (catchUp.equals(SKIP)) {
+        skipped.add(missed);
+        nextTickTime += missed * tickNanos;
+      }
+    }
+
+    // The tick holds one count until all of its events have been handed off,
+    // and each dispatched event holds one until it has finished, so the tick
+    // listeners run once every event fired this tick is done.
+    final AtomicInteger pending = new AtomicInteger(1);
+    final Runnable done = () -> {
+      if (pending.decrementAndGet() == 0) {
+        notifyTickListeners();
+      }
+    };
     try {
-      processEvents();
-      addEventsFromQueue();
-    } catch (InterruptedException ie) {
-      // This _shouldn't_ happen...
-      Log.warn("Game clock event processing interrupted, skipping tick...");
+      if (GameLoop.isEnabled() && !isSimulated()) {
+        GameLoop.tick();
+      }
+      for (int i = 0; i < advances; i++) {
+        processEvents(pending, done);
+      }
+      if (GameLoop.isEnabled() && !isSimulated()) {
+        GameLoop.execute(this::notifyTickListeners);
+      } else {
+        done.run();
+      }
+    } catch (Throwable t) {
+      Log.error("Error processing clock tick: " + t.getMessage());
+      t.printStackTrace();
+    } finally {
+      long duration = time.nanoTime() - begin;
+      ticks.increment();
+      tickDuration.record(duration / 1000);
+      if (duration > tickNanos) {
+        overruns.increment();
+      }
+      nextTickTime += tickNanos;
+      scheduleNextTick();
+    }
+  }
+
+  /**
+   * Schedules the next tick at its place on the clock's schedule (which is
+   * immediately if the clock is behind).
+   */
+  private synchronized void scheduleNextTick() {
+    if (!running) return;
+    long delay = Math.max(0, nextTickTime - time.nanoTime());
+    tickFuture = executor.schedule(this, delay, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return True if the clock uses simulated time.
+   */
+  public boolean isSimulated() {
+    return time instanceof SimulatedTime;
+  }
+
+  /**
+   * @return The clock's time source.
+   */
+  public TimeSource getTimeSource() {
+    return time;
+  }
+
+  /**
+   * @return The number of ticks the clock has advanced.
+   */
+  public long getTicks() {
+    synchronized (wheel) {
+      return wheel.getTime();
+    }
+  }
+
+  /**
+   * Advances a simulated clock, running each tick on the calling thread. The
+   * actions of events that fire are run on the calling thread as well, in the
+   * order they were scheduled.
+   * @param n Number of ticks to advance.
+   * @throws IllegalStateException If the clock does not use simulated time.
+   */
+  public void advance(long n) {
+    if (!isSimulated()) {
+      throw new IllegalStateException("Only simulated clocks can be advanced");
+    }
+    SimulatedTime simulated = (SimulatedTime)time;
+    for (long i = 0; i < n; i++) {
+      simulated.advance(nextTickTime - simulated.nanoTime());
+      run();
+    }
+  }
+
+  /**
+   * @return The duration of a tick, in milliseconds.
+   */
+  public long getTickMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+  }
+
+  /**
+   * @return The number of threads that run partitioned events.
+   */
+  public int getPartitionThreads() {
+    return partitions == null ? 0 : partitions.getThreads();
+  }
+
+  /**
+   * Sets the number of threads that run partitioned events. Should be called
+   * before the clock is started or advanced.
+   * @param threads Number of threads, or 0 for one per processor.
+   */
+  public synchronized void setPartitionThreads(int threads) {
+    if (threads < 1) {
+      threads = Runtime.getRuntime().availableProcessors();
+    }
+    if (partitions != null) {
+      partitions.shutdown();
+    }
+    partitions = new PartitionedExecutor(threads);
+  }
+
+  /**
+   * @return The time events may use each tick before low priority events
+   *   are deferred, in milliseconds (0 if there is no limit).
+   */
+  public long getBudgetMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(budgetNanos);
+  }
+
+  /**
+   * Sets the time events may use each tick before low priority events are
+   * deferred.
+   * @param ms Budget in milliseconds, or 0 for no limit.
+   */
+  public void setBudgetMillis(long ms) {
+    budgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, ms));
+  }
+
+  /**
+   * @return How far behind its schedule the last tick started, in
+   *   nanoseconds.
+   */
+  public long getLag() {
+    return lag;
+  }
+
+  /**
+   * @return The catch up policy used when ticks fall behind.
+   */
+  public String getCatchUpPolicy() {
+    return catchUp;
+  }
+
+  /**
+   * Sets the policy used to catch up when ticks fall behind.
+   * @param policy The policy ("burst", "compress", or "skip").
+   * @throws IllegalArgumentException If the policy is unknown.
+   */
+  public void setCatchUpPolicy(String policy) {
+    if (!policy.equals(BURST) && !policy.equals(COMPRESS) &&
+      !policy.equals(SKIP))
+    {
+      throw new IllegalArgumentException("Unknown catch up policy: " + policy);
+    }
+    catchUp = policy;
+  }
+
+  /**
+   * @return The number of events currently scheduled on the clock.
+   */
+  public int getEventCount() {
+    synchronized (wheel) {
+      return wheel.size();
+    }
+  }
+
+  /**
+   * Adds a listener that is run at the end of every tick, once every event
+   * that fired during the tick has finished. This is on the clock thread, or
+   * on the worker that finished the tick's last event. Tick listeners should
+   * be short and must not block.
+   * @param listener Listener to add.
+   */
+  public void addTickListener(Runnable listener) {
+    tickListeners.add(listener);
+  }
+
+  /**
+   * Removes a tick listener from the clock.
+   * @param listener Listener to remove.
+   */
+  public void removeTickListener(Runnable listener) {
+    tickListeners.remove(listener);
+  }
+
+  /**
+   * Runs each of the clock's tick listeners.
+   */
+  private void notifyTickListeners() {
+    for (Runnable listener : tickListeners) {
+      try {
+        listener.run();
+      } catch (Throwable t) {
+        Log.error("Error in clock tick listener: " + t.getMessage());
+        t.printStackTrace();
+      }
     }
   }
 
   /**
    * Starts the game world clock.
    */
-  public void start() {
+  public synchronized void start() {
     // Don't start the clock if it is already running
-    if (tickFuture != null) {
+    if (running) {
+      return;
+    }
+    if (isSimulated()) {
+      Log.info("Using a simulated game clock, ticks are advanced manually");
       return;
     }
 
     String tickMsConfig = Config.get("game.clock.tick");
     int tickMs = (tickMsConfig == null) ? 1000 : Integer.parseInt(tickMsConfig);
     Log.info("Starting game clock, with tick interval " + tickMs + "ms");
-    tickFuture = executor.scheduleAtFixedRate(
-      this, 0, tickMs, TimeUnit.MILLISECONDS);
+    if (GameLoop.isEnabled()) {
+      Log.info("Running clock events on the game loop");
+    } else {
+      if (dispatcher == null) {
+        dispatcher = createDispatcher();
+      }
+      if (partitions == null) {
+        setPartitionThreads(Integer.parseInt(
+          Config.get("game.clock.partition-threads", "0")));
+        Log.info(String.format("Running partitioned clock events on %d threads",
+          partitions.getThreads()));
+      }
+    }
+    try {
+      setCatchUpPolicy(Config.get("game.clock.catch-up", BURST));
+    } catch (IllegalArgumentException e) {
+      Log.warn(e.getMessage() + ", using " + BURST);
+    }
+    setBudgetMillis(Long.parseLong(Config.get("game.clock.budget", "0")));
+    configurePriority(Config.get("game.clock.priority-high", ""), Priority.HIGH);
+    configurePriority(Config.get("game.clock.priority-low", ""), Priority.LOW);
+    tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+    nextTickTime = time.nanoTime();
+    running = true;
+    scheduleNextTick();
+
+    // Keep game time fresh between ticks, on a timer of its own so that a
+    // long tick does not hold up the refresh
+    long resolution = Long.parseLong(Config.get("game.clock.time-resolution", "10"));
+    if (resolution > 0) {
+      if (refresher == null) {
+        refresher = Executors.newSingleThreadScheduledExecutor(task -> {
+          Thread thread = new Thread(task, "solace-clock-time");
+          thread.setDaemon(true);
+          return thread;
+        });
+      }
+      refreshFuture = refresher.scheduleAtFixedRate(() -> {
+        if (instance == this) {
+          GameTime.refresh(time.nanoTime());
+        }
+      }, 0, resolution, TimeUnit.MILLISECONDS);
+    }
   }
 
   /**
    * Pauses the game world clock.
    */
-  private void pause() {
+  private synchronized void pause() {
+    running = false;
+    if (refreshFuture != null) {
+      refreshFuture.cancel(false);
+      refreshFuture = null;
+    }
     if (tickFuture == null) return;
     tickFuture.cancel(false);
     tickFuture = null;
@@ -154,105 +761,302 @@ public class Clock implements Runnable {
   public void stop() {
     Log.info("Stopping game clock");
     pause();
-    executor.shutdownNow();
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if (refresher != null) {
+      refresher.shutdownNow();
+      refresher = null;
+    }
+    if (dispatcher != null) {
+      dispatcher.shutdown();
+    }
+    if (partitions != null) {
+      partitions.shutdown();
+    }
   }
 
   /**
-   * Adds any pending events in the scheduling queue on to the clock's main
-   * schedule.
+   * Sets the priority of each kind of event in a comma separated list.
+   * @param kinds Kinds of events.
+   * @param priority Priority for the events.
    */
-  private void addEventsFromQueue () {
-    synchronized (scheduleQueue) {
-      Log.trace(String.format(
-        "addEventsFromQueue: adding %d events", scheduleQueue.size()));
-      events.addAll(scheduleQueue);
-      scheduleQueue.clear();
+  private static void configurePriority(String kinds, Priority priority) {
+    for (String kind : kinds.split(",")) {
+      if (!kind.trim().isEmpty()) {
+        setPriority(kind.trim(), priority);
+      }
     }
   }
 
   /**
-   * Thread safe method to process each event currently scheduled on the clock.
+   * Creates the dispatcher for fired events from the game configuration.
+   * @return The dispatcher.
    */
-  private void processEvents() throws InterruptedException {
-    Log.trace("processEvents: Acquiring event scheduling lock");
-    scheduleLock.acquire();
-    try {
-      Log.trace("processEvents: Processing game clock events");
-      synchronized (events) {
-        events.removeIf(Event::tick);
+  private EventDispatcher createDispatcher() {
+    int threads = Integer.parseInt(Config.get("game.clock.dispatch-threads", "0"));
+    if (threads < 1) {
+      threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    }
+    int queueSize = Integer.parseInt(Config.get("game.clock.dispatch-queue", "4096"));
+    String policy = Config.get(
+      "game.clock.dispatch-saturation", EventDispatcher.CALLER_RUNS);
+    Log.info(String.format(
+      "Dispatching clock events on %d threads (queue %d, %s)",
+      threads, queueSize, policy));
+    return new EventDispatcher(threads, queueSize, policy);
+  }
+
+  /**
+   * Advances the clock's timing wheel and dispatches each event that is due.
+   * Events are dispatched after the wheel has been released, so that a full
+   * dispatch queue never holds up threads scheduling new events. Partitioned
+   * events are then run, grouped by partition, before the tick continues.
+   * Events are dispatched in priority order.
+   * @param pending Count of the tick's unfinished events.
+   * @param done Run by each dispatched event once it has finished.
+   */
+  private void processEvents(AtomicInteger pending, Runnable done) {
+    synchronized (wheel) {
+      int expired = wheel.advance();
+      tickEvents.record(expired);
+      if (Log.isTraceEnabled()) {
+        Log.trace(String.format("processEvents: %d events due", expired));
       }
-    } finally {
-      Log.trace("processEvents: Releasing event scheduling lock");
-      scheduleLock.release();
     }
+    if (due.size() > 1) {
+      // Stable, so events of the same priority keep their order
+      due.sort(BY_PRIORITY);
+    }
+    Map<Object, List<Runnable>> partitioned = null;
+    for (Event event : due) {
+      Object partition = event.partition == null ? null : event.getPartition();
+      if (partition != null && partitions != null &&
+        (isSimulated() || !GameLoop.isEnabled()))
+      {
+        if (partitioned == null) {
+          partitioned = new LinkedHashMap<>();
+        }
+        partitioned.computeIfAbsent(partition, k -> new ArrayList<>())
+          .add(() -> EventDispatcher.run(event.label, event.stats, budgeted(event), 0));
+      } else if (isSimulated()) {
+        EventDispatcher.run(event.label, event.stats, budgeted(event), 0);
+      } else if (GameLoop.isEnabled()) {
+        final long queued = System.nanoTime();
+        Runnable action = budgeted(event);
+        GameLoop.execute(() ->
+          EventDispatcher.run(event.label, event.stats, action, queued));
+      } else {
+        pending.incrementAndGet();
+        dispatcher.dispatch(event.label, event.stats, budgeted(event), done);
+      }
+    }
+    due.clear();
+    if (partitioned != null) {
+      partitions.run(new ArrayList<>(partitioned.values()));
+    }
+  }
+
+  /**
+   * Wraps the action of a fired event so that its running time counts
+   * against the tick's budget, and so that it is deferred if it is low
+   * priority and the budget has been used up when it is about to run.
+   * Nothing is run if the event (or, for a deferred run, the event it was
+   * deferred from) has been cancelled, or if the deferred run has been
+   * superseded by a later run of its interval.
+   * @param event Event that fired.
+   * @return Action to run for the event.
+   */
+  private Runnable budgeted(Event event) {
+    return () -> {
+      if (!claim(event)) {
+        return;
+      }
+      Event owner = event.origin != null ? event.origin : event;
+      if (event.getPriority() == Priority.LOW && budgetNanos > 0 &&
+        spent.sum() > budgetNanos)
+      {
+        if (defer(owner)) {
+          return;
+        }
+        forced.increment();
+      }
+      synchronized (owner) {
+        owner.deferrals = 0;
+      }
+      long start = System.nanoTime();
+      try {
+        event.action.run();
+      } finally {
+        spent.add(System.nanoTime() - start);
+      }
+    };
+  }
+
+  /**
+   * Determines if a fired event should still run. A deferred run only runs if
+   * it is still the latest pending run of its event, and a run of an event
+   * replaces any deferred run still pending, so an interval that fires again
+   * before its deferred run has been made runs once rather than twice.
+   * @param event Event that fired.
+   * @return True if the event's action should run.
+   */
+  private boolean claim(Event event) {
+    Event owner = event.origin != null ? event.origin : event;
+    if (owner.isCancelled()) {
+      return false;
+    }
+    Event pending;
+    synchronized (owner) {
+      pending = owner.retry;
+      if (event.origin != null && pending != event) {
+        return false;
+      }
+      owner.retry = null;
+    }
+    if (pending != null && pending != event) {
+      pending.cancel();
+    }
+    return true;
+  }
+
+  /**
+   * Defers a run of a low priority event to the next tick. Intervals keep
+   * their schedule, the deferred run is made by a new one time event that
+   * is tied to the original event (see {@link #claim(Event)}). The number of
+   * deferrals in a row is kept on the original event, so it carries over
+   * when a later run of an interval replaces a deferred run, and it is only
+   * reset once the event has actually run.
+   * @param owner Original event of the run to defer.
+   * @return True if the run was deferred, false if the event has already
+   *   been deferred {@link #MAX_DEFERRALS} times in a row and must run.
+   */
+  private boolean defer(Event owner) {
+    Event retry = new Event(owner.label, 1, owner.action, false, owner.partition);
+    retry.origin = owner;
+    synchronized (owner) {
+      if (owner.deferrals >= MAX_DEFERRALS) {
+        return false;
+      }
+      owner.deferrals++;
+      owner.retry = retry;
+    }
+    deferred.increment();
+    owner.stats.deferred.increment();
+    scheduleClockEvent(retry);
+    return true;
   }
 
   /**
    * Schedules an event on the clock.
-   * @param label Label for the event (for ease of human readability).
+   * @param label Label for the event (for ease of human readability). Labels
+   *   of the form "kind: detail" are grouped by kind in the clock's metrics.
    * @param delay Delay in ticks to wait before performing the action.
    * @param action Action to perform.
    * @return Clock event that can be cancelled.
    */
   public Event schedule(String label, long delay, Runnable action) {
-    Event event = new Event(label, delay, action, false);
-    Log.debug(String.format(
-      "schedule: Scheduling clock event %s (id: %s) with delay %d.",
-      label, event.getId(), delay));
+    return schedule(label, delay, action, null);
+  }
+
+  /**
+   * Schedules an event on the clock in the given partition.
+   * @param label Label for the event.
+   * @param delay Delay in ticks to wait before performing the action.
+   * @param action Action to perform.
+   * @param partition Partition for the event (such as an area), a
+   *   {@link Partitioner} that finds it when the event fires, or null.
+   * @return Clock event that can be cancelled.
+   */
+  public Event schedule(
+    String label, long delay, Runnable action, Object partition
+  ) {
+    Event event = new Event(label, delay, action, false, partition);
+    if (Log.isDebugEnabled()) {
+      Log.debug(String.format(
+        "schedule: Scheduling clock event %s (id: %s) with delay %d.",
+        label, event.getId(), delay));
+    }
     scheduleClockEvent(event);
     return event;
   }
 
   /**
    * Sets an event to be repeated periodically for a set interval.
-   * @param label Label for the event (for ease of human readability).
+   * @param label Label for the event (for ease of human readability). Labels
+   *   of the form "kind: detail" are grouped by kind in the clock's metrics.
    * @param delay Length of the delay between each execution.
    * @param action Action to execute at the set interval.
    * @return Clock event that can be cancelled.
    */
   public Event interval(String label, long delay, Runnable action) {
-    Event event = new Event(label, delay, action, true);
-    Log.debug(String.format(
-      "interval: Scheduling clock interval %s (id: %s) with delay %d.",
-      label, event.getId(), delay));
-    scheduleClockEvent(event);
+    return interval(label, delay, action, null);
+  }
+
+  /**
+   * Sets an event to be repeated periodically in the given partition.
+   * @param label Label for the event.
+   * @param delay Length of the delay between each execution.
+   * @param action Action to execute at the set interval.
+   * @param partition Partition for the event (such as an area), a
+   *   {@link Partitioner} that finds it when the event fires, or null.
+   * @return Clock event that can be cancelled.
+   */
+  public Event interval(
+    String label, long delay, Runnable action, Object partition
+  ) {
+    return interval(label, delay, action, partition, 0, 0);
+  }
+
+  /**
+   * Sets an event to be repeated periodically, offset from the other
+   * intervals with the same period. The event first runs after the given
+   * phase offset (or after a full delay if the offset is zero) and then every
+   * <code>delay</code> ticks after that, with each run moved by up to
+   * <code>jitter</code> ticks earlier or later at random.
+   * @param label Label for the event.
+   * @param delay Length of the delay between each execution.
+   * @param action Action to execute at the set interval.
+   * @param partition Partition for the event (such as an area), a
+   *   {@link Partitioner} that finds it when the event fires, or null.
+   * @param phase Ticks until the first execution (see
+   *   {@link #phaseFor(Object, long)}), or 0 to wait a full delay.
+   * @param jitter Maximum number of ticks to move each run by, at most half
+   *   of the delay.
+   * @return Clock event that can be cancelled.
+   */
+  public Event interval(
+    String label,
+    long delay,
+    Runnable action,
+    Object partition,
+    long phase,
+    long jitter
+  ) {
+    Event event = new Event(label, delay, action, true, partition);
+    event.jitter = Math.max(0, Math.min(jitter, (delay - 1) / 2));
+    if (Log.isDebugEnabled()) {
+      Log.debug(String.format(
+        "interval: Scheduling clock interval %s (id: %s) with delay %d.",
+        label, event.getId(), delay));
+    }
+    event.stats.live.increment();
+    synchronized (wheel) {
+      long first = phase > 0 ? phase : delay;
+      event.nominal = wheel.getTime() + first;
+      wheel.add(event, first);
+    }
     return event;
   }
 
   /**
-   * Thread safe clock event scheduling. Events should _NEVER_ be added directly
-   * to the `events` list without using this method as it could cause a deadlock
-   * when synchronizing on the `events` list.
+   * Thread safe clock event scheduling.
    * @param event Event to schedule on the clock.
    */
   private void scheduleClockEvent(Event event) {
-    Log.trace("scheduleClockEvent: attempting to acquire schedule lock");
-    boolean hasLock = scheduleLock.tryAcquire();
-    try {
-      if (hasLock) {
-        // Needed to acquire a lock here in the case where we are scheduling a
-        // new event as a result of running an event that's being processed
-        // (in which case events will already be locked and we will cause a
-        // deadlock while we wait to synchronize for the add call)
-        Log.trace("scheduleClockEvent: schedule lock acquired");
-        synchronized (events) {
-          Log.trace("scheduleClockEvent: adding event to schedule");
-          events.add(event);
-        }
-      } else {
-        // No need for a lock here because we should never be running abitrary
-        // code when dealing with the queue.
-        Log.trace("scheduleClockEvent: could not acquire lock");
-        synchronized (scheduleQueue) {
-          Log.trace("scheduleClockEvent: adding event to schedule queue");
-          scheduleQueue.add(event);
-        }
-      }
-    } finally {
-      if (hasLock) {
-        Log.trace("scheduleClockEvent: releasing schedule lock");
-        scheduleLock.release();
-      }
+    event.stats.live.increment();
+    synchronized (wheel) {
+      wheel.add(event, event.initialDelay);
     }
   }
 }
@@ -0,0 +1,216 @@
+package solace.util;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the actions of fired clock events on a bounded pool of named worker
+ * threads. Fired events wait on a bounded queue for a worker, and when the
+ * queue is full the saturation policy decides what happens to the event:
+ *
+ * - <code>caller-runs</code> - The event runs on the clock thread, delaying
+ *   the rest of the tick (this is the default).
+ * - <code>discard</code> - The event is dropped. Only suitable for games
+ *   whose events can safely be lost.
+ *
+ * For each kind of event the time spent waiting for a worker and the time
+ * spent running are recorded as <code>clock.event.[kind].wait.us</code> and
+ * <code>clock.event.[kind].run.us</code>. The kind of an event is the part
+ * of its label before the first colon (so "gcd: Gerald" and "gcd: Ryan" are
+ * both recorded as "gcd"). Events that are deferred because a tick went over
+ * its time budget are counted as <code>clock.event.[kind].deferred</code>.
+ * The clock also counts the events of each kind that are scheduled
+ * (<code>.live</code>) and that have fired (<code>.fires</code>, and
+ * <code>.fires.per-minute</code> over the last minute). Recording these costs
+ * a few uncontended adds and two reads of the system timer per event, so
+ * they are always on.
+ *
+ * @author Ryan Sandor Richards
+ */
+class EventDispatcher {
+  static final String CALLER_RUNS = "caller-runs";
+  static final String DISCARD = "discard";
+
+  /**
+   * Metrics, and the priority, for a kind of event.
+   */
+  static class Stats {
+    final String kind;
+    final Metrics.Histogram wait;
+    final Metrics.Histogram run;
+    final Metrics.Counter deferred;
+    final Metrics.Counter fires;
+    final LongAdder live = new LongAdder();
+    private final LongAdder windowFires = new LongAdder();
+    volatile long firesPerMinute = 0;
+    volatile Clock.Priority priority = Clock.Priority.NORMAL;
+
+    Stats(String k) {
+      kind = k;
+      String prefix = "clock.event." + kind;
+      wait = Metrics.histogram(prefix + ".wait.us");
+      run = Metrics.histogram(prefix + ".run.us");
+      deferred = Metrics.counter(prefix + ".deferred");
+      fires = Metrics.counter(prefix + ".fires");
+      Metrics.gauge(prefix + ".live", live::sum);
+      Metrics.gauge(prefix + ".fires.per-minute", () -> firesPerMinute);
+    }
+
+    /**
+     * Counts an event of this kind firing.
+     */
+    void fired() {
+      fires.increment();
+      windowFires.increment();
+    }
+
+    /**
+     * Ends the window used to measure fires per minute.
+     * @param elapsed Length of the window, in nanoseconds.
+     */
+    void roll(long elapsed) {
+      firesPerMinute = (long)(windowFires.sumThenReset() * 60e9 / elapsed);
+    }
+  }
+
+  private static final Map<String, Stats> stats = new ConcurrentHashMap<>();
+  private static final Metrics.Counter saturated =
+    Metrics.counter("clock.dispatch.saturated");
+  private static final Metrics.Counter discarded =
+    Metrics.counter("clock.dispatch.discarded");
+
+  /**
+   * Finds the timing metrics for an event label.
+   * @param label Label of the event.
+   * @return Metrics for the label's kind of event.
+   */
+  static Stats statsFor(String label) {
+    int colon = label.indexOf(':');
+    String kind = (colon < 0 ? label : label.substring(0, colon)).trim();
+    return stats.computeIfAbsent(kind, Stats::new);
+  }
+
+  /**
+   * @return The metrics for every kind of event seen so far.
+   */
+  static Collection<Stats> allStats() {
+    return stats.values();
+  }
+
+  private final ThreadPoolExecutor executor;
+
+  /**
+   * Creates a new dispatcher.
+   * @param threads Number of worker threads.
+   * @param queueSize Number of fired events that may wait for a worker.
+   * @param policy Saturation policy ("caller-runs" or "discard").
+   */
+  EventDispatcher(int threads, int queueSize, String policy) {
+    RejectedExecutionHandler handler;
+    if (policy.equals(DISCARD)) {
+      handler = (task, pool) -> {
+        saturated.increment();
+        discarded.increment();
+        if (task instanceof Dispatched) {
+          ((Dispatched)task).done.run();
+        }
+      };
+    } else {
+      if (!policy.equals(CALLER_RUNS)) {
+        Log.warn("Unknown clock saturation policy '" + policy +
+          "', using " + CALLER_RUNS);
+      }
+      handler = (task, pool) -> {
+        saturated.increment();
+        if (!pool.isShutdown()) {
+          task.run();
+        }
+      };
+    }
+
+    final AtomicInteger count = new AtomicInteger();
+    executor = new ThreadPoolExecutor(
+      threads, threads, 60, TimeUnit.SECONDS,
+      new ArrayBlockingQueue<>(queueSize),
+      task -> {
+        Thread thread = new Thread(task, "solace-clock-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      },
+      handler);
+
+    Metrics.gauge("clock.dispatch.queued", () -> executor.getQueue().size());
+    Metrics.gauge("clock.dispatch.active", executor::getActiveCount);
+  }
+
+  /**
+   * A fired event waiting for a worker.
+   */
+  private static class Dispatched implements Runnable {
+    final String label;
+    final Stats stats;
+    final Runnable action;
+    final Runnable done;
+    final long queued = System.nanoTime();
+
+    Dispatched(String l, Stats s, Runnable a, Runnable d) {
+      label = l;
+      stats = s;
+      action = a;
+      done = d;
+    }
+
+    public void run() {
+      try {
+        EventDispatcher.run(label, stats, action, queued);
+      } finally {
+        done.run();
+      }
+    }
+  }
+
+  /**
+   * Dispatches the action of a fired event.
+   * @param label Label of the event (for logging).
+   * @param s Timing metrics for the event's kind.
+   * @param action Action to run.
+   * @param done Run once the action has finished, or once the event has been
+   *   discarded.
+   */
+  void dispatch(String label, Stats s, Runnable action, Runnable done) {
+    executor.execute(new Dispatched(label, s, action, done));
+  }
+
+  /**
+   * Runs the action of a fired event, recording its timing.
+   * @param label Label of the event (for logging).
+   * @param s Timing metrics for the event's kind.
+   * @param action Action to run.
+   * @param queued Time at which the event was queued (from
+   *   <code>System.nanoTime()</code>), or 0 if it was not queued.
+   */
+  static void run(String label, Stats s, Runnable action, long queued) {
+    long start = System.nanoTime();
+    if (queued != 0) {
+      s.wait.record((start - queued) / 1000);
+    }
+    try {
+      action.run();
+    } catch (Throwable t) {
+      Log.error("Error running clock event " + label + ": " + t.getMessage());
+      t.printStackTrace();
+    } finally {
+      s.run.record((System.nanoTime() - start) / 1000);
+    }
+  }
+
+  /**
+   * Stops the dispatcher's worker threads.
+   */
+  void shutdown() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,217 @@
+package solace.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+import solace.io.Config;
+
+/**
+ * The optional single writer game loop. When <code>game.loop.mode</code> is
+ * set to <code>single-writer</code> every change to the game world is made by
+ * one thread: connection threads only queue the lines of input they read
+ * (see {@link solace.net.Connection}), and the game clock hands the actions
+ * of fired events and its tick listeners to the loop rather than to a pool of
+ * worker threads. The loop runs the tasks it is given one at a time, in the
+ * order they were submitted.
+ *
+ * How queued commands are drained is set by <code>game.loop.drain</code>:
+ *
+ * - <code>continuous</code> - A command queue is run as soon as the loop
+ *   reaches it, one command at a time and then behind every other waiting
+ *   task, so input does not wait for the next tick (this is the default).
+ * - <code>tick</code> - Once per clock tick, before the tick's events, the
+ *   loop drains every waiting command queue in the order they began waiting,
+ *   taking one command from each queue in turn until all are empty.
+ *
+ * In the default <code>concurrent</code> mode the loop is not started and
+ * input and clock events are handled by many threads at once.
+ *
+ * @author Ryan Sandor Richards
+ */
+public class GameLoop {
+  public static final String CONCURRENT = "concurrent";
+  public static final String SINGLE_WRITER = "single-writer";
+  public static final String CONTINUOUS = "continuous";
+  public static final String TICK = "tick";
+
+  /**
+   * Commands queued for the loop (such as a connection's input).
+   */
+  public interface CommandQueue {
+    /**
+     * Runs the oldest queued command. Should return false, without running
+     * anything, if the queue is empty.
+     * @return True if more commands remain queued.
+     */
+    boolean runNext();
+  }
+
+  private static final Metrics.Counter tasks = Metrics.counter("loop.tasks");
+  private static final Metrics.Histogram wait = Metrics.histogram("loop.task.wait.us");
+  private static final Metrics.Histogram run = Metrics.histogram("loop.task.run.us");
+  private static final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+  private static final Queue<CommandQueue> waiting = new ConcurrentLinkedQueue<>();
+  static {
+    Metrics.gauge("loop.queued", queue::size);
+  }
+
+  private static volatile boolean enabled = false;
+  private static volatile boolean perTick = false;
+  private static Thread thread = null;
+
+  /**
+   * Starts the game loop if the configured mode is single writer.
+   */
+  public static synchronized void start() {
+    if (thread != null) {
+      return;
+    }
+    String mode = Config.get("game.loop.mode", CONCURRENT);
+    if (mode.equals(SINGLE_WRITER)) {
+      Log.info("Starting single writer game loop");
+      String drain = Config.get("game.loop.drain", CONTINUOUS);
+      if (!drain.equals(TICK) && !drain.equals(CONTINUOUS)) {
+        Log.warn("Unknown game loop drain '" + drain + "', using " + CONTINUOUS);
+      }
+      perTick = drain.equals(TICK);
+      enabled = true;
+      thread = new Thread(GameLoop::run, "solace-game-loop");
+      thread.setDaemon(true);
+      thread.start();
+    } else if (!mode.equals(CONCURRENT)) {
+      Log.warn("Unknown game loop mode '" + mode + "', using " + CONCURRENT);
+    }
+  }
+
+  /**
+   * Stops the game loop. Tasks that have not yet run are discarded.
+   */
+  public static synchronized void stop() {
+    if (thread == null) {
+      return;
+    }
+    Log.info("Stopping game loop");
+    enabled = false;
+    thread.interrupt();
+    thread = null;
+    queue.clear();
+    waiting.clear();
+  }
+
+  /**
+   * @return True if the game is running in single writer mode.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return True if the calling thread is the game loop thread.
+   */
+  public static boolean isLoopThread() {
+    return Thread.currentThread() == thread;
+  }
+
+  /**
+   * Submits a task to be run by the game loop.
+   * @param task Task to run.
+   */
+  public static void execute(Runnable task) {
+    final long queued = System.nanoTime();
+    queue.add(() -> {
+      long start = System.nanoTime();
+      wait.record((start - queued) / 1000);
+      task.run();
+      run.record((System.nanoTime() - start) / 1000);
+    });
+  }
+
+  /**
+   * Tells the loop that a command queue has commands waiting. Should be called
+   * when the queue goes from empty to not empty.
+   * @param commands Queue with commands waiting.
+   */
+  public static void ready(CommandQueue commands) {
+    if (perTick) {
+      waiting.add(commands);
+    } else {
+      execute(() -> {
+        if (runSafely(commands)) {
+          ready(commands);
+        }
+      });
+    }
+  }
+
+  /**
+   * Called by the clock at the start of each tick, before the tick's events
+   * are handed to the loop. When draining per tick this queues the drain of
+   * the waiting command queues.
+   */
+  public static void tick() {
+    if (perTick) {
+      execute(GameLoop::drain);
+    }
+  }
+
+  /**
+   * Drains the waiting command queues, one command from each in turn.
+   */
+  private static void drain() {
+    List<CommandQueue> round = new ArrayList<>();
+    for (CommandQueue commands; (commands = waiting.poll()) != null;) {
+      round.add(commands);
+    }
+    while (!round.isEmpty()) {
+      List<CommandQueue> next = new ArrayList<>();
+      for (CommandQueue commands : round) {
+        if (runSafely(commands)) {
+          next.add(commands);
+        }
+      }
+      round = next;
+    }
+  }
+
+  /**
+   * Runs the next command of a queue, logging any error so that one broken
+   * command does not stop the loop. If the queue throws it is readied again
+   * (on the next tick, when draining per tick), since nothing else would
+   * tell the loop about the commands behind it.
+   * @param commands Queue to run.
+   * @return True if more commands remain queued.
+   */
+  private static boolean runSafely(CommandQueue commands) {
+    try {
+      return commands.runNext();
+    } catch (Throwable t) {
+      Log.error("Error in game loop command: " + t.getMessage());
+      t.printStackTrace();
+      ready(commands);
+      return false;
+    }
+  }
+
+  /**
+   * Runs tasks until the loop is stopped.
+   */
+  private static void run() {
+    while (enabled) {
+      Runnable task;
+      try {
+        task = queue.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      try {
+        task.run();
+      } catch (Throwable t) {
+        Log.error("Error in game loop task: " + t.getMessage());
+        t.printStackTrace();
+      }
+      tasks.increment();
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package solace.util;
+
+/**
+ * A cheap, shared, monotonic time source for game logic that measures
+ * durations in wall clock time (such as buffs and cooldowns). Rather than
+ * reading the system clock and allocating a date each time it is asked, the
+ * time is cached and refreshed by the game {@link Clock}: at the start of
+ * every tick and, between ticks, every <code>game.clock.time-resolution</code>
+ * milliseconds. Until a clock has refreshed it, the time is read directly
+ * from <code>System.nanoTime()</code>.
+ *
+ * When the game is driven by a simulated clock the time follows the clock's
+ * simulated time, so buffs and cooldowns expire in simulated seconds.
+ *
+ * Times are only meaningful relative to one another, they are not dates.
+ *
+ * @author Ryan Sandor Richards
+ */
+public class GameTime {
+  private static volatile long millis = 0;
+  private static volatile boolean refreshed = false;
+
+  /**
+   * @return The current game time, in milliseconds.
+   */
+  public static long millis() {
+    if (refreshed) {
+      return millis;
+    }
+    return System.nanoTime() / 1000000;
+  }
+
+  /**
+   * Refreshes the cached time.
+   * @param nanos The current time from the clock's time source.
+   */
+  static void refresh(long nanos) {
+    millis = nanos / 1000000;
+    refreshed = true;
+  }
+}
@@ -4,10 +4,38 @@ import java.util.Date;
 
 /**
  * Basic log class for logging events and errors in the system.
+ *
+ * The log level is read once, and the date shown with each message is
+ * formatted at most once a second, so that checking whether a level is
+ * enabled and logging a message are cheap. Callers that build expensive
+ * messages for the trace and debug levels should check
+ * {@link #isTraceEnabled()} or {@link #isDebugEnabled()} first.
+ *
  * @author Ryan Sandor Richards
  */
 public class Log {
   static String level = System.getenv("LOG_LEVEL");
+  private static final int threshold = getLevel();
+  private static final int TRACE = getLevel("trace");
+  private static final int DEBUG = getLevel("debug");
+  private static final int INFO = getLevel("info");
+  private static final int WARN = getLevel("warn");
+  private static final int ERROR = getLevel("error");
+
+  /**
+   * The date shown with messages logged during a second.
+   */
+  private static final class Stamp {
+    final long second;
+    final String text;
+
+    Stamp(long s) {
+      second = s;
+      text = new Date(s * 1000).toString();
+    }
+  }
+
+  private static volatile Stamp stamp = new Stamp(-1);
 
   /**
    * @return The numeric value of the environment log level.
@@ -49,7 +77,36 @@ public class Log {
    * @return true if logs of this level should be shown, false otherwise.
    */
   static boolean show(String l) {
-    return getLevel() <= getLevel(l);
+    return threshold <= getLevel(l);
+  }
+
+  /**
+   * @return True if trace level messages are logged.
+   */
+  public static boolean isTraceEnabled() {
+    return threshold <= TRACE;
+  }
+
+  /**
+   * @return True if debug level messages are logged.
+   */
+  public static boolean isDebugEnabled() {
+    return threshold <= DEBUG;
+  }
+
+  /**
+   * @return The date to show with a message, formatted once per second.
+   *   Threads that log at the start of a new second may each format it, but
+   *   none of them wait for a lock.
+   */
+  static String timestamp() {
+    long second = System.currentTimeMillis() / 1000;
+    Stamp current = stamp;
+    if (current.second != second) {
+      current = new Stamp(second);
+      stamp = current;
+    }
+    return current.text;
   }
 
   /**
@@ -57,8 +114,7 @@ public class Log {
    * @param s Message.
    */
   public static void fatal(String s) {
-    Date d = new Date();
-    System.out.println(Color.format("{R}[FATAL]{x} ("+d+"): " + s));
+    System.out.println(Color.format("{R}[FATAL]{x} ("+timestamp()+"): " + s));
   }
 
   /**
@@ -66,9 +122,8 @@ public class Log {
    * @param s Message.
    */
   public static void error(String s) {
-    if (!show("error")) { return; }
-    Date d = new Date();
-    System.out.println(Color.format("{R}[ERROR]{x} ("+d+"): " + s));
+    if (threshold > ERROR) { return; }
+    System.out.println(Color.format("{R}[ERROR]{x} ("+timestamp()+"): " + s));
   }
 
   /**
@@ -76,9 +131,8 @@ public class Log {
    * @param s Message.
    */
   public static void warn(String s) {
-    if (!show("warn")) { return; }
-    Date d = new Date();
-    System.out.println(Color.format("{y}[WARNING]{x} ("+d+"): " + s));
+    if (threshold > WARN) { return; }
+    System.out.println(Color.format("{y}[WARNING]{x} ("+timestamp()+"): " + s));
   }
 
   /**
@@ -86,9 +140,8 @@ public class Log {
    * @param s Message.
    */
   public static void info(String s) {
-    if (!show("info")) { return; }
-    Date d = new Date();
-    System.out.println(Color.format("[INFO] ("+d+"): "+s));
+    if (threshold > INFO) { return; }
+    System.out.println(Color.format("[INFO] ("+timestamp()+"): "+s));
   }
 
   /**
@@ -96,9 +149,8 @@ public class Log {
    * @param s Message.
    */
   public static void debug(String s) {
-    if (!show("debug")) { return; }
-    Date d = new Date();
-    System.out.println(Color.format("{g}[DEBUG]{x} ("+d+"): "+s));
+    if (!isDebugEnabled()) { return; }
+    System.out.println(Color.format("{g}[DEBUG]{x} ("+timestamp()+"): "+s));
   }
 
   /**
@@ -106,8 +158,7 @@ public class Log {
    * @param s Message.
    */
   public static void trace(String s) {
-    if (!show("trace")) { return; }
-    Date d = new Date();
-    System.out.println(Color.format("{K}[TRACE]{x} ("+d+"): "+s));
+    if (!isTraceEnabled()) { return; }
+    System.out.println(Color.format("{K}[TRACE]{x} ("+timestamp()+"): "+s));
   }
 }
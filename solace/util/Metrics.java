@@ -0,0 +1,175 @@
+package solace.util;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of named runtime metrics for the engine. Metrics are cheap to
+ * update from any thread and can be inspected in game via the admin
+ * <code>metrics</code> command.
+ * @author Ryan Sandor Richards
+ */
+public class Metrics {
+  /**
+   * A monotonically increasing count.
+   */
+  public static class Counter {
+    private final LongAdder value = new LongAdder();
+
+    /**
+     * Increments the counter by one.
+     */
+    public void increment() { value.increment(); }
+
+    /**
+     * Adds the given amount to the counter.
+     * @param n Amount to add.
+     */
+    public void add(long n) { value.add(n); }
+
+    /**
+     * @return The current count.
+     */
+    public long get() { return value.sum(); }
+
+    @Override
+    public String toString() { return String.valueOf(get()); }
+  }
+
+  /**
+   * Records the distribution of a series of non-negative values. Values are
+   * kept in power of two buckets, so percentiles are approximate (they are
+   * reported as the upper bound of the bucket containing the percentile).
+   */
+  public static class Histogram {
+    private static final int BUCKETS = 64;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Records a value.
+     * @param value Value to record.
+     */
+    public void record(long value) {
+      if (value < 0) value = 0;
+      count.increment();
+      sum.add(value);
+      buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+      long current;
+      while (value > (current = max.get())) {
+        if (max.compareAndSet(current, value)) break;
+      }
+    }
+
+    /**
+     * @return The number of values recorded.
+     */
+    public long getCount() { return count.sum(); }
+
+    /**
+     * @return The sum of all values recorded.
+     */
+    public long getSum() { return sum.sum(); }
+
+    /**
+     * @return The largest value recorded.
+     */
+    public long getMax() { return max.get(); }
+
+    /**
+     * @return The mean of all recorded values.
+     */
+    public double getMean() {
+      long n = getCount();
+      return n == 0 ? 0.0 : (double)getSum() / n;
+    }
+
+    /**
+     * Determines the approximate value at the given percentile.
+     * @param p Percentile in the range [0, 1].
+     * @return The approximate value at the percentile.
+     */
+    public long getPercentile(double p) {
+      long n = getCount();
+      if (n == 0) return 0;
+      long rank = (long)Math.ceil(p * n);
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += buckets.get(i);
+        if (seen >= rank) {
+          long upper = (i == 0) ? 0 : (1L << i) - 1;
+          return Math.min(upper, getMax());
+        }
+      }
+      return getMax();
+    }
+
+    @Override
+    public String toString() {
+      return String.format("count=%d mean=%.1f p99=%d max=%d",
+        getCount(), getMean(), getPercentile(0.99), getMax());
+    }
+  }
+
+  /**
+   * A value that is sampled when the metrics are read.
+   */
+  private static class Gauge {
+    private final LongSupplier supplier;
+
+    Gauge(LongSupplier s) { supplier = s; }
+
+    @Override
+    public String toString() { return String.valueOf(supplier.getAsLong()); }
+  }
+
+  private static final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+  /**
+   * Finds or creates the counter with the given name.
+   * @param name Name of the counter.
+   * @return The counter.
+   */
+  public static Counter counter(String name) {
+    return (Counter)metrics.computeIfAbsent(name, n -> new Counter());
+  }
+
+  /**
+   * Finds or creates the histogram with the given name.
+   * @param name Name of the histogram.
+   * @return The histogram.
+   */
+  public static Histogram histogram(String name) {
+    return (Histogram)metrics.computeIfAbsent(name, n -> new Histogram());
+  }
+
+  /**
+   * Registers a gauge, replacing any existing gauge with the same name.
+   * @param name Name of the gauge.
+   * @param supplier Supplies the gauge's current value.
+   */
+  public static void gauge(String name, LongSupplier supplier) {
+    metrics.put(name, new Gauge(supplier));
+  }
+
+  /**
+   * Creates a snapshot of all metrics whose names begin with the given prefix.
+   * @param prefix Name prefix to match (use an empty string for all metrics).
+   * @return A map of metric names to their formatted values, sorted by name.
+   */
+  public static SortedMap<String, String> snapshot(String prefix) {
+    SortedMap<String, String> result = new TreeMap<>();
+    metrics.forEach((name, metric) -> {
+      if (name.startsWith(prefix)) {
+        result.put(name, metric.toString());
+      }
+    });
+    return result;
+  }
+}
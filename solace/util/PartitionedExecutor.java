@@ -0,0 +1,142 @@
+package solace.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the partitioned events that fire on a clock tick. Events are
+ * partitioned by the part of the world they touch (the game uses areas), and
+ * each partition's events run in order, on one thread, while the partitions
+ * themselves run in parallel on a fork join pool. The tick waits for every
+ * partition to finish.
+ *
+ * Work that reaches outside of a partition (such as moving a player into
+ * another area) must be handed off with {@link Clock#handOff(Runnable)}.
+ * Hand-offs are held until every partition has finished and are then run on
+ * the clock thread, in partition order and then in the order they were
+ * handed off, so the result of a tick does not depend on how its partitions
+ * were scheduled.
+ *
+ * With a single thread the partitions are run one after another on the
+ * clock thread (this is what simulated clocks use).
+ *
+ * Partitions only keep partitioned events apart from one another. Events
+ * without a partition (such as battle rounds and recovery) and player
+ * commands still run on other threads at the same time, and may touch the
+ * same players, so partitioned events rely on the same locks as the rest of
+ * the game for those.
+ *
+ * @author Ryan Sandor Richards
+ */
+class PartitionedExecutor {
+  private static final ThreadLocal<List<Runnable>> outbox = new ThreadLocal<>();
+  private static final Metrics.Histogram phase =
+    Metrics.histogram("clock.partition.phase.us");
+  private static final Metrics.Counter handOffs =
+    Metrics.counter("clock.partition.handoffs");
+
+  /**
+   * Holds a hand-off if the calling thread is running a partition.
+   * @param action Action to hand off.
+   * @return True if the action was held, false if the caller should run it.
+   */
+  static boolean defer(Runnable action) {
+    List<Runnable> out = outbox.get();
+    if (out == null) {
+      return false;
+    }
+    out.add(action);
+    return true;
+  }
+
+  private final ForkJoinPool pool;
+  private final int threads;
+
+  /**
+   * Creates a new partitioned executor.
+   * @param n Number of threads that run partitions.
+   */
+  PartitionedExecutor(int n) {
+    threads = Math.max(1, n);
+    if (threads == 1) {
+      pool = null;
+      return;
+    }
+    final AtomicInteger count = new AtomicInteger();
+    pool = new ForkJoinPool(threads, p -> {
+      ForkJoinWorkerThread thread =
+        ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+      thread.setName("solace-area-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }, null, false);
+  }
+
+  /**
+   * @return The number of threads that run partitions.
+   */
+  int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Runs the actions of each partition and then the hand-offs they made.
+   * @param partitions Actions for each partition, in partition order.
+   */
+  void run(List<List<Runnable>> partitions) {
+    long start = System.nanoTime();
+    List<List<Runnable>> outboxes = new ArrayList<>(partitions.size());
+    List<ForkJoinTask<?>> tasks = new ArrayList<>(partitions.size());
+    for (List<Runnable> actions : partitions) {
+      final List<Runnable> out = new ArrayList<>();
+      outboxes.add(out);
+      if (pool == null || partitions.size() == 1) {
+        runPartition(actions, out);
+      } else {
+        tasks.add(pool.submit(() -> runPartition(actions, out)));
+      }
+    }
+    for (ForkJoinTask<?> task : tasks) {
+      task.join();
+    }
+
+    for (List<Runnable> out : outboxes) {
+      for (Runnable action : out) {
+        handOffs.increment();
+        try {
+          action.run();
+        } catch (Throwable t) {
+          Log.error("Error in clock hand-off: " + t.getMessage());
+          t.printStackTrace();
+        }
+      }
+    }
+    phase.record((System.nanoTime() - start) / 1000);
+  }
+
+  /**
+   * Runs the actions of a partition, collecting its hand-offs.
+   * @param actions Actions to run.
+   * @param out List to hold the partition's hand-offs.
+   */
+  private static void runPartition(List<Runnable> actions, List<Runnable> out) {
+    outbox.set(out);
+    try {
+      for (Runnable action : actions) {
+        action.run();
+      }
+    } finally {
+      outbox.remove();
+    }
+  }
+
+  /**
+   * Stops the executor's threads.
+   */
+  void shutdown() {
+    if (pool != null) {
+      pool.shutdownNow();
+    }
+  }
+}
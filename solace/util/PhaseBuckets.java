@@ -0,0 +1,87 @@
+package solace.util;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Groups items by their phase in a cycle of clock ticks (see
+ * {@link Clock#phaseFor}), so that work done for each item once per cycle can
+ * be spread across the cycle's ticks without scanning every item on every
+ * tick. Items are placed in their bucket when they are added, and each tick
+ * only visits the bucket for its phase.
+ * @author Ryan Sandor Richards
+ */
+public class PhaseBuckets<T> {
+  private final List<Set<T>> buckets;
+  private final Function<? super T, ?> key;
+  private long last = -1;
+
+  /**
+   * Creates a new set of phase buckets.
+   * @param period Length of the cycle, in ticks.
+   * @param key Gives the key used to determine an item's phase.
+   */
+  public PhaseBuckets(int period, Function<? super T, ?> key) {
+    buckets = new ArrayList<>(Math.max(period, 1));
+    for (int i = 0; i < Math.max(period, 1); i++) {
+      buckets.add(ConcurrentHashMap.newKeySet());
+    }
+    this.key = key;
+  }
+
+  /**
+   * @return The length of the cycle, in ticks.
+   */
+  public int getPeriod() {
+    return buckets.size();
+  }
+
+  /**
+   * Adds an item to the bucket for its phase.
+   * @param item Item to add.
+   */
+  public void add(T item) {
+    bucket(item).add(item);
+  }
+
+  /**
+   * Removes an item from its bucket.
+   * @param item Item to remove.
+   */
+  public void remove(T item) {
+    bucket(item).remove(item);
+  }
+
+  /**
+   * Visits the items whose phase has come around since the last call, up to
+   * and including the given tick. Normally this is just the bucket for the
+   * tick itself, but if ticks were skipped (or the same tick is seen twice)
+   * each bucket is still visited once per time its phase comes around, and at
+   * most once per call.
+   * @param tick Current clock tick.
+   * @param action Action to perform for each item.
+   */
+  public void forEachDue(long tick, Consumer<? super T> action) {
+    long from;
+    synchronized (this) {
+      if (tick <= last) {
+        return;
+      }
+      from = last < 0 ? tick : Math.max(last + 1, tick - getPeriod() + 1);
+      last = tick;
+    }
+    for (long t = from; t <= tick; t++) {
+      buckets.get((int)(t % getPeriod())).forEach(action);
+    }
+  }
+
+  /**
+   * @param item An item.
+   * @return The bucket for the item's phase.
+   */
+  private Set<T> bucket(T item) {
+    return buckets.get((int)Clock.phaseFor(key.apply(item), getPeriod()));
+  }
+}
@@ -1,17 +1,75 @@
 package solace.util;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * Random number utility class.
+ *
+ * Each thread rolls with its own generator, split from a root generator the
+ * first time the thread rolls, so threads never contend over a shared seed.
+ * A thread can be given a seeded generator with {@link #seed(long)}, or have
+ * another generator installed for a while with {@link #use(SplittableRandom)}
+ * (battles use this to replay their rounds from a seed). The same seed gives
+ * the same sequence of rolls.
+ *
  * @author Ryan Sandor Richards
  */
 public class Roll {
   /**
-   * Number of rolls to perform to generate a normal-ish distribution.
+   * Number of uniform rolls summed to generate a normal-ish distribution.
    */
   static final int NORMAL_ROLLS = 12;
-  static final Random random = new Random();
+
+  /**
+   * Bits taken from a random long for each of the uniform rolls.
+   */
+  static final int NORMAL_BITS = 5;
+
+  /**
+   * Mean and standard deviation of the sum of the uniform rolls.
+   */
+  static final double NORMAL_SUM_MEAN = NORMAL_ROLLS * ((1 << NORMAL_BITS) - 1) / 2.0;
+  static final double NORMAL_SUM_SD = Math.sqrt(
+    NORMAL_ROLLS * ((double)(1L << (2 * NORMAL_BITS)) - 1) / 12.0);
+
+  private static final SplittableRandom root = new SplittableRandom();
+  private static final ThreadLocal<SplittableRandom> local =
+    ThreadLocal.withInitial(Roll::split);
+
+  /**
+   * @return A new generator split from the root generator.
+   */
+  private static synchronized SplittableRandom split() {
+    return root.split();
+  }
+
+  /**
+   * Gives the calling thread its own generator, with the given seed, for its
+   * rolls.
+   * @param seed Seed for the generator.
+   */
+  public static void seed(long seed) {
+    local.set(new SplittableRandom(seed));
+  }
+
+  /**
+   * Returns the calling thread to a generator split from the root generator.
+   */
+  public static void unseed() {
+    local.remove();
+  }
+
+  /**
+   * Installs a generator for the calling thread's rolls.
+   * @param generator Generator to use.
+   * @return The generator the thread was using, to be restored with another
+   *   call once the caller is done.
+   */
+  public static SplittableRandom use(SplittableRandom generator) {
+    SplittableRandom previous = local.get();
+    local.set(generator);
+    return previous;
+  }
 
   /**
    * Determines a random index given an array length.
@@ -19,14 +77,14 @@ public class Roll {
    * @return A random integer index for that array.
    */
   public static int index(int length) {
-    return random.nextInt(length);
+    return local.get().nextInt(length);
   }
 
   /**
    * @return A uniform random number.
    */
   public static double uniform() {
-    return random.nextDouble();
+    return local.get().nextDouble();
   }
 
   /**
@@ -37,7 +95,7 @@ public class Roll {
    * @return A random number from 1 to the given maximum.
    */
   public static int uniform(int max) {
-    return random.nextInt(max + 1) + 1;
+    return local.get().nextInt(max + 1) + 1;
   }
 
   /**
@@ -46,17 +104,24 @@ public class Roll {
    * given average (such as damage rolls).
    *
    * Note that this does not actually use the statistical definition of a
-   * normal distribution, but simulates it by generating and summing random
-   * uniforms and scaling them appropriately to fit the given mean.
+   * normal distribution, but simulates it by summing random uniforms and
+   * scaling them to fit the given mean, with a standard deviation of a sixth
+   * of the mean. Rather than rolling a double for each uniform, the uniforms
+   * are taken five bits at a time from a single random long, and the sum is
+   * scaled to the same mean and variance, so results always fall between
+   * zero and twice the mean.
    *
    * @param mean Mean value for the distribution.
    * @return A psuedo-normal psuedo-random number.
    */
   public static int normal(int mean) {
-    double sum = 0.0;
+    long bits = local.get().nextLong();
+    int sum = 0;
     for (int i = 0; i < NORMAL_ROLLS; i++) {
-      sum += uniform();
+      sum += (int)(bits & ((1 << NORMAL_BITS) - 1));
+      bits >>>= NORMAL_BITS;
     }
-    return (int)(2 * mean * sum / NORMAL_ROLLS);
+    double z = (sum - NORMAL_SUM_MEAN) / NORMAL_SUM_SD;
+    return (int)(mean + mean * z / 6.0);
   }
 }
@@ -0,0 +1,29 @@
+package solace.util;
+
+/**
+ * A time source that only moves when it is advanced, used by simulated
+ * clocks (see {@link Clock#simulated(long)}) to run the game deterministically
+ * and as fast as the machine allows.
+ * @author Ryan Sandor Richards
+ */
+public class SimulatedTime implements TimeSource {
+  private volatile long now = 0;
+
+  /**
+   * @return The current simulated time in nanoseconds.
+   */
+  public long nanoTime() {
+    return now;
+  }
+
+  /**
+   * Moves simulated time forward.
+   * @param nanos Number of nanoseconds to advance.
+   */
+  public void advance(long nanos) {
+    if (nanos < 0) {
+      throw new IllegalArgumentException("Simulated time cannot go backward");
+    }
+    now += nanos;
+  }
+}
@@ -0,0 +1,148 @@
+package solace.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import solace.io.Config;
+
+/**
+ * Executes concurrent game tasks such as connection loops, output writers
+ * and the commands of selector connections. The threading model used to run
+ * the tasks is set by the <code>game.threads.mode</code> configuration
+ * option:
+ *
+ * - <code>platform</code> - Each task runs on an operating system thread
+ *   (this is the default).
+ * - <code>virtual</code> - Each task runs on a JVM virtual thread. Virtual
+ *   threads are cheap to create and to block, which allows for many thousands
+ *   of idle connections without as many operating system threads. Requires a
+ *   JVM with virtual thread support (Java 21+), if the running JVM does not
+ *   support them the platform mode is used instead.
+ *
+ * Fired clock events do not go through this executor: they are run by the
+ * clock's own bounded pool of platform threads (see {@link Clock}), or by
+ * the {@link GameLoop}, so the threading mode has no effect on them. The
+ * engine builds and runs on Java 17, where the virtual mode falls back to
+ * platform threads.
+ *
+ * @author Ryan Sandor Richards
+ */
+public class Tasks {
+  public static final String PLATFORM = "platform";
+  public static final String VIRTUAL = "virtual";
+
+  private static ExecutorService executor = null;
+  private static String mode = null;
+
+  /**
+   * Initializes the task executor for the configured threading mode.
+   */
+  public static void initialize() {
+    initialize(Config.get("game.threads.mode", PLATFORM));
+  }
+
+  /**
+   * Initializes the task executor for the given threading mode. Calling this
+   * method after tasks have been executed has no effect.
+   * @param m The threading mode ("platform" or "virtual").
+   */
+  public static synchronized void initialize(String m) {
+    if (executor != null) {
+      return;
+    }
+    if (m.equals(VIRTUAL)) {
+      executor = newVirtualThreadExecutor();
+      if (executor != null) {
+        mode = VIRTUAL;
+        Log.info("Executing game tasks on virtual threads");
+        return;
+      }
+      Log.warn("Virtual threads are not supported by this JVM (" +
+        System.getProperty("java.version") + "), using platform threads");
+    } else if (!m.equals(PLATFORM)) {
+      Log.warn("Unknown thread mode '" + m + "', using platform threads");
+    }
+    executor = newPlatformThreadExecutor();
+    mode = PLATFORM;
+    Log.info("Executing game tasks on platform threads");
+  }
+
+  /**
+   * @return The threading mode in use.
+   */
+  public static synchronized String getMode() {
+    getExecutor();
+    return mode;
+  }
+
+  /**
+   * @return The executor used to run game tasks.
+   */
+  public static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      initialize();
+    }
+    return executor;
+  }
+
+  /**
+   * Executes the given task concurrently.
+   * @param task Task to execute.
+   */
+  public static void execute(Runnable task) {
+    getExecutor().execute(task);
+  }
+
+  /**
+   * @return True if the running JVM supports virtual threads.
+   */
+  public static boolean isVirtualThreadSupported() {
+    return findVirtualThreadFactoryMethod() != null;
+  }
+
+  /**
+   * Finds the <code>Executors.newVirtualThreadPerTaskExecutor</code> method.
+   * It is looked up reflectively so the engine can still be compiled and run
+   * on older JVMs.
+   * @return The method, or <code>null</code> if it is not available.
+   */
+  private static Method findVirtualThreadFactoryMethod() {
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return An executor that runs each task on a new virtual thread, or
+   *   <code>null</code> if virtual threads are not available.
+   */
+  private static ExecutorService newVirtualThreadExecutor() {
+    Method method = findVirtualThreadFactoryMethod();
+    if (method == null) {
+      return null;
+    }
+    try {
+      return (ExecutorService)method.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      // Preview builds expose the method but throw when the feature is disabled
+      Log.warn("Unable to create virtual thread executor: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * @return An executor that runs each task on a platform thread, reusing
+   *   idle threads where possible.
+   */
+  private static ExecutorService newPlatformThreadExecutor() {
+    final AtomicInteger count = new AtomicInteger();
+    return Executors.newCachedThreadPool(task -> {
+      Thread thread = new Thread(task, "solace-task-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+}
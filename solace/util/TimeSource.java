@@ -0,0 +1,20 @@
+package solace.util;
+
+/**
+ * A source of monotonic time for the game {@link Clock}. The system source
+ * follows the JVM's high resolution timer, a {@link SimulatedTime} source
+ * only moves when it is advanced.
+ * @author Ryan Sandor Richards
+ */
+public interface TimeSource {
+  /**
+   * Time source backed by <code>System.nanoTime()</code>.
+   */
+  TimeSource SYSTEM = System::nanoTime;
+
+  /**
+   * @return The current time in nanoseconds. Only the difference between two
+   *   times is meaningful.
+   */
+  long nanoTime();
+}
@@ -0,0 +1,209 @@
+package solace.util;
+
+/**
+ * A hierarchical timing wheel, used by the game {@link Clock} to schedule
+ * timers in terms of ticks. The wheel has four levels of 256 slots each. The
+ * first level holds timers that expire within the next 256 ticks, one slot
+ * per tick, and each level above holds timers 256 times further out with
+ * each slot covering 256 times as many ticks. When the slots of a level have
+ * all been visited the next slot of the level above is cascaded down,
+ * placing each of its timers in the level that now matches its remaining
+ * delay. Timers more than 2^32 ticks out are held on an overflow list until
+ * the top level wraps.
+ *
+ * Each slot is a doubly linked list of timers, so adding and cancelling a
+ * timer are constant time, and advancing the wheel only visits the timers
+ * that expire (plus the occasional cascade) rather than every timer that is
+ * scheduled. Timers in the same slot expire in the order they were added.
+ *
+ * The wheel is not thread safe, callers must synchronize access to it.
+ *
+ * @author Ryan Sandor Richards
+ */
+public class TimingWheel {
+  /**
+   * A timer that can be scheduled on a timing wheel.
+   */
+  public static abstract class Timer {
+    private long deadline;
+    private Timer prev;
+    private Timer next;
+
+    /**
+     * Called by the wheel when the timer expires. The timer has already been
+     * removed from the wheel, and may be added again.
+     */
+    protected abstract void expire();
+
+    /**
+     * @return True if the timer is currently scheduled on a wheel.
+     */
+    public boolean isScheduled() {
+      return next != null;
+    }
+
+    /**
+     * @return The tick at which the timer expires (or last expired).
+     */
+    public long getDeadline() {
+      return deadline;
+    }
+  }
+
+  /**
+   * Head of a circular list of timers.
+   */
+  private static final class Slot extends Timer {
+    Slot() {
+      super.prev = this;
+      super.next = this;
+    }
+
+    protected void expire() {}
+  }
+
+  static final int SLOT_BITS = 8;
+  static final int SLOTS = 1 << SLOT_BITS;
+  static final int LEVELS = 4;
+  private static final int MASK = SLOTS - 1;
+
+  private final Timer[][] levels = new Timer[LEVELS][SLOTS];
+  private final Timer overflow = new Slot();
+  private long now = 0;
+  private int size = 0;
+
+  /**
+   * Creates a new timing wheel at tick zero.
+   */
+  public TimingWheel() {
+    for (int level = 0; level < LEVELS; level++) {
+      for (int i = 0; i < SLOTS; i++) {
+        levels[level][i] = new Slot();
+      }
+    }
+  }
+
+  /**
+   * @return The current tick.
+   */
+  public long getTime() {
+    return now;
+  }
+
+  /**
+   * @return The number of timers scheduled on the wheel.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Schedules a timer, rescheduling it if it is already on the wheel.
+   * @param timer Timer to schedule.
+   * @param delay Number of ticks until the timer expires. Delays of less than
+   *   one tick are treated as one tick.
+   */
+  public void add(Timer timer, long delay) {
+    cancel(timer);
+    timer.deadline = now + Math.max(1, delay);
+    place(timer);
+    size++;
+  }
+
+  /**
+   * Removes a timer from the wheel. Has no effect if the timer is not
+   * scheduled.
+   * @param timer Timer to cancel.
+   * @return True if the timer was removed.
+   */
+  public boolean cancel(Timer timer) {
+    if (!timer.isScheduled()) {
+      return false;
+    }
+    unlink(timer);
+    size--;
+    return true;
+  }
+
+  /**
+   * Advances the wheel one tick and expires every timer that is due.
+   * @return The number of timers that expired.
+   */
+  public int advance() {
+    now++;
+    if ((now & MASK) == 0) {
+      int level = 1;
+      int index;
+      do {
+        index = (int)((now >>> (SLOT_BITS * level)) & MASK);
+        cascade(levels[level][index]);
+        level++;
+      } while (index == 0 && level < LEVELS);
+      if (index == 0) {
+        cascade(overflow);
+      }
+    }
+
+    Timer slot = levels[0][(int)(now & MASK)];
+    int expired = 0;
+    while (slot.next != slot) {
+      Timer timer = slot.next;
+      unlink(timer);
+      size--;
+      expired++;
+      timer.expire();
+    }
+    return expired;
+  }
+
+  /**
+   * Places a timer in the slot that matches its remaining delay.
+   * @param timer Timer to place.
+   */
+  private void place(Timer timer) {
+    long delay = timer.deadline - now;
+    for (int level = 0; level < LEVELS; level++) {
+      if (delay < 1L << (SLOT_BITS * (level + 1))) {
+        int index = (int)((timer.deadline >>> (SLOT_BITS * level)) & MASK);
+        link(levels[level][index], timer);
+        return;
+      }
+    }
+    link(overflow, timer);
+  }
+
+  /**
+   * Moves each timer in a slot down to the slot matching its remaining delay.
+   * @param slot Slot to cascade.
+   */
+  private void cascade(Timer slot) {
+    Timer timer = slot.next;
+    slot.prev = slot;
+    slot.next = slot;
+    while (timer != slot) {
+      Timer next = timer.next;
+      place(timer);
+      timer = next;
+    }
+  }
+
+  /**
+   * Adds a timer to the end of a slot's list.
+   */
+  private static void link(Timer slot, Timer timer) {
+    timer.prev = slot.prev;
+    timer.next = slot;
+    slot.prev.next = timer;
+    slot.prev = timer;
+  }
+
+  /**
+   * Removes a timer from the list it is on.
+   */
+  private static void unlink(Timer timer) {
+    timer.prev.next = timer.next;
+    timer.next.prev = timer.prev;
+    timer.prev = null;
+    timer.next = null;
+  }
+}
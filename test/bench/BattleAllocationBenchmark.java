@@ -0,0 +1,78 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import solace.game.Battle;
+import solace.game.BattleManager;
+import solace.game.Character;
+import solace.game.Player;
+import solace.game.Room;
+import solace.io.DamageTypes;
+
+/**
+ * Measures the time and the bytes allocated by a round of a battle between
+ * two unarmed characters: rolling the attacks, applying the damage, and
+ * building and sending the round's messages. Characters are healed between
+ * rounds and never die, and the messages they are sent are discarded.
+ *
+ * Usage: ant bench -Dbench=bench.BattleAllocationBenchmark \
+ *   -Dbench.args="[battles] [rounds]"
+ *
+ * @author Ryan Sandor Richards
+ */
+public class BattleAllocationBenchmark {
+  static final com.sun.management.ThreadMXBean threads =
+    (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+  static List<Player> players = new ArrayList<>();
+  static List<Battle> battles = new ArrayList<>();
+
+  /**
+   * Fights the given number of rounds of every battle.
+   * @return The nanoseconds and bytes allocated per battle round.
+   */
+  static double[] run(int rounds) {
+    long id = Thread.currentThread().getId();
+    long bytes = threads.getThreadAllocatedBytes(id);
+    long start = System.nanoTime();
+    for (int r = 0; r < rounds; r++) {
+      for (Battle battle : battles) {
+        battle.round();
+      }
+      for (Player p : players) {
+        p.setHp(p.getMaxHp());
+      }
+    }
+    long nanos = System.nanoTime() - start;
+    bytes = threads.getThreadAllocatedBytes(id) - bytes;
+    double n = (double)rounds * battles.size();
+    return new double[] { nanos / n, bytes / n };
+  }
+
+  public static void main(String[] args) {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+    DamageTypes.getInstance().reload();
+    Room room = new Room("bench");
+    for (int i = 0; i < count; i++) {
+      Character attacker = new DummyCharacter("attacker" + i, 10);
+      Character defender = new DummyCharacter("defender" + i, 10);
+      for (Character c : new Character[] { attacker, defender }) {
+        c.setRoom(room);
+        players.add(c);
+      }
+      BattleManager.initiate(attacker, defender);
+      battles.add(BattleManager.getBattleFor(attacker));
+    }
+
+    // Warm up
+    run(rounds);
+
+    double[] result = run(rounds);
+    System.out.println(String.format("battles: %d, rounds: %d", count, rounds));
+    System.out.println(String.format("%12s %14s", "ns/round", "bytes/round"));
+    System.out.println(String.format("%12.1f %14.1f", result[0], result[1]));
+  }
+}
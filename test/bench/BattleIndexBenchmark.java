@@ -0,0 +1,103 @@
+package bench;
+
+import java.util.*;
+
+import solace.game.Battle;
+import solace.game.BattleManager;
+import solace.game.Character;
+import solace.game.Player;
+
+/**
+ * Compares finding a player's battle with the battle manager's index to the
+ * scan of every battle, under the lock on the set of battles, that it used
+ * previously. Each run has the given number of battles between two players
+ * in progress and looks up the battle of random players (as prompts,
+ * cooldowns and player cleanup do) from one or more threads at once.
+ *
+ * Usage: ant bench -Dbench=bench.BattleIndexBenchmark \
+ *   -Dbench.args="[battles] [lookups] [threads...]"
+ *
+ * @author Ryan Sandor Richards
+ */
+public class BattleIndexBenchmark {
+  static final Set<Battle> battles = Collections.synchronizedSet(new HashSet<>());
+  static Player[] players;
+  static volatile long sink = 0;
+
+  /**
+   * Finds a battle as the battle manager did before it had an index.
+   */
+  static Battle scan(Player player) {
+    synchronized (battles) {
+      for (Battle b : battles) {
+        if (b.hasParticipant(player)) {
+          return b;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Looks up the battles of random players on a number of threads.
+   * @return Nanoseconds per lookup.
+   */
+  static double run(boolean indexed, int lookups, int threads)
+    throws InterruptedException
+  {
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      final Random random = new Random(t);
+      workers[t] = new Thread(() -> {
+        long found = 0;
+        for (int i = 0; i < lookups; i++) {
+          Player p = players[random.nextInt(players.length)];
+          Battle b = indexed ? BattleManager.getBattleFor(p) : scan(p);
+          if (b != null) found++;
+        }
+        sink += found;
+      });
+    }
+    long start = System.nanoTime();
+    for (Thread worker : workers) worker.start();
+    for (Thread worker : workers) worker.join();
+    return (double)(System.nanoTime() - start) / (lookups * threads);
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+    int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+    int[] threadCounts = { 1, 4, 16 };
+    if (args.length > 2) {
+      threadCounts = new int[args.length - 2];
+      for (int i = 2; i < args.length; i++) {
+        threadCounts[i - 2] = Integer.parseInt(args[i]);
+      }
+    }
+
+    players = new Player[2 * count];
+    for (int i = 0; i < count; i++) {
+      Battle battle = new Battle();
+      players[2 * i] = new Character("attacker" + i);
+      players[2 * i + 1] = new Character("defender" + i);
+      battle.add(players[2 * i]);
+      battle.add(players[2 * i + 1]);
+      battles.add(battle);
+    }
+
+    // Warm up
+    run(false, lookups, 1);
+    run(true, lookups * 10, 1);
+
+    System.out.println(String.format("battles: %d, lookups/thread: %d",
+      count, lookups));
+    System.out.println(String.format("%8s %14s %14s %10s",
+      "threads", "scan (ns)", "index (ns)", "speedup"));
+    for (int threads : threadCounts) {
+      double scan = run(false, lookups, threads);
+      double index = run(true, lookups, threads);
+      System.out.println(String.format("%8d %14.1f %14.1f %9.0fx",
+        threads, scan, index, scan / index));
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package bench;
+
+import java.util.*;
+
+import solace.game.BattleManager;
+import solace.game.Character;
+import solace.game.Player;
+import solace.game.Room;
+import solace.io.DamageTypes;
+
+/**
+ * Measures the latency of a battle manager round with the rounds of battles
+ * fought by 1, 4 and 16 threads. Each run has the given number of battles
+ * between pairs of characters in progress. Characters are healed between
+ * rounds and never die, so that every battle lasts the whole run, and the
+ * messages they are sent are discarded rather than written to a connection.
+ *
+ * Usage: ant bench -Dbench=bench.BattleRoundBenchmark \
+ *   -Dbench.args="[battles] [rounds] [threads...]"
+ *
+ * @author Ryan Sandor Richards
+ */
+public class BattleRoundBenchmark {
+  static List<Player> players = new ArrayList<>();
+
+  /**
+   * Runs rounds with the given number of threads.
+   * @return Round latencies, in microseconds, sorted.
+   */
+  static long[] run(int threads, int rounds) {
+    BattleManager.setThreads(threads);
+    long[] latencies = new long[rounds];
+    for (int r = 0; r < rounds; r++) {
+      long start = System.nanoTime();
+      BattleManager.round();
+      latencies[r] = (System.nanoTime() - start) / 1000;
+      for (Player p : players) {
+        p.setHp(p.getMaxHp());
+      }
+    }
+    Arrays.sort(latencies);
+    return latencies;
+  }
+
+  public static void main(String[] args) {
+    int battles = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+    int[] threadCounts = { 1, 4, 16 };
+    if (args.length > 2) {
+      threadCounts = new int[args.length - 2];
+      for (int i = 2; i < args.length; i++) {
+        threadCounts[i - 2] = Integer.parseInt(args[i]);
+      }
+    }
+
+    DamageTypes.getInstance().reload();
+    Room room = new Room("bench");
+    for (int i = 0; i < battles; i++) {
+      Character attacker = new DummyCharacter("attacker" + i, 10);
+      Character defender = new DummyCharacter("defender" + i, 10);
+      for (Character c : new Character[] { attacker, defender }) {
+        c.setRoom(room);
+        players.add(c);
+      }
+      BattleManager.initiate(attacker, defender);
+    }
+
+    // Warm up
+    run(threadCounts[0], rounds);
+
+    System.out.println(String.format("battles: %d, rounds: %d, processors: %d",
+      battles, rounds, Runtime.getRuntime().availableProcessors()));
+    System.out.println(String.format("%8s %10s %10s %10s",
+      "threads", "p50 (us)", "p99 (us)", "max (us)"));
+    for (int threads : threadCounts) {
+      long[] latencies = run(threads, rounds);
+      System.out.println(String.format("%8d %10d %10d %10d", threads,
+        latencies[rounds / 2], latencies[(int)Math.ceil(0.99 * rounds) - 1],
+        latencies[rounds - 1]));
+    }
+    BattleManager.setThreads(1);
+  }
+}
@@ -0,0 +1,118 @@
+package bench;
+
+import java.util.*;
+
+import solace.util.TimingWheel;
+
+/**
+ * Compares the cost of a clock tick using the timing wheel with the linked
+ * list the clock used previously, which decremented every scheduled event on
+ * every tick. Each run keeps a fixed number of events pending with delays
+ * spread over the given range: whenever an event fires a new one is scheduled
+ * in its place, as buffs, casting timers and cooldowns are during play.
+ *
+ * Usage: ant bench -Dbench=bench.ClockBenchmark \
+ *   -Dbench.args="[ticks] [max-delay] [events...]"
+ *
+ * @author Ryan Sandor Richards
+ */
+public class ClockBenchmark {
+  /**
+   * An event in the list scheduler, as the clock's events used to work.
+   */
+  static class ListEvent {
+    long delay;
+
+    ListEvent(long d) {
+      delay = d;
+    }
+
+    boolean tick() {
+      delay--;
+      return delay == 0;
+    }
+  }
+
+  /**
+   * An event in the timing wheel scheduler.
+   */
+  static class WheelEvent extends TimingWheel.Timer {
+    static int fired = 0;
+
+    protected void expire() {
+      fired++;
+    }
+  }
+
+  /**
+   * Runs the list scheduler.
+   * @return Nanoseconds per tick.
+   */
+  static double runList(int events, int ticks, int maxDelay, Random random) {
+    List<ListEvent> list = new LinkedList<>();
+    for (int i = 0; i < events; i++) {
+      list.add(new ListEvent(1 + random.nextInt(maxDelay)));
+    }
+    int[] fired = { 0 };
+    long start = System.nanoTime();
+    for (int t = 0; t < ticks; t++) {
+      list.removeIf(e -> {
+        if (e.tick()) {
+          fired[0]++;
+          return true;
+        }
+        return false;
+      });
+      for (; fired[0] > 0; fired[0]--) {
+        list.add(new ListEvent(1 + random.nextInt(maxDelay)));
+      }
+    }
+    return (double)(System.nanoTime() - start) / ticks;
+  }
+
+  /**
+   * Runs the timing wheel scheduler.
+   * @return Nanoseconds per tick.
+   */
+  static double runWheel(int events, int ticks, int maxDelay, Random random) {
+    TimingWheel wheel = new TimingWheel();
+    for (int i = 0; i < events; i++) {
+      wheel.add(new WheelEvent(), 1 + random.nextInt(maxDelay));
+    }
+    long start = System.nanoTime();
+    for (int t = 0; t < ticks; t++) {
+      WheelEvent.fired = 0;
+      wheel.advance();
+      for (; WheelEvent.fired > 0; WheelEvent.fired--) {
+        wheel.add(new WheelEvent(), 1 + random.nextInt(maxDelay));
+      }
+    }
+    return (double)(System.nanoTime() - start) / ticks;
+  }
+
+  public static void main(String[] args) {
+    int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    int maxDelay = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+    int[] sizes = { 1000, 10000, 100000 };
+    if (args.length > 2) {
+      sizes = new int[args.length - 2];
+      for (int i = 2; i < args.length; i++) {
+        sizes[i - 2] = Integer.parseInt(args[i]);
+      }
+    }
+
+    // Warm up both schedulers
+    runList(10000, ticks, maxDelay, new Random(1));
+    runWheel(10000, ticks, maxDelay, new Random(1));
+
+    System.out.println(String.format("ticks: %d, delays: 1-%d", ticks, maxDelay));
+    System.out.println(String.format("%10s %16s %16s %10s",
+      "events", "list (us/tick)", "wheel (us/tick)", "speedup"));
+    for (int events : sizes) {
+      double list = runList(events, ticks, maxDelay, new Random(events));
+      double wheel = runWheel(events, ticks, maxDelay, new Random(events));
+      System.out.println(String.format("%10d %16.1f %16.2f %9.0fx",
+        events, list / 1000, wheel / 1000, list / wheel));
+    }
+  }
+}
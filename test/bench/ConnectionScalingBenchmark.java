@@ -0,0 +1,108 @@
+package bench;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.*;
+
+import solace.io.Config;
+import solace.io.Messages;
+import solace.net.SelectorServer;
+import solace.net.Server;
+
+/**
+ * Compares the thread-per-connection server with the selector server by
+ * opening a number of simultaneous telnet connections, then measuring the
+ * number of live threads and the round trip time of a login prompt for each
+ * connection.
+ *
+ * Usage: ant bench -Dbench=bench.ConnectionScalingBenchmark \
+ *   -Dbench.args="(thread|selector) [connections] [port]"
+ *
+ * Run each mode in its own JVM (the benchmark exits once complete).
+ *
+ * @author Ryan Sandor Richards
+ */
+public class ConnectionScalingBenchmark {
+  private static final String PROMPT = "Account: ";
+
+  /**
+   * Reads from the given stream until the login prompt has been seen.
+   * @param in Stream to read.
+   * @throws IOException If the stream closes before the prompt is seen.
+   */
+  static void readPrompt(InputStream in) throws IOException {
+    int matched = 0;
+    while (matched < PROMPT.length()) {
+      int b = in.read();
+      if (b < 0) throw new EOFException("Connection closed by server");
+      matched = (b == PROMPT.charAt(matched)) ? matched + 1 : (b == PROMPT.charAt(0) ? 1 : 0);
+    }
+  }
+
+  /**
+   * Returns the percentile of a sorted array of samples.
+   */
+  static long percentile(long[] sorted, double p) {
+    int index = (int)Math.ceil(p * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+  }
+
+  public static void main(String[] args) throws Exception {
+    String mode = args.length > 0 ? args[0] : "thread";
+    int connections = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    int port = args.length > 2 ? Integer.parseInt(args[2]) : 4100;
+
+    Config.load();
+    Messages.reload();
+
+    int baseThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+    final Server server = mode.equals("selector")
+      ? new SelectorServer(port)
+      : new Server(port);
+    Thread listener = new Thread(server::listen, "bench-listener");
+    listener.setDaemon(true);
+    listener.start();
+
+    List<Socket> sockets = new ArrayList<>(connections);
+    long connectStart = System.nanoTime();
+    for (int i = 0; i < connections; i++) {
+      Socket s = new Socket("localhost", port);
+      s.setSoTimeout(10000);
+      s.setTcpNoDelay(true);
+      readPrompt(s.getInputStream());
+      sockets.add(s);
+    }
+    long connectMs = (System.nanoTime() - connectStart) / 1000000;
+    int threads = ManagementFactory.getThreadMXBean().getThreadCount() - baseThreads;
+
+    long[] latencies = new long[connections];
+    byte[] line = "nobody\r\n".getBytes();
+    long roundStart = System.nanoTime();
+    for (int i = 0; i < connections; i++) {
+      Socket s = sockets.get(i);
+      long start = System.nanoTime();
+      s.getOutputStream().write(line);
+      s.getOutputStream().flush();
+      readPrompt(s.getInputStream());
+      latencies[i] = (System.nanoTime() - start) / 1000;
+    }
+    long roundMs = (System.nanoTime() - roundStart) / 1000000;
+    Arrays.sort(latencies);
+
+    Runtime rt = Runtime.getRuntime();
+    long heapMb = (rt.totalMemory() - rt.freeMemory()) / (1024 * 1024);
+
+    System.out.println(String.format("mode:               %s", mode));
+    System.out.println(String.format("connections:        %d", connections));
+    System.out.println(String.format("server threads:     %d", threads));
+    System.out.println(String.format("heap used (MB):     %d", heapMb));
+    System.out.println(String.format("connect all (ms):   %d", connectMs));
+    System.out.println(String.format("round trip all (ms): %d", roundMs));
+    System.out.println(String.format("round trip p50 (us): %d", percentile(latencies, 0.50)));
+    System.out.println(String.format("round trip p99 (us): %d", percentile(latencies, 0.99)));
+    System.out.println(String.format("round trip max (us): %d", latencies[latencies.length - 1]));
+
+    System.exit(0);
+  }
+}
@@ -0,0 +1,35 @@
+package bench;
+
+import solace.game.Character;
+
+/**
+ * A character without a connection, for benchmarks that fight battles. The
+ * messages it is sent are counted and discarded, and it never dies, so that
+ * battles last as long as a benchmark needs them to.
+ *
+ * @author Ryan Sandor Richards
+ */
+public class DummyCharacter extends Character {
+  long received = 0;
+
+  DummyCharacter(String name, int level) {
+    super(name);
+    setLevel(level);
+    setHp(getMaxHp());
+  }
+
+  @Override
+  public void send(String msg) {
+    received += msg.length();
+  }
+
+  @Override
+  public void sendMessage(String msg) {
+    received += msg.length();
+  }
+
+  @Override
+  public boolean isDead() {
+    return false;
+  }
+}
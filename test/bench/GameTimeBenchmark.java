@@ -0,0 +1,99 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import solace.game.Buff;
+import solace.util.Clock;
+import solace.util.GameTime;
+
+/**
+ * Compares the cost of checking buff expiry with the cached game time to the
+ * dates buffs used previously, which allocated a date and read the wall
+ * clock on every check. Reports the time and the bytes allocated per check,
+ * with game time read directly (as before any clock has ticked) and cached
+ * (as it is once the game clock is running).
+ *
+ * Escape analysis can remove the dates in this loop, run with
+ * -Dbench.jvmargs=-XX:-DoEscapeAnalysis to see the allocations made when the
+ * checks are not inlined (as in the game).
+ *
+ * Usage: ant bench -Dbench=bench.GameTimeBenchmark -Dbench.args="[checks]"
+ *
+ * @author Ryan Sandor Richards
+ */
+public class GameTimeBenchmark {
+  /**
+   * A buff as buffs used to track their expiry.
+   */
+  static class DateBuff {
+    Date expiry = new Date(new Date().getTime() + 30000);
+
+    boolean hasExpired() {
+      return new Date().after(expiry);
+    }
+
+    int getTimeRemaining() {
+      if (hasExpired()) return 0;
+      return Math.max(0, (int)((expiry.getTime() - new Date().getTime()) / 1000));
+    }
+  }
+
+  static final com.sun.management.ThreadMXBean threads =
+    (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+  static long sink = 0;
+
+  static void report(String name, int checks, long nanos, long bytes) {
+    System.out.println(String.format("%-12s %12.1f %14.1f",
+      name, (double)nanos / checks, (double)bytes / checks));
+  }
+
+  static void runDates(int checks, boolean print) {
+    DateBuff[] buffs = new DateBuff[16];
+    for (int i = 0; i < buffs.length; i++) buffs[i] = new DateBuff();
+    long id = Thread.currentThread().getId();
+    long bytes = threads.getThreadAllocatedBytes(id);
+    long start = System.nanoTime();
+    for (int i = 0; i < checks; i++) {
+      sink += buffs[i & 15].getTimeRemaining();
+    }
+    long nanos = System.nanoTime() - start;
+    bytes = threads.getThreadAllocatedBytes(id) - bytes;
+    if (print) report("date", checks, nanos, bytes);
+  }
+
+  static void runGameTime(String name, int checks, boolean print) {
+    Buff[] buffs = new Buff[16];
+    for (int i = 0; i < buffs.length; i++) buffs[i] = new Buff("bench", 30);
+    long id = Thread.currentThread().getId();
+    long bytes = threads.getThreadAllocatedBytes(id);
+    long start = System.nanoTime();
+    for (int i = 0; i < checks; i++) {
+      sink += buffs[i & 15].getTimeRemaining();
+    }
+    long nanos = System.nanoTime() - start;
+    bytes = threads.getThreadAllocatedBytes(id) - bytes;
+    if (print) report(name, checks, nanos, bytes);
+  }
+
+  public static void main(String[] args) {
+    int checks = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+
+    // Warm up
+    runDates(checks, false);
+    runGameTime("", checks, false);
+
+    System.out.println(String.format("buff checks: %d", checks));
+    System.out.println(String.format("%-12s %12s %14s",
+      "source", "ns/check", "bytes/check"));
+    runDates(checks, true);
+    runGameTime("direct", checks, true);
+
+    // Ticking an installed clock caches the game time
+    Clock clock = Clock.simulated(1000);
+    Clock.setInstance(clock);
+    clock.advance(1);
+    runGameTime("cached", checks, true);
+    System.out.println("game time: " + GameTime.millis() + "ms");
+  }
+}
@@ -0,0 +1,93 @@
+package bench;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.file.*;
+import java.util.*;
+
+import solace.io.Config;
+import solace.io.Messages;
+import solace.net.Server;
+import solace.util.Tasks;
+
+/**
+ * Load test for the task threading modes. Opens a number of idle telnet
+ * sessions against the thread-per-connection server and records the number
+ * of operating system threads and the resident set size of the process.
+ *
+ * Usage: ant bench -Dbench=bench.IdleSessionBenchmark \
+ *   -Dbench.args="(platform|virtual) [connections] [port]"
+ *
+ * Large connection counts may require raising the open file limit
+ * (<code>ulimit -n</code>). Run each mode in its own JVM.
+ *
+ * @author Ryan Sandor Richards
+ */
+public class IdleSessionBenchmark {
+  /**
+   * @return The resident set size of this process in kilobytes, or -1 if it
+   *   cannot be determined on this platform.
+   */
+  static long getRssKb() {
+    try {
+      for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+        if (line.startsWith("VmRSS:")) {
+          return Long.parseLong(line.replaceAll("[^0-9]", ""));
+        }
+      }
+    } catch (IOException e) {
+      // Not on linux, fall through
+    }
+    return -1;
+  }
+
+  /**
+   * @return The number of live operating system threads in this JVM.
+   */
+  static int getThreadCount() {
+    return ManagementFactory.getThreadMXBean().getThreadCount();
+  }
+
+  public static void main(String[] args) throws Exception {
+    String mode = args.length > 0 ? args[0] : Tasks.PLATFORM;
+    int connections = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+    int port = args.length > 2 ? Integer.parseInt(args[2]) : 4100;
+
+    Config.load();
+    Messages.reload();
+    Tasks.initialize(mode);
+
+    final Server server = new Server(port);
+    Thread listener = new Thread(server::listen, "bench-listener");
+    listener.setDaemon(true);
+    listener.start();
+
+    System.gc();
+    int baseThreads = getThreadCount();
+    long baseRss = getRssKb();
+
+    List<Socket> sockets = new ArrayList<>(connections);
+    long start = System.nanoTime();
+    for (int i = 0; i < connections; i++) {
+      Socket s = new Socket("localhost", port);
+      s.setSoTimeout(10000);
+      ConnectionScalingBenchmark.readPrompt(s.getInputStream());
+      sockets.add(s);
+    }
+    long connectMs = (System.nanoTime() - start) / 1000000;
+
+    // Let the sessions settle into their idle read
+    Thread.sleep(1000);
+    System.gc();
+
+    System.out.println(String.format("requested mode:     %s", mode));
+    System.out.println(String.format("active mode:        %s", Tasks.getMode()));
+    System.out.println(String.format("idle sessions:      %d", sockets.size()));
+    System.out.println(String.format("connect all (ms):   %d", connectMs));
+    System.out.println(String.format("os threads:         %d -> %d", baseThreads, getThreadCount()));
+    System.out.println(String.format("rss (KB):           %d -> %d", baseRss, getRssKb()));
+
+    System.exit(0);
+  }
+}
@@ -0,0 +1,72 @@
+package bench;
+
+import java.util.*;
+
+import solace.util.Clock;
+
+/**
+ * Shows how phase offsets and jitter flatten the number of clock events
+ * fired per tick. A number of intervals with the same period (as shop
+ * restocks have) are scheduled at once, as they are when areas are loaded,
+ * first without phase offsets or jitter and then spread with
+ * {@link Clock#phaseFor(Object, long)} and a tenth of the period of jitter.
+ *
+ * Usage: ant bench -Dbench=bench.IntervalSpreadBenchmark \
+ *   -Dbench.args="[intervals] [period] [ticks]"
+ *
+ * @author Ryan Sandor Richards
+ */
+public class IntervalSpreadBenchmark {
+  static int fired = 0;
+
+  /**
+   * Runs the intervals on a simulated clock.
+   * @return The number of events fired on each tick, sorted.
+   */
+  static int[] run(int intervals, int period, int ticks, boolean spread) {
+    Clock clock = Clock.simulated(1000);
+    for (int i = 0; i < intervals; i++) {
+      String key = "shop" + (i / 10) + ":item" + i;
+      if (spread) {
+        clock.interval("shop.restock", period, () -> fired++, null,
+          Clock.phaseFor(key, period), period / 10);
+      } else {
+        clock.interval("shop.restock", period, () -> fired++);
+      }
+    }
+    int[] counts = new int[ticks];
+    for (int t = 0; t < ticks; t++) {
+      fired = 0;
+      clock.advance(1);
+      counts[t] = fired;
+    }
+    Arrays.sort(counts);
+    return counts;
+  }
+
+  static void print(String name, int[] counts) {
+    long total = 0;
+    int idle = 0;
+    for (int count : counts) {
+      total += count;
+      if (count == 0) idle++;
+    }
+    System.out.println(String.format("%-10s %10d %8.2f %8d %8d %9.1f%%",
+      name, total, (double)total / counts.length,
+      counts[(int)Math.ceil(0.99 * counts.length) - 1],
+      counts[counts.length - 1], 100.0 * idle / counts.length));
+  }
+
+  public static void main(String[] args) {
+    int intervals = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+    int period = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+    int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 6000;
+
+    System.out.println(String.format(
+      "intervals: %d, period: %d, ticks: %d", intervals, period, ticks));
+    System.out.println(String.format("%-10s %10s %8s %8s %8s %10s",
+      "schedule", "fired", "mean", "p99", "max", "idle"));
+    print("aligned", run(intervals, period, ticks, false));
+    print("spread", run(intervals, period, ticks, true));
+  }
+}
@@ -0,0 +1,105 @@
+package bench;
+
+import java.util.*;
+
+import solace.game.Area;
+import solace.util.Clock;
+
+/**
+ * Measures how clock ticks scale with the number of threads that run
+ * partitioned events. A synthetic world of areas each runs a number of
+ * interval events every tick that do a fixed amount of work on state local to
+ * their area, and hand off a small share of their work (as a player moving to
+ * another area would) to a counter shared by the whole world. The same world
+ * is run on a simulated clock with 1, 2, 4, ... threads up to the number of
+ * processors.
+ *
+ * Usage: ant bench -Dbench=bench.PartitionBenchmark \
+ *   -Dbench.args="[ticks] [areas] [events-per-area] [work]"
+ *
+ * @author Ryan Sandor Richards
+ */
+public class PartitionBenchmark {
+  /**
+   * State local to an area.
+   */
+  static class AreaState {
+    final Area area;
+    final double[] values = new double[64];
+    long updates = 0;
+
+    AreaState(int i) {
+      area = new Area("area" + i, "Area " + i, "bench");
+    }
+
+    void update(int work) {
+      for (int i = 0; i < work; i++) {
+        int k = i & 63;
+        values[k] = Math.sqrt(values[k] + i) * 1.0001;
+      }
+      updates++;
+    }
+  }
+
+  static long handOffs = 0;
+
+  /**
+   * Runs the world on a clock with the given number of partition threads.
+   * @return Milliseconds per tick.
+   */
+  static double run(int threads, int ticks, int areas, int events, int work) {
+    Clock clock = Clock.simulated(1000);
+    clock.setPartitionThreads(threads);
+    handOffs = 0;
+    for (int a = 0; a < areas; a++) {
+      AreaState state = new AreaState(a);
+      for (int e = 0; e < events; e++) {
+        final long[] runs = { 0 };
+        clock.interval("bench: " + state.area.getId(), 1, () -> {
+          state.update(work);
+          if (++runs[0] % 100 == 0) {
+            Clock.handOff(() -> handOffs++);
+          }
+        }, state.area);
+      }
+    }
+
+    long start = System.nanoTime();
+    clock.advance(ticks);
+    double ms = (System.nanoTime() - start) / 1e6 / ticks;
+    clock.stop();
+    return ms;
+  }
+
+  public static void main(String[] args) {
+    int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    int areas = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+    int events = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+    int work = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+    int processors = Runtime.getRuntime().availableProcessors();
+
+    // Warm up
+    run(Math.min(2, processors), ticks / 2, areas, events, work);
+
+    List<String> rows = new ArrayList<>();
+    double base = 0;
+    for (int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+      double ms = run(threads, ticks, areas, events, work);
+      if (threads == 1) {
+        base = ms;
+      }
+      rows.add(String.format("%8d %12.3f %9.2fx %10d",
+        threads, ms, base / ms, handOffs));
+      if (threads >= processors) {
+        break;
+      }
+    }
+
+    System.out.println(String.format(
+      "ticks: %d, areas: %d, events/area: %d, work: %d, processors: %d",
+      ticks, areas, events, work, processors));
+    System.out.println(String.format("%8s %12s %10s %10s",
+      "threads", "ms/tick", "speedup", "hand-offs"));
+    rows.forEach(System.out::println);
+  }
+}
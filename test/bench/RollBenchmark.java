@@ -0,0 +1,85 @@
+package bench;
+
+import java.util.*;
+
+import solace.util.Roll;
+
+/**
+ * Compares the throughput of normal rolls made with the per-thread generators
+ * of {@link Roll} to normal rolls as they were made before, by summing twelve
+ * doubles from a single generator shared by every thread. Each run has the
+ * given number of threads make the given number of rolls each, and reports
+ * the total rolls per second.
+ *
+ * Usage: ant bench -Dbench=bench.RollBenchmark \
+ *   -Dbench.args="[rolls-per-thread] [threads...]"
+ *
+ * @author Ryan Sandor Richards
+ */
+public class RollBenchmark {
+  static final Random shared = new Random();
+  static volatile long sink = 0;
+
+  /**
+   * A normal roll as they were made before.
+   */
+  static int sharedNormal(int mean) {
+    double sum = 0.0;
+    for (int i = 0; i < 12; i++) {
+      sum += shared.nextDouble();
+    }
+    return (int)(2 * mean * sum / 12);
+  }
+
+  /**
+   * Makes rolls on the given number of threads.
+   * @return Rolls per second.
+   */
+  static double run(boolean perThread, int threads, int rolls)
+    throws InterruptedException
+  {
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      workers[t] = new Thread(() -> {
+        long sum = 0;
+        for (int i = 0; i < rolls; i++) {
+          sum += perThread ? Roll.normal(100) : sharedNormal(100);
+        }
+        sink += sum;
+      });
+    }
+    long start = System.nanoTime();
+    for (Thread worker : workers) worker.start();
+    for (Thread worker : workers) worker.join();
+    return (double)threads * rolls / ((System.nanoTime() - start) / 1e9);
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    int rolls = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+    int[] threadCounts = { 1, 2, 4, 8 };
+    if (args.length > 1) {
+      threadCounts = new int[args.length - 1];
+      for (int i = 1; i < args.length; i++) {
+        threadCounts[i - 1] = Integer.parseInt(args[i]);
+      }
+    }
+
+    // Warm up
+    run(false, 1, rolls);
+    run(true, 1, rolls);
+
+    List<String> rows = new ArrayList<>();
+    for (int threads : threadCounts) {
+      double before = run(false, threads, rolls);
+      double after = run(true, threads, rolls);
+      rows.add(String.format("%8d %16.1f %16.1f %9.1fx",
+        threads, before / 1e6, after / 1e6, after / before));
+    }
+
+    System.out.println(String.format("rolls per thread: %d, processors: %d",
+      rolls, Runtime.getRuntime().availableProcessors()));
+    System.out.println(String.format("%8s %16s %16s %10s",
+      "threads", "shared (M/s)", "per-thread (M/s)", "speedup"));
+    rows.forEach(System.out::println);
+  }
+}
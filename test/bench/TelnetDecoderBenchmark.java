@@ -0,0 +1,156 @@
+package bench;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+
+import solace.net.TelnetDecoder;
+
+/**
+ * Measures how many lines of client input per second the telnet decoder can
+ * decode, compared to an <code>InputStreamReader</code> and
+ * <code>readLine</code> over the same input. Input is a mix of typical game
+ * commands with the occasional telnet negotiation, and is fed to each decoder
+ * in 4 KB reads as it would arrive from a socket.
+ *
+ * Usage: ant bench -Dbench=bench.TelnetDecoderBenchmark \
+ *   -Dbench.args="[lines] [rounds]"
+ *
+ * @author Ryan Sandor Richards
+ */
+public class TelnetDecoderBenchmark {
+  private static final String[] COMMANDS = {
+    "look", "north", "kill goblin", "say hello there everyone",
+    "get all corpse", "cast fireball goblin", "score", "who"
+  };
+  private static final byte[] NEGOTIATION = { (byte)255, (byte)253, 1 };
+
+  private static long lineCount = 0;
+  private static long checksum = 0;
+
+  /**
+   * Builds the input used by the benchmark.
+   * @param lines Number of lines of input.
+   * @param telnet Whether to include telnet negotiation in the input.
+   * @return The input bytes.
+   */
+  static byte[] createInput(int lines, boolean telnet) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i < lines; i++) {
+      if (telnet && i % 50 == 0) {
+        out.write(NEGOTIATION);
+      }
+      out.write(COMMANDS[i % COMMANDS.length].getBytes(StandardCharsets.US_ASCII));
+      out.write('\r');
+      out.write('\n');
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Decodes the input with the telnet decoder, creating a string for each
+   * line as the connection does.
+   * @param input Input to decode.
+   * @param decoder Decoder to use.
+   */
+  static void decode(byte[] input, TelnetDecoder decoder) {
+    for (int offset = 0; offset < input.length; offset += 4096) {
+      decoder.decode(input, offset, Math.min(4096, input.length - offset));
+    }
+  }
+
+  /**
+   * Reads the input with a reader, as the connection did before the telnet
+   * decoder was introduced.
+   * @param input Input to read.
+   */
+  static void readLines(byte[] input) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+      new ByteArrayInputStream(input), StandardCharsets.UTF_8));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      lineCount++;
+      checksum += line.length();
+    }
+  }
+
+  /**
+   * @return Bytes allocated by the current thread, or -1 if unsupported.
+   */
+  static long allocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean)bean)
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  /**
+   * Prints the result of a benchmark run.
+   * @param name Name of the run.
+   * @param lines Lines decoded.
+   * @param nanos Time taken.
+   * @param allocated Bytes allocated.
+   */
+  static void report(String name, long lines, long nanos, long allocated) {
+    System.out.println(String.format("%-24s %12.0f lines/sec %10.1f bytes/line",
+      name, lines * 1e9 / nanos, (double)allocated / lines));
+  }
+
+  public static void main(String[] args) throws Exception {
+    int lines = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+    byte[] telnetInput = createInput(lines, true);
+    byte[] plainInput = createInput(lines, false);
+
+    TelnetDecoder lineDecoder = new TelnetDecoder(new TelnetDecoder.Handler() {
+      public void onLine(byte[] line, int length) {
+        lineCount++;
+        checksum += new String(line, 0, length, StandardCharsets.UTF_8).length();
+      }
+      public void onNegotiation(int command, int option) {
+        checksum += option;
+      }
+    });
+    TelnetDecoder rawDecoder = new TelnetDecoder(new TelnetDecoder.Handler() {
+      public void onLine(byte[] line, int length) {
+        lineCount++;
+        checksum += length;
+      }
+      public void onNegotiation(int command, int option) {
+        checksum += option;
+      }
+    });
+
+    // Warm up
+    for (int i = 0; i < 3; i++) {
+      decode(telnetInput, lineDecoder);
+      decode(telnetInput, rawDecoder);
+      readLines(plainInput);
+    }
+
+    for (int r = 0; r < rounds; r++) {
+      long allocated = allocatedBytes();
+      long start = System.nanoTime();
+      decode(telnetInput, rawDecoder);
+      report("decoder (bytes)", lines, System.nanoTime() - start,
+        allocatedBytes() - allocated);
+
+      allocated = allocatedBytes();
+      start = System.nanoTime();
+      decode(telnetInput, lineDecoder);
+      report("decoder (strings)", lines, System.nanoTime() - start,
+        allocatedBytes() - allocated);
+
+      allocated = allocatedBytes();
+      start = System.nanoTime();
+      readLines(plainInput);
+      report("reader.readLine", lines, System.nanoTime() - start,
+        allocatedBytes() - allocated);
+    }
+    System.out.println("checksum " + checksum + " lines " + lineCount);
+  }
+}
@@ -0,0 +1,181 @@
+package bench;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import solace.io.Config;
+import solace.io.Messages;
+import solace.net.SelectorServer;
+import solace.net.WebSocket;
+
+/**
+ * In-process WebSocket client for the selector server. Each client performs
+ * the upgrade handshake, then repeatedly sends a line of input as a masked
+ * text frame and reads text frames until the login prompt is returned. Every
+ * frame sent by the server is checked for correct framing. Reports the
+ * handshake time and the message round trip throughput and latency.
+ *
+ * Usage: ant bench -Dbench=bench.WebSocketBenchmark \
+ *   -Dbench.args="[connections] [messages] [port]"
+ *
+ * The WebSocket listener is opened on the port after the given port.
+ *
+ * @author Ryan Sandor Richards
+ */
+public class WebSocketBenchmark {
+  private static final String PROMPT = "Account: ";
+  private static final String KEY = "dGhlIHNhbXBsZSBub25jZQ==";
+  private static final byte[] MASK = { 0x11, 0x22, 0x33, 0x44 };
+
+  /**
+   * Performs the WebSocket handshake, checking the server's response.
+   * @param s Socket to the server.
+   * @throws IOException If the handshake fails.
+   */
+  static void handshake(Socket s) throws IOException {
+    OutputStream out = s.getOutputStream();
+    out.write((
+      "GET / HTTP/1.1\r\n" +
+      "Host: localhost\r\n" +
+      "Upgrade: websocket\r\n" +
+      "Connection: Upgrade\r\n" +
+      "Sec-WebSocket-Key: " + KEY + "\r\n" +
+      "Sec-WebSocket-Version: 13\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+    out.flush();
+
+    InputStream in = s.getInputStream();
+    StringBuilder response = new StringBuilder();
+    while (!response.toString().endsWith("\r\n\r\n")) {
+      int b = in.read();
+      if (b < 0) throw new EOFException("Connection closed during handshake");
+      response.append((char)b);
+    }
+    String r = response.toString();
+    if (!r.startsWith("HTTP/1.1 101") ||
+      !r.contains("Sec-WebSocket-Accept: " + WebSocket.acceptKey(KEY)))
+    {
+      throw new IOException("Bad handshake response: " + r);
+    }
+  }
+
+  /**
+   * Reads a single frame from the server, checking its framing.
+   * @param in Stream to read.
+   * @return The frame's payload.
+   * @throws IOException If the frame is malformed.
+   */
+  static byte[] readFrame(DataInputStream in) throws IOException {
+    int b0 = in.readUnsignedByte();
+    int b1 = in.readUnsignedByte();
+    if ((b0 & 0x80) == 0 || (b0 & 0x0F) != WebSocket.TEXT) {
+      throw new IOException("Expected a final text frame, got " + b0);
+    }
+    if ((b1 & 0x80) != 0) {
+      throw new IOException("Server frames must not be masked");
+    }
+    long length = b1 & 0x7F;
+    if (length == 126) {
+      length = in.readUnsignedShort();
+    } else if (length == 127) {
+      length = in.readLong();
+    }
+    byte[] payload = new byte[(int)length];
+    in.readFully(payload);
+    return payload;
+  }
+
+  /**
+   * Reads frames until the login prompt has been seen.
+   * @param in Stream to read.
+   * @return Number of frames read.
+   */
+  static int readPrompt(DataInputStream in) throws IOException {
+    int frames = 0;
+    while (true) {
+      frames++;
+      String text = new String(readFrame(in), StandardCharsets.UTF_8);
+      if (text.endsWith(PROMPT)) return frames;
+    }
+  }
+
+  /**
+   * Creates a masked text frame, as sent by a client.
+   * @param text Text for the frame.
+   * @return The frame.
+   */
+  static byte[] clientFrame(String text) {
+    byte[] data = text.getBytes(StandardCharsets.UTF_8);
+    byte[] frame = new byte[6 + data.length];
+    frame[0] = (byte)(0x80 | WebSocket.TEXT);
+    frame[1] = (byte)(0x80 | data.length);
+    System.arraycopy(MASK, 0, frame, 2, 4);
+    for (int i = 0; i < data.length; i++) {
+      frame[6 + i] = (byte)(data[i] ^ MASK[i % 4]);
+    }
+    return frame;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int connections = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+    int messages = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+    int port = args.length > 2 ? Integer.parseInt(args[2]) : 4100;
+
+    Config.load();
+    Messages.reload();
+
+    final SelectorServer server = new SelectorServer(port);
+    server.listenForWebSockets(port + 1);
+    Thread listener = new Thread(server::listen, "bench-listener");
+    listener.setDaemon(true);
+    listener.start();
+    Thread.sleep(500);
+
+    List<Socket> sockets = new ArrayList<>(connections);
+    List<DataInputStream> inputs = new ArrayList<>(connections);
+    long connectStart = System.nanoTime();
+    for (int i = 0; i < connections; i++) {
+      Socket s = new Socket("localhost", port + 1);
+      s.setSoTimeout(10000);
+      s.setTcpNoDelay(true);
+      handshake(s);
+      DataInputStream in = new DataInputStream(
+        new BufferedInputStream(s.getInputStream()));
+      readPrompt(in);
+      sockets.add(s);
+      inputs.add(in);
+    }
+    long connectMs = (System.nanoTime() - connectStart) / 1000000;
+
+    byte[] frame = clientFrame("nobody");
+    long[] latencies = new long[connections * messages];
+    long frames = 0;
+    long start = System.nanoTime();
+    for (int m = 0; m < messages; m++) {
+      for (int i = 0; i < connections; i++) {
+        long t = System.nanoTime();
+        OutputStream out = sockets.get(i).getOutputStream();
+        out.write(frame);
+        out.flush();
+        frames += readPrompt(inputs.get(i));
+        latencies[m * connections + i] = (System.nanoTime() - t) / 1000;
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    Arrays.sort(latencies);
+
+    System.out.println(String.format("connections:          %d", connections));
+    System.out.println(String.format("handshake all (ms):   %d", connectMs));
+    System.out.println(String.format("round trips:          %d", latencies.length));
+    System.out.println(String.format("frames received:      %d", frames));
+    System.out.println(String.format("round trips/sec:      %.0f",
+      latencies.length * 1e9 / elapsed));
+    System.out.println(String.format("round trip p50 (us):  %d",
+      ConnectionScalingBenchmark.percentile(latencies, 0.50)));
+    System.out.println(String.format("round trip p99 (us):  %d",
+      ConnectionScalingBenchmark.percentile(latencies, 0.99)));
+
+    System.exit(0);
+  }
+}
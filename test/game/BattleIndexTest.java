@@ -0,0 +1,38 @@
+package game;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+import solace.game.Battle;
+import solace.game.BattleManager;
+import solace.game.Character;
+
+public class BattleIndexTest {
+  @Test
+  public void findsTheBattleForEachParticipant() {
+    Character a = new Character("a");
+    Character b = new Character("b");
+    Battle battle = new Battle();
+    battle.add(a);
+    battle.add(b);
+    assertEquals(battle, BattleManager.getBattleFor(a));
+    assertEquals(battle, BattleManager.getBattleFor(b));
+    battle.remove(a);
+    assertNull(BattleManager.getBattleFor(a));
+    assertEquals(battle, BattleManager.getBattleFor(b));
+    battle.remove(b);
+  }
+
+  @Test
+  public void leavingAnOldBattleKeepsTheNewOne() {
+    Character a = new Character("a");
+    Battle first = new Battle();
+    Battle second = new Battle();
+    first.add(a);
+    second.add(a);
+    first.remove(a);
+    assertEquals(second, BattleManager.getBattleFor(a));
+    second.remove(a);
+    assertNull(BattleManager.getBattleFor(a));
+  }
+}
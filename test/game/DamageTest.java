@@ -0,0 +1,52 @@
+package game;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import solace.game.Damage;
+import solace.game.DamageType;
+import solace.io.DamageTypes;
+
+public class DamageTest {
+  @Test
+  public void typesWithTheSameNameShareABit() {
+    DamageType slashing = new DamageType("test-slashing", "physical");
+    DamageType fire = new DamageType("test-fire", "magical");
+    assertNotEquals(slashing.getMask(), fire.getMask());
+    assertEquals(1, Long.bitCount(slashing.getMask()));
+    assertEquals(slashing.getMask(),
+      new DamageType("test-slashing", "physical").getMask());
+  }
+
+  @Test
+  public void holdsTypesAsAMask() {
+    DamageType slashing = new DamageType("test-slashing", "physical");
+    DamageType fire = new DamageType("test-fire", "magical");
+    Damage<Object> damage = new Damage<>(10.0, null, null);
+    assertFalse(damage.hasType(slashing));
+    damage.addType(slashing);
+    assertTrue(damage.hasType(slashing));
+    assertFalse(damage.hasType(fire));
+    damage.addTypes(fire.getMask());
+    assertTrue(damage.hasType(fire));
+    assertEquals(slashing.getMask() | fire.getMask(), damage.getTypeMask());
+  }
+
+  @Test
+  public void decodesEachMaskOnce() {
+    DamageTypes types = DamageTypes.getInstance();
+    types.reload();
+    Damage<Object> first = new Damage<>(10.0, null, null);
+    first.addTypes(types.getPhysicalMask());
+    Damage<Object> second = new Damage<>(5.0, null, null);
+    second.addTypes(types.getPhysicalMask());
+    assertFalse(first.getTypes().isEmpty());
+    for (DamageType type : first.getTypes()) {
+      assertTrue(type.isPhysical());
+    }
+    assertSame(first.getTypes(), second.getTypes());
+  }
+}
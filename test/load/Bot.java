@@ -0,0 +1,447 @@
+package load;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A simulated telnet client. The bot creates an account, logs in, creates a
+ * character and enters the game, then until its deadline wanders the rooms of
+ * Medius, attacks the dummies in the Contego testing grounds and talks to the
+ * players around it. Each command's round trip is the time from sending the
+ * line until the prompt that follows the server's response.
+ *
+ * The bot accepts GMCP so that it can follow its room, exits and target
+ * without parsing room descriptions, and so that it sees the short GMCP play
+ * prompt. All other telnet options, including compression, are refused.
+ * ANSI color codes are removed from the server's output before prompts are
+ * matched.
+ *
+ * Note that output sent to the bot by other players (or a battle) ends with a
+ * prompt of its own, so a round trip that overlaps such output may end early.
+ *
+ * @author Ryan Sandor Richards
+ */
+class Bot implements Runnable {
+  static final String PASSWORD = "loadtest";
+  static final String PLAY_PROMPT = ">";
+  static final long TIMEOUT_MS = 10000;
+  static final int READ_TIMEOUT_MS = 50;
+  static final int MIN_THINK_MS = 250;
+  static final int MAX_THINK_MS = 1000;
+
+  static final int IAC = 255;
+  static final int WILL = 251;
+  static final int WONT = 252;
+  static final int DO = 253;
+  static final int DONT = 254;
+  static final int SB = 250;
+  static final int SE = 240;
+  static final int ECHO = 1;
+  static final int GMCP = 201;
+  static final int ESC = 27;
+
+  private static final int STATE_DATA = 0;
+  private static final int STATE_IAC = 1;
+  private static final int STATE_OPTION = 2;
+  private static final int STATE_SB_OPTION = 3;
+  private static final int STATE_SB_DATA = 4;
+  private static final int STATE_SB_IAC = 5;
+  private static final int STATE_ESC = 6;
+  private static final int STATE_CSI = 7;
+
+  private static final String TESTING_GROUNDS = "contego testing grounds";
+  private static final String[] ROUTE = { "contego", "archway" };
+  private static final String[] TARGETS = { "weak", "test", "strong", "super", "greater" };
+  private static final String[] SAYINGS = {
+    "Hail and well met!", "Has anyone seen the duke?", "These dummies hit hard.",
+    "To the testing grounds!", "Anyone selling a better sword?", "Lovely weather."
+  };
+
+  private final String name;
+  private final String host;
+  private final int port;
+  private final long deadline;
+  private final Random random;
+  private final LoadGenerator.Stats stats;
+
+  private Socket socket;
+  private InputStream in;
+  private OutputStream out;
+  private final byte[] readBuffer = new byte[4096];
+  private final StringBuilder text = new StringBuilder();
+  private final ByteArrayOutputStream subnegotiation = new ByteArrayOutputStream();
+  private int state = STATE_DATA;
+  private int command;
+  private int subOption;
+
+  private String room = "";
+  private List<String> exits = new ArrayList<>();
+  private boolean fighting = false;
+  private boolean battleEnded = false;
+
+  /**
+   * Creates a new bot.
+   * @param n Name for the bot's account and character.
+   * @param h Host of the server.
+   * @param p Port of the server.
+   * @param d Time (in ms since the epoch) at which the bot should stop playing.
+   * @param s Statistics for the run.
+   * @param r Random number generator for the bot's decisions.
+   */
+  Bot(String n, String h, int p, long d, LoadGenerator.Stats s, Random r) {
+    name = n;
+    host = h;
+    port = p;
+    deadline = d;
+    stats = s;
+    random = r;
+  }
+
+  /**
+   * Connects, logs in and plays until the deadline.
+   */
+  public void run() {
+    try {
+      long start = System.nanoTime();
+      socket = new Socket(host, port);
+      socket.setSoTimeout(READ_TIMEOUT_MS);
+      socket.setTcpNoDelay(true);
+      in = socket.getInputStream();
+      out = socket.getOutputStream();
+      waitFor("Account: ");
+      stats.record("connect", (System.nanoTime() - start) / 1000);
+    } catch (IOException e) {
+      stats.error("connect");
+      close();
+      return;
+    }
+
+    try {
+      login();
+      stats.playing();
+      play();
+      quit();
+    } catch (SocketTimeoutException e) {
+      stats.error("timeout");
+    } catch (IOException e) {
+      stats.error("disconnect");
+    } finally {
+      close();
+    }
+  }
+
+  /**
+   * Creates the bot's account and character and enters the game.
+   * @throws IOException If the server does not respond.
+   */
+  private void login() throws IOException {
+    command("login", "new", "Name for account: ");
+    command("login", name, "Password for account: ");
+    command("login", PASSWORD, "Confirm password: ");
+    command("login", PASSWORD, "Account: ");
+    command("login", name, "Password: ");
+    command("login", PASSWORD, "Choose an option: ");
+    command("create", "create", "Choose a name, or 'cancel' to exit: ");
+    command("create", name, "Choose an option: ");
+    command("play", "play", PLAY_PROMPT);
+  }
+
+  /**
+   * Wanders, fights and chats until the deadline.
+   * @throws IOException If the server closes the connection.
+   */
+  private void play() throws IOException {
+    while (System.currentTimeMillis() < deadline) {
+      think();
+      try {
+        if (fighting) {
+          if (random.nextInt(4) == 0) {
+            say();
+          }
+        } else if (battleEnded) {
+          // Characters that die in battle are left resting
+          battleEnded = false;
+          command("stand", "stand", PLAY_PROMPT);
+        } else if (room.equals(TESTING_GROUNDS) && random.nextInt(3) > 0) {
+          command("attack", "kill " + TARGETS[random.nextInt(TARGETS.length)],
+            PLAY_PROMPT);
+        } else if (random.nextInt(10) < 6) {
+          move();
+        } else if (random.nextInt(2) == 0) {
+          say();
+        } else {
+          command("look", "look", PLAY_PROMPT);
+        }
+      } catch (SocketTimeoutException e) {
+        stats.error("timeout");
+      }
+    }
+  }
+
+  /**
+   * Leaves the game, waiting for any battle to end first.
+   * @throws IOException If the server closes the connection.
+   */
+  private void quit() throws IOException {
+    long limit = System.currentTimeMillis() + TIMEOUT_MS;
+    while (fighting && System.currentTimeMillis() < limit) {
+      pump();
+    }
+    command("quit", "quit", "Choose an option: ");
+    send("quit");
+  }
+
+  /**
+   * Moves through a random exit, favoring the route to the testing grounds.
+   * @throws IOException If the server does not respond.
+   */
+  private void move() throws IOException {
+    if (exits.isEmpty()) {
+      command("look", "look", PLAY_PROMPT);
+      return;
+    }
+    String exit = exits.get(random.nextInt(exits.size()));
+    if (!room.equals(TESTING_GROUNDS) && random.nextBoolean()) {
+      for (String preferred : ROUTE) {
+        if (exits.contains(preferred)) {
+          exit = preferred;
+        }
+      }
+    }
+    command("move", "go " + exit, PLAY_PROMPT);
+  }
+
+  /**
+   * Says something to the room.
+   * @throws IOException If the server does not respond.
+   */
+  private void say() throws IOException {
+    command("say", "say " + SAYINGS[random.nextInt(SAYINGS.length)], PLAY_PROMPT);
+  }
+
+  /**
+   * Reads (and discards) output for a random amount of time.
+   * @throws IOException If the server closes the connection.
+   */
+  private void think() throws IOException {
+    long until = System.currentTimeMillis() + MIN_THINK_MS +
+      random.nextInt(MAX_THINK_MS - MIN_THINK_MS);
+    while (System.currentTimeMillis() < until) {
+      pump();
+    }
+  }
+
+  /**
+   * Sends a command and waits for the prompt that follows its response,
+   * recording the round trip.
+   * @param kind Kind of command, for statistics.
+   * @param line Line to send.
+   * @param prompt Prompt that ends the response.
+   * @throws IOException If the server does not respond in time.
+   */
+  private void command(String kind, String line, String prompt)
+    throws IOException
+  {
+    text.setLength(0);
+    long start = System.nanoTime();
+    send(line);
+    waitFor(prompt);
+    stats.record(kind, (System.nanoTime() - start) / 1000);
+  }
+
+  /**
+   * Sends a line of input to the server.
+   * @param line Line to send.
+   * @throws IOException If the line cannot be sent.
+   */
+  private void send(String line) throws IOException {
+    out.write((line + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+    out.flush();
+  }
+
+  /**
+   * Reads until the output received ends with the given prompt.
+   * @param prompt Prompt to wait for.
+   * @throws SocketTimeoutException If the prompt is not received in time.
+   * @throws IOException If the server closes the connection.
+   */
+  private void waitFor(String prompt) throws IOException {
+    String expected = prompt.trim();
+    long limit = System.currentTimeMillis() + TIMEOUT_MS;
+    while (!endsWith(expected)) {
+      if (System.currentTimeMillis() > limit) {
+        text.setLength(0);
+        throw new SocketTimeoutException("Timed out waiting for " + prompt);
+      }
+      pump();
+    }
+  }
+
+  /**
+   * Determines if the output received ends with the given text, ignoring
+   * trailing whitespace.
+   * @param s Text to match.
+   * @return True if the output ends with the text.
+   */
+  private boolean endsWith(String s) {
+    int end = text.length();
+    while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+      end--;
+    }
+    int start = end - s.length();
+    if (start < 0) return false;
+    for (int i = 0; i < s.length(); i++) {
+      if (text.charAt(start + i) != s.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Reads and decodes whatever input is available (waiting briefly if there
+   * is none).
+   * @throws EOFException If the server has closed the connection.
+   * @throws IOException If the read fails.
+   */
+  private void pump() throws IOException {
+    int read;
+    try {
+      read = in.read(readBuffer);
+    } catch (SocketTimeoutException e) {
+      return;
+    }
+    if (read < 0) {
+      throw new EOFException("Connection closed by server");
+    }
+    for (int i = 0; i < read; i++) {
+      decode(readBuffer[i] & 0xFF);
+    }
+  }
+
+  /**
+   * Decodes a single byte of output, handling telnet commands and removing
+   * ANSI escape sequences.
+   * @param b The byte (0-255).
+   * @throws IOException If a negotiation response cannot be sent.
+   */
+  private void decode(int b) throws IOException {
+    switch (state) {
+      case STATE_DATA:
+        if (b == IAC) {
+          state = STATE_IAC;
+        } else if (b == ESC) {
+          state = STATE_ESC;
+        } else {
+          text.append((char)b);
+        }
+        return;
+      case STATE_ESC:
+        state = (b == '[') ? STATE_CSI : STATE_DATA;
+        return;
+      case STATE_CSI:
+        if (b >= 0x40 && b <= 0x7E) {
+          state = STATE_DATA;
+        }
+        return;
+      case STATE_IAC:
+        if (b >= WILL && b <= DONT) {
+          command = b;
+          state = STATE_OPTION;
+        } else if (b == SB) {
+          state = STATE_SB_OPTION;
+        } else {
+          if (b == IAC) text.append((char)b);
+          state = STATE_DATA;
+        }
+        return;
+      case STATE_OPTION:
+        if (command == WILL) {
+          reply((b == ECHO || b == GMCP) ? DO : DONT, b);
+        } else if (command == DO) {
+          reply(WONT, b);
+        }
+        state = STATE_DATA;
+        return;
+      case STATE_SB_OPTION:
+        subOption = b;
+        subnegotiation.reset();
+        state = STATE_SB_DATA;
+        return;
+      case STATE_SB_DATA:
+        if (b == IAC) {
+          state = STATE_SB_IAC;
+        } else {
+          subnegotiation.write(b);
+        }
+        return;
+      case STATE_SB_IAC:
+        if (b == IAC) {
+          subnegotiation.write(b);
+          state = STATE_SB_DATA;
+          return;
+        }
+        if (b == SE && subOption == GMCP) {
+          onGmcp(new String(subnegotiation.toByteArray(), StandardCharsets.UTF_8));
+        }
+        state = STATE_DATA;
+    }
+  }
+
+  /**
+   * Answers a telnet negotiation.
+   * @param response Response command (DO, DONT, WONT).
+   * @param option Option being negotiated.
+   * @throws IOException If the response cannot be sent.
+   */
+  private void reply(int response, int option) throws IOException {
+    out.write(new byte[] { (byte)IAC, (byte)response, (byte)option });
+    out.flush();
+  }
+
+  /**
+   * Tracks the bot's room and target from GMCP messages.
+   * @param message The GMCP message.
+   */
+  private void onGmcp(String message) {
+    int space = message.indexOf(' ');
+    if (space < 0) return;
+    String type = message.substring(0, space);
+    try {
+      JSONObject data = new JSONObject(message.substring(space + 1));
+      if (type.equals("Room.Info")) {
+        room = data.optString("num", "");
+        List<String> list = new ArrayList<>();
+        JSONArray array = data.optJSONArray("exits");
+        for (int i = 0; array != null && i < array.length(); i++) {
+          list.add(array.getString(i));
+        }
+        exits = list;
+      } else if (type.equals("Char.Target")) {
+        boolean wasFighting = fighting;
+        fighting = data.has("name");
+        if (fighting && !wasFighting) {
+          stats.battle();
+        } else if (wasFighting && !fighting) {
+          battleEnded = true;
+        }
+      }
+    } catch (JSONException e) {
+      stats.error("gmcp");
+    }
+  }
+
+  /**
+   * Closes the connection to the server.
+   */
+  private void close() {
+    try {
+      if (socket != null) socket.close();
+    } catch (IOException ignored) {}
+  }
+}
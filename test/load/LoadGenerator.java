@@ -0,0 +1,275 @@
+package load;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.util.*;
+
+import solace.game.Game;
+import solace.io.Config;
+import solace.util.GameLoop;
+import solace.util.Metrics;
+
+/**
+ * Puts load on a game server with simulated players. Each bot connects over
+ * telnet, creates an account and a character, and then wanders Medius,
+ * fights the dummies in the testing grounds and talks until the run ends (see
+ * {@link Bot}). When the run is over the generator reports the round trip
+ * percentiles for each kind of command, the error rate, and (for a server
+ * started in process) the game clock's tick lag and how often game threads
+ * were blocked waiting on locks while the bots were playing. To compare the
+ * game loop modes run the generator once in each, e.g.
+ * <code>ant load -Dgame.loop.mode=single-writer</code>.
+ *
+ * By default the generator starts the game in process on the given port, so
+ * a run needs nothing but the game directory, and removes the accounts it
+ * created afterward. If a host is given the bots connect to that server
+ * instead and the accounts are left in place.
+ *
+ * The generator exits with a non-zero status if no bot entered the game or
+ * the error rate exceeds the given maximum, so that it can be run in CI.
+ *
+ * Usage: ant load -Dload.args="[bots] [seconds] [port] [max-error-rate] [host]"
+ *
+ * @author Ryan Sandor Richards
+ */
+public class LoadGenerator {
+  static final long SERVER_START_TIMEOUT_MS = 60000;
+  static final int RAMP_UP_MS = 20;
+
+  /**
+   * Statistics gathered by the bots during a run.
+   */
+  static class Stats {
+    private final Map<String, List<Long>> latencies = new TreeMap<>();
+    private final Map<String, Integer> errors = new TreeMap<>();
+    private int playing = 0;
+    private int battles = 0;
+
+    /**
+     * Records a command round trip.
+     * @param kind Kind of command.
+     * @param micros Round trip time in microseconds.
+     */
+    synchronized void record(String kind, long micros) {
+      latencies.computeIfAbsent(kind, k -> new ArrayList<>()).add(micros);
+    }
+
+    /**
+     * Records an error.
+     * @param kind Kind of error.
+     */
+    synchronized void error(String kind) {
+      errors.merge(kind, 1, Integer::sum);
+    }
+
+    /**
+     * Records that a bot has entered the game.
+     */
+    synchronized void playing() {
+      playing++;
+    }
+
+    /**
+     * Records that a bot has entered a battle.
+     */
+    synchronized void battle() {
+      battles++;
+    }
+
+    /**
+     * @return The total number of commands completed.
+     */
+    synchronized long getCommands() {
+      long n = 0;
+      for (List<Long> samples : latencies.values()) {
+        n += samples.size();
+      }
+      return n;
+    }
+
+    /**
+     * @return The total number of errors.
+     */
+    synchronized long getErrors() {
+      long n = 0;
+      for (int count : errors.values()) {
+        n += count;
+      }
+      return n;
+    }
+  }
+
+  /**
+   * Sums the number of times, and the time (in ms), that the live threads of
+   * the process have blocked entering a monitor.
+   * @return The count and time.
+   */
+  static long[] contention() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    long count = 0;
+    long time = 0;
+    for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+      if (info == null || info.getThreadName().startsWith("load")) continue;
+      count += info.getBlockedCount();
+      time += Math.max(0, info.getBlockedTime());
+    }
+    return new long[] { count, time };
+  }
+
+  /**
+   * Returns the percentile of a sorted array of samples.
+   */
+  static long percentile(long[] sorted, double p) {
+    int index = (int)Math.ceil(p * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+  }
+
+  /**
+   * Starts the game in process and waits for it to accept connections.
+   * @param port Port for the game server.
+   */
+  static void startServer(int port) throws InterruptedException {
+    Thread server = new Thread(
+      () -> Game.main(new String[] { String.valueOf(port) }), "load-server");
+    server.setDaemon(true);
+    server.start();
+
+    long limit = System.currentTimeMillis() + SERVER_START_TIMEOUT_MS;
+    while (true) {
+      try {
+        new Socket("localhost", port).close();
+        return;
+      } catch (IOException e) {
+        if (System.currentTimeMillis() > limit || !server.isAlive()) {
+          System.err.println("Game server did not start on port " + port);
+          System.exit(1);
+        }
+        Thread.sleep(100);
+      }
+    }
+  }
+
+  /**
+   * Prints the statistics for a run.
+   * @param stats Statistics for the run.
+   * @param bots Number of bots.
+   * @param seconds Length of the run.
+   * @param blocked Lock contention in the server (count and ms), or null if
+   *   the server was not run in process.
+   */
+  static void report(Stats stats, int bots, int seconds, long[] blocked) {
+    long commands = stats.getCommands();
+    long errors = stats.getErrors();
+    System.out.println(String.format("bots:                 %d (%d playing)",
+      bots, stats.playing));
+    System.out.println(String.format("duration (s):         %d", seconds));
+    System.out.println(String.format("commands:             %d (%.1f/sec)",
+      commands, (double)commands / seconds));
+    System.out.println(String.format("battles:              %d", stats.battles));
+    System.out.println(String.format("errors:               %d (%.2f%%) %s",
+      errors, 100.0 * errorRate(stats), stats.errors));
+    System.out.println();
+
+    System.out.println(String.format("%-10s %8s %10s %10s %10s %10s",
+      "command", "count", "p50 (us)", "p95 (us)", "p99 (us)", "max (us)"));
+    for (Map.Entry<String, List<Long>> entry : stats.latencies.entrySet()) {
+      List<Long> samples = entry.getValue();
+      long[] sorted = new long[samples.size()];
+      for (int i = 0; i < sorted.length; i++) {
+        sorted[i] = samples.get(i);
+      }
+      Arrays.sort(sorted);
+      System.out.println(String.format("%-10s %8d %10d %10d %10d %10d",
+        entry.getKey(), sorted.length, percentile(sorted, 0.50),
+        percentile(sorted, 0.95), percentile(sorted, 0.99),
+        sorted[sorted.length - 1]));
+    }
+    System.out.println();
+
+    if (blocked != null) {
+      System.out.println(String.format("loop mode:            %s",
+        Config.get("game.loop.mode", GameLoop.CONCURRENT)));
+      System.out.println(String.format("blocked on locks:     %d times, %d ms",
+        blocked[0], blocked[1]));
+      Metrics.Histogram lag = Metrics.histogram("clock.tick.lag.us");
+      Metrics.Histogram duration = Metrics.histogram("clock.tick.duration.us");
+      System.out.println(String.format("ticks:                %d",
+        lag.getCount()));
+      System.out.println(String.format("tick lag (us):        p50=%d p99=%d max=%d",
+        lag.getPercentile(0.50), lag.getPercentile(0.99), lag.getMax()));
+      System.out.println(String.format("tick duration (us):   p50=%d p99=%d max=%d",
+        duration.getPercentile(0.50), duration.getPercentile(0.99),
+        duration.getMax()));
+    } else {
+      System.out.println("tick lag:             see the server's clock.* metrics");
+    }
+  }
+
+  /**
+   * @return The fraction of all requests (commands and connections) that
+   *   failed.
+   */
+  static double errorRate(Stats stats) {
+    long errors = stats.getErrors();
+    long total = stats.getCommands() + errors;
+    return total == 0 ? 0.0 : (double)errors / total;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int bots = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+    int port = args.length > 2 ? Integer.parseInt(args[2]) : 4300;
+    double maxErrorRate = args.length > 3 ? Double.parseDouble(args[3]) : 0.05;
+    String host = args.length > 4 ? args[4] : "localhost";
+    boolean inProcess = args.length <= 4;
+
+    if (inProcess) {
+      ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      if (threads.isThreadContentionMonitoringSupported()) {
+        threads.setThreadContentionMonitoringEnabled(true);
+      }
+      startServer(port);
+    }
+
+    String run = Long.toString(System.currentTimeMillis() % 1000000000L, 36);
+    Stats stats = new Stats();
+    long deadline = System.currentTimeMillis() + seconds * 1000L;
+    List<String> names = new ArrayList<>(bots);
+    List<Thread> threads = new ArrayList<>(bots);
+    for (int i = 0; i < bots; i++) {
+      String name = "load" + run + i;
+      names.add(name);
+      Thread thread = new Thread(
+        new Bot(name, host, port, deadline, stats, new Random(i)), name);
+      thread.setDaemon(true);
+      thread.start();
+      threads.add(thread);
+      Thread.sleep(RAMP_UP_MS);
+    }
+    // Measure contention while the bots are playing, before they quit
+    Thread.sleep(Math.max(0, deadline - System.currentTimeMillis()));
+    long[] blocked = inProcess ? contention() : null;
+
+    for (Thread thread : threads) {
+      thread.join(Math.max(1, deadline - System.currentTimeMillis()) +
+        2 * Bot.TIMEOUT_MS);
+    }
+
+    report(stats, bots, seconds, blocked);
+
+    if (inProcess) {
+      // Give the account writer a moment to finish saving before cleaning up
+      Thread.sleep(2000);
+      for (String name : names) {
+        new File("game/accounts/" + name + ".xml").delete();
+      }
+    }
+
+    boolean failed = stats.playing == 0 || errorRate(stats) > maxErrorRate;
+    System.exit(failed ? 1 : 0);
+  }
+}
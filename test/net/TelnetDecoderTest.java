@@ -0,0 +1,139 @@
+package net;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import org.junit.Before;
+import solace.net.TelnetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.List;
+
+public class TelnetDecoderTest {
+  static final int IAC = 255, DONT = 254, DO = 253, WONT = 252, WILL = 251;
+  static final int SB = 250, SE = 240, NOP = 241;
+
+  List<String> lines;
+  List<String> commands;
+  TelnetDecoder decoder;
+
+  @Before
+  public void createDecoder() {
+    lines = new LinkedList<>();
+    commands = new LinkedList<>();
+    decoder = new TelnetDecoder(new TelnetDecoder.Handler() {
+      public void onLine(byte[] line, int length) {
+        lines.add(new String(line, 0, length, StandardCharsets.ISO_8859_1));
+      }
+      public void onNegotiation(int command, int option) {
+        commands.add(command + " " + option);
+      }
+      public void onSubnegotiation(int option, byte[] data, int length) {
+        commands.add("SB " + option + " " +
+          new String(data, 0, length, StandardCharsets.ISO_8859_1));
+      }
+    });
+  }
+
+  void decode(Object... parts) {
+    for (Object part : parts) {
+      if (part instanceof String) {
+        byte[] bytes = ((String)part).getBytes(StandardCharsets.ISO_8859_1);
+        decoder.decode(bytes, 0, bytes.length);
+      } else {
+        decoder.decode((Integer)part);
+      }
+    }
+  }
+
+  @Test
+  public void decodesLinesWithEachTerminator() {
+    decode("one\r\ntwo\ntwo and a half\r\0three\rfour\r\n");
+    assertEquals(5, lines.size());
+    assertEquals("one", lines.get(0));
+    assertEquals("two", lines.get(1));
+    assertEquals("two and a half", lines.get(2));
+    assertEquals("three", lines.get(3));
+    assertEquals("four", lines.get(4));
+  }
+
+  @Test
+  public void decodesEmptyLines() {
+    decode("\r\n\r\n");
+    assertEquals(2, lines.size());
+    assertEquals("", lines.get(0));
+  }
+
+  @Test
+  public void holdsPartialLinesUntilTerminated() {
+    decode("lo", "ok");
+    assertEquals(0, lines.size());
+    decode("\r", "\n");
+    assertEquals(1, lines.size());
+    assertEquals("look", lines.get(0));
+  }
+
+  @Test
+  public void removesNegotiationFromInput() {
+    decode("pass", IAC, DO, 1, "word\r\n");
+    assertEquals(1, lines.size());
+    assertEquals("password", lines.get(0));
+    assertEquals(1, commands.size());
+    assertEquals(DO + " 1", commands.get(0));
+  }
+
+  @Test
+  public void handlesNegotiationSplitAcrossReads() {
+    decode("a", IAC);
+    decode(WONT);
+    decode(86, "b\r\n");
+    assertEquals("ab", lines.get(0));
+    assertEquals(WONT + " 86", commands.get(0));
+  }
+
+  @Test
+  public void handlesEveryNegotiationCommand() {
+    decode(IAC, WILL, 1, IAC, WONT, 2, IAC, DO, 3, IAC, DONT, 4);
+    assertEquals(4, commands.size());
+    assertEquals(WILL + " 1", commands.get(0));
+    assertEquals(DONT + " 4", commands.get(3));
+  }
+
+  @Test
+  public void unescapesDoubledIac() {
+    decode("x", IAC, IAC, "y\n");
+    assertEquals("x\u00ffy", lines.get(0));
+  }
+
+  @Test
+  public void ignoresOtherCommands() {
+    decode("a", IAC, NOP, "b\n");
+    assertEquals("ab", lines.get(0));
+    assertEquals(0, commands.size());
+  }
+
+  @Test
+  public void decodesSubnegotiation() {
+    decode("l", IAC, SB, 201, "Core.Hello {}", IAC, IAC, IAC, SE, "ook\n");
+    assertEquals("look", lines.get(0));
+    assertEquals(1, commands.size());
+    assertEquals("SB 201 Core.Hello {}\u00ff", commands.get(0));
+  }
+
+  @Test
+  public void commandAfterCarriageReturnKeepsLineEnding() {
+    decode("one\r", IAC, DO, 1, "\ntwo\n");
+    assertEquals(2, lines.size());
+    assertEquals("two", lines.get(1));
+  }
+
+  @Test
+  public void truncatesLongLines() {
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < TelnetDecoder.MAX_LINE_LENGTH + 100; i++) {
+      input.append('a');
+    }
+    decode(input.toString(), "\nnext\n");
+    assertEquals(TelnetDecoder.MAX_LINE_LENGTH, lines.get(0).length());
+    assertEquals("next", lines.get(1));
+  }
+}
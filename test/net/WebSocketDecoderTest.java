@@ -0,0 +1,180 @@
+package net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import org.junit.Test;
+import org.junit.Before;
+import solace.net.WebSocket;
+import solace.net.WebSocketDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+public class WebSocketDecoderTest {
+  static final byte[] MASK = { 0x37, (byte)0xfa, 0x21, 0x3d };
+
+  List<String> messages;
+  List<Integer> errors;
+  WebSocketDecoder decoder;
+
+  @Before
+  public void createDecoder() {
+    messages = new LinkedList<>();
+    errors = new LinkedList<>();
+    decoder = new WebSocketDecoder(new WebSocketDecoder.Handler() {
+      public void onMessage(int opcode, byte[] data, int length) {
+        messages.add(opcode + ":" + new String(data, 0, length, StandardCharsets.UTF_8));
+      }
+      public void onError(int status) {
+        errors.add(status);
+      }
+    });
+  }
+
+  /**
+   * Creates a masked client frame.
+   */
+  static byte[] clientFrame(boolean fin, int opcode, String payload) {
+    byte[] data = payload.getBytes(StandardCharsets.UTF_8);
+    byte[] server = WebSocket.frame(opcode, data, 0, data.length);
+    int header = server.length - data.length;
+    byte[] frame = new byte[server.length + 4];
+    System.arraycopy(server, 0, frame, 0, header);
+    if (!fin) frame[0] &= 0x7F;
+    frame[1] |= 0x80;
+    System.arraycopy(MASK, 0, frame, header, 4);
+    for (int i = 0; i < data.length; i++) {
+      frame[header + 4 + i] = (byte)(data[i] ^ MASK[i % 4]);
+    }
+    return frame;
+  }
+
+  void decode(byte[]... frames) {
+    for (byte[] frame : frames) {
+      decoder.decode(frame, 0, frame.length);
+    }
+  }
+
+  @Test
+  public void computesAcceptKey() {
+    assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=",
+      WebSocket.acceptKey("dGhlIHNhbXBsZSBub25jZQ=="));
+  }
+
+  @Test
+  public void decodesMaskedTextFrame() {
+    // Example from RFC 6455, section 5.7
+    decode(new byte[] {
+      (byte)0x81, (byte)0x85, 0x37, (byte)0xfa, 0x21, 0x3d,
+      0x7f, (byte)0x9f, 0x4d, 0x51, 0x58 });
+    assertEquals(1, messages.size());
+    assertEquals(WebSocket.TEXT + ":Hello", messages.get(0));
+  }
+
+  @Test
+  public void decodesFramesSplitAcrossReads() {
+    byte[] frame = clientFrame(true, WebSocket.TEXT, "look");
+    for (byte b : frame) {
+      decoder.decode(new byte[] { b }, 0, 1);
+    }
+    assertEquals(WebSocket.TEXT + ":look", messages.get(0));
+  }
+
+  @Test
+  public void decodesSeveralFramesInOneRead() {
+    byte[] a = clientFrame(true, WebSocket.TEXT, "north");
+    byte[] b = clientFrame(true, WebSocket.TEXT, "south");
+    byte[] both = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, both, a.length, b.length);
+    decode(both);
+    assertEquals(2, messages.size());
+    assertEquals(WebSocket.TEXT + ":south", messages.get(1));
+  }
+
+  @Test
+  public void reassemblesFragmentsAroundControlFrames() {
+    decode(
+      clientFrame(false, WebSocket.TEXT, "say "),
+      clientFrame(true, WebSocket.PING, "ping"),
+      clientFrame(false, WebSocket.CONTINUATION, "hello "),
+      clientFrame(true, WebSocket.CONTINUATION, "there"));
+    assertEquals(2, messages.size());
+    assertEquals(WebSocket.PING + ":ping", messages.get(0));
+    assertEquals(WebSocket.TEXT + ":say hello there", messages.get(1));
+  }
+
+  @Test
+  public void decodesExtendedLengths() {
+    StringBuilder medium = new StringBuilder();
+    for (int i = 0; i < 300; i++) medium.append('m');
+    StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 70000; i++) large.append('l');
+
+    decode(clientFrame(true, WebSocket.TEXT, medium.toString()));
+    assertEquals(WebSocket.TEXT + ":" + medium, messages.get(0));
+
+    decode(clientFrame(true, WebSocket.TEXT, large.toString()));
+    assertEquals(1, errors.size());
+    assertEquals(WebSocket.MESSAGE_TOO_BIG, (int)errors.get(0));
+  }
+
+  @Test
+  public void rejectsUnmaskedFrames() {
+    byte[] data = "look".getBytes(StandardCharsets.UTF_8);
+    decode(WebSocket.frame(WebSocket.TEXT, data, 0, data.length));
+    assertEquals(0, messages.size());
+    assertEquals(WebSocket.PROTOCOL_ERROR, (int)errors.get(0));
+  }
+
+  @Test(timeout = 1000)
+  public void rejectsLengthsWithTheHighBitSet() {
+    decode(new byte[] {
+      (byte)0x81, (byte)0xFF, (byte)0x80, 0, 0, 0, 0, 0, 0, 0,
+      MASK[0], MASK[1], MASK[2], MASK[3], 0x6c, 0x6f, 0x6f });
+    assertEquals(0, messages.size());
+    assertEquals(1, errors.size());
+    assertEquals(WebSocket.PROTOCOL_ERROR, (int)errors.get(0));
+  }
+
+  @Test
+  public void rejectsUnexpectedContinuation() {
+    decode(clientFrame(true, WebSocket.CONTINUATION, "look"));
+    assertEquals(WebSocket.PROTOCOL_ERROR, (int)errors.get(0));
+  }
+
+  @Test
+  public void ignoresInputAfterError() {
+    decode(clientFrame(true, WebSocket.CONTINUATION, "look"),
+      clientFrame(true, WebSocket.TEXT, "look"));
+    assertEquals(0, messages.size());
+    assertEquals(1, errors.size());
+  }
+
+  @Test
+  public void encodesServerFrames() {
+    byte[] data = "Hello".getBytes(StandardCharsets.UTF_8);
+    assertArrayEquals(
+      new byte[] { (byte)0x81, 0x05, 0x48, 0x65, 0x6c, 0x6c, 0x6f },
+      WebSocket.frame(WebSocket.TEXT, data, 0, data.length));
+
+    byte[] medium = new byte[256];
+    byte[] frame = WebSocket.frame(WebSocket.TEXT, medium, 0, medium.length);
+    assertEquals(126, frame[1]);
+    assertEquals(1, frame[2]);
+    assertEquals(0, frame[3]);
+    assertEquals(4 + 256, frame.length);
+
+    byte[] large = new byte[65536];
+    frame = WebSocket.frame(WebSocket.TEXT, large, 0, large.length);
+    assertEquals(127, frame[1]);
+    assertEquals(1, frame[7]);
+    assertEquals(10 + 65536, frame.length);
+  }
+
+  @Test
+  public void encodesCloseFrame() {
+    assertArrayEquals(new byte[] { (byte)0x88, 0x02, 0x03, (byte)0xe8 },
+      WebSocket.closeFrame(WebSocket.NORMAL_CLOSURE));
+  }
+}
@@ -0,0 +1,397 @@
+package sim;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import solace.game.*;
+import solace.game.Character;
+import solace.io.Buffs;
+import solace.io.Config;
+import solace.io.DamageTypes;
+import solace.io.Skills;
+import solace.io.WeaponProficiencies;
+import solace.script.ScriptingEngine;
+
+/**
+ * Simulates battles between characters and mobiles to check the balance of
+ * the constants in {@link Stats} without playing the game. For each level and
+ * mobile power the simulator fights the given number of one on one battles
+ * between a character of the level, equipped with a weapon and armor of its
+ * level, and a mobile of the level and power built from a template. Rounds
+ * are fought by {@link Battle} itself, just as the battle manager fights
+ * them, but without a connection, a room or the game clock, and the battles
+ * are spread over the given number of threads. A character that dies is
+ * revived and rejoins the battle, so that the time to kill the mobile is
+ * still measured.
+ *
+ * For each level and power the simulator reports the time it took the
+ * character to kill the mobile (in game seconds, at the configured tick
+ * length) and how often the character died first. The time to kill a mobile
+ * of power 35 should be close to <code>Stats.BATTLE_TIME_P35</code>.
+ *
+ * Battles are fought in chunks that each have their own seed, derived from
+ * the given seed, and each battle in a chunk is seeded from the chunk's seed,
+ * so that a run with the same arguments gives the same results no matter how
+ * many threads fought it.
+ *
+ * Usage: ant simulate -Dsimulate.args="[battles] [levels] [powers] [weapon]
+ *   [seed] [threads]"
+ *
+ * Where levels and powers are comma separated lists, and weapon is the name
+ * of a weapon proficiency, e.g.
+ * <code>ant simulate -Dsimulate.args="100000 1,10,50 10,35,100"</code>.
+ *
+ * @author Ryan Sandor Richards
+ */
+public class BattleSimulator {
+  static final int MAX_ROUNDS = 1000;
+  static final int CHUNK = 1000;
+  static final String[] ARMOR_SLOTS = {
+    "head", "body", "hands", "legs", "waist", "feet", "off-hand"
+  };
+
+  /**
+   * Results of the battles at a level and power.
+   */
+  static class Result {
+    final int level;
+    final int power;
+    final long[] rounds = new long[MAX_ROUNDS + 1];
+    long battles = 0;
+    long deaths = 0;
+    long attacks = 0;
+    long hits = 0;
+    long mobileAttacks = 0;
+    long mobileHits = 0;
+    int characterHp = 0;
+    int mobileHp = 0;
+
+    Result(int l, int p) {
+      level = l;
+      power = p;
+    }
+
+    /**
+     * Adds the results of a chunk of battles.
+     * @param r Results to add.
+     */
+    synchronized void merge(Result r) {
+      for (int i = 0; i < rounds.length; i++) {
+        rounds[i] += r.rounds[i];
+      }
+      battles += r.battles;
+      deaths += r.deaths;
+      attacks += r.attacks;
+      hits += r.hits;
+      mobileAttacks += r.mobileAttacks;
+      mobileHits += r.mobileHits;
+      characterHp = r.characterHp;
+      mobileHp = r.mobileHp;
+    }
+
+    /**
+     * @param p Percentile, from 0 to 1.
+     * @return The given percentile of the rounds taken to kill the mobile.
+     */
+    int percentile(double p) {
+      long rank = Math.max(1, (long)Math.ceil(p * battles));
+      long seen = 0;
+      for (int i = 0; i < rounds.length; i++) {
+        seen += rounds[i];
+        if (seen >= rank) return i;
+      }
+      return MAX_ROUNDS;
+    }
+
+    /**
+     * @return The mean number of rounds taken to kill the mobile.
+     */
+    double mean() {
+      double sum = 0;
+      for (int i = 0; i < rounds.length; i++) {
+        sum += (double)i * rounds[i];
+      }
+      return battles == 0 ? 0 : sum / battles;
+    }
+  }
+
+  /**
+   * Counts the hits in the messages of a battle round.
+   * @param message Round's messages for a participant.
+   * @param open Character that opens the lines reporting the hits to count
+   *   ('[' for the participant's hits, '<' for the hits it took).
+   * @return The number of hits.
+   */
+  static int hits(String message, char open) {
+    int hits = 0;
+    for (String line : message.split("\n\r")) {
+      line = line.trim();
+      if (line.isEmpty() || line.charAt(0) != open) continue;
+      int times = line.indexOf("{y}");
+      hits += times < 0 ? 1 :
+        Integer.parseInt(line.substring(times + 3, line.indexOf("{x}", times)));
+    }
+    return hits;
+  }
+
+  /**
+   * A character without a connection. It counts the hits reported in the
+   * battle messages it is sent, and records when it dies.
+   */
+  static class SimulatedCharacter extends Character {
+    long hits = 0;
+    long mobileHits = 0;
+    boolean died = false;
+
+    SimulatedCharacter() {
+      super("simulated");
+    }
+
+    @Override
+    public void sendMessage(String msg) {
+      hits += hits(msg, '[');
+      mobileHits += hits(msg, '<');
+    }
+
+    @Override
+    public void send(String msg) {}
+
+    @Override
+    public void die(Player killer) {
+      died = true;
+    }
+  }
+
+  /**
+   * A mobile outside of any room, that records when it dies.
+   */
+  static class SimulatedMobile extends Mobile {
+    boolean died = false;
+
+    SimulatedMobile(Template t) {
+      super(t);
+    }
+
+    @Override
+    public void sendMessage(String msg) {}
+
+    @Override
+    public void die(Player killer) {
+      died = true;
+    }
+  }
+
+  /**
+   * Creates a character of the given level equipped with a weapon and armor of
+   * its level.
+   * @param level Level of the character.
+   * @param weapon Weapon proficiency for the character's weapon.
+   * @return The character.
+   */
+  static SimulatedCharacter character(int level, WeaponProficiency weapon)
+    throws Exception
+  {
+    SimulatedCharacter ch = new SimulatedCharacter();
+    ch.setLevel(level);
+    ch.setMajorStat("strength");
+    ch.setMinorStat("vitality");
+    ch.addSkill(weapon.getSkill(), Math.min(100, level));
+
+    Item item = new Item("simulated-weapon", "weapon", null);
+    item.set("type", "equipment");
+    item.set("slot", "weapon");
+    item.set("proficiency", weapon.getName());
+    item.set("level", String.valueOf(level));
+    ch.equip(item);
+
+    for (String slot : ARMOR_SLOTS) {
+      Item armor = new Item("simulated-" + slot, slot, null);
+      armor.set("type", "equipment");
+      armor.set("slot", slot);
+      armor.set("level", String.valueOf(level));
+      armor.set("ac", String.valueOf(Stats.getArmorBaseAC(level, slot)));
+      ch.equip(armor);
+    }
+    ch.setPassivesAndCooldowns();
+    return ch;
+  }
+
+  /**
+   * Creates a mobile of the given level and power from a template.
+   * @param level Level of the mobile.
+   * @param power Power of the mobile.
+   * @return The mobile.
+   */
+  static SimulatedMobile mobile(int level, int power) {
+    Template template = new Template("simulated-mobile", "mobile", null);
+    template.set("description.name", "a simulated mobile");
+    template.set("level", String.valueOf(level));
+    template.set("power", String.valueOf(power));
+    SimulatedMobile mobile = new SimulatedMobile(template);
+    mobile.setLevel(level);
+    mobile.setPower(power);
+    return mobile;
+  }
+
+  /**
+   * @return The number of attacks a player makes in a round (none while
+   *   stunned, as in {@link Battle}).
+   */
+  static int attacks(Player p) {
+    return p.hasBuff("stun") ? 0 : p.getNumberOfAttacks();
+  }
+
+  /**
+   * Adds a player to a battle, attacking and attacked by an opponent.
+   */
+  static void engage(Battle battle, Player p, Player opponent) {
+    battle.add(p);
+    battle.setAttacking(p, opponent);
+    battle.setAttacking(opponent, p);
+  }
+
+  /**
+   * Fights a chunk of battles at a level and power.
+   * @param level Level of the character and mobile.
+   * @param power Power of the mobile.
+   * @param battles Number of battles to fight.
+   * @param weapon Weapon proficiency for the character.
+   * @param seed Seed for the chunk's rolls.
+   * @return The results of the battles.
+   */
+  static Result fight(
+    int level,
+    int power,
+    int battles,
+    WeaponProficiency weapon,
+    long seed
+  ) throws Exception {
+    SplittableRandom seeds = new SplittableRandom(seed);
+    SimulatedCharacter ch = character(level, weapon);
+    SimulatedMobile mobile = mobile(level, power);
+    Result result = new Result(level, power);
+    result.characterHp = ch.getMaxHp();
+    result.mobileHp = mobile.getMaxHp();
+
+    for (int b = 0; b < battles; b++) {
+      ch.setHp(ch.getMaxHp());
+      ch.died = false;
+      mobile.setHp(mobile.getMaxHp());
+      mobile.died = false;
+      Battle battle = new Battle();
+      battle.seed(seeds.nextLong());
+      battle.add(ch);
+      engage(battle, mobile, ch);
+
+      boolean died = false;
+      int round = 0;
+      while (!mobile.died && round < MAX_ROUNDS) {
+        round++;
+        result.attacks += attacks(ch);
+        result.mobileAttacks += attacks(mobile);
+        battle.round();
+        if (ch.died) {
+          ch.died = false;
+          if (!died) {
+            died = true;
+            result.deaths++;
+          }
+          if (!mobile.died) {
+            ch.setHp(ch.getMaxHp());
+            engage(battle, ch, mobile);
+          }
+        }
+      }
+      battle.remove(ch);
+      battle.remove(mobile);
+      result.rounds[round]++;
+      result.battles++;
+    }
+    result.hits = ch.hits;
+    result.mobileHits = ch.mobileHits;
+    return result;
+  }
+
+  /**
+   * Derives the seed for a chunk of battles.
+   */
+  static long seedFor(long seed, int level, int power, int chunk) {
+    long key = ((long)level << 40) ^ ((long)power << 20) ^ chunk;
+    return seed + 0x9E3779B97F4A7C15L * (key + 1);
+  }
+
+  static int[] parseList(String list) {
+    return Arrays.stream(list.split("\\s*,\\s*")).mapToInt(Integer::parseInt).toArray();
+  }
+
+  public static void main(String[] args) throws Exception {
+    int battles = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    int[] levels = parseList(args.length > 1 ? args[1] : "1,5,10,20,35,50");
+    int[] powers = parseList(args.length > 2 ? args[2] : "10,35,70,100");
+    String weaponName = args.length > 3 ? args[3] : "longsword";
+    long seed = args.length > 4 ? Long.parseLong(args[4]) : 0L;
+    int threads = args.length > 5 ? Integer.parseInt(args[5]) :
+      Runtime.getRuntime().availableProcessors();
+
+    Config.load();
+    DamageTypes.getInstance().reload();
+    WeaponProficiencies.getInstance().reload();
+    Skills.getInstance().reload();
+    Buffs.initialize();
+    ScriptingEngine.reload();
+    WeaponProficiency weapon = WeaponProficiencies.getInstance().get(weaponName);
+    double roundSeconds = BattleManager.ROUND_TICKS *
+      Long.parseLong(Config.get("game.clock.tick", "1000")) / 1000.0;
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Result> results = new ArrayList<>();
+    List<Future<?>> futures = new ArrayList<>();
+    long start = System.nanoTime();
+    for (int level : levels) {
+      for (int power : powers) {
+        Result total = new Result(level, power);
+        results.add(total);
+        for (int chunk = 0; chunk * CHUNK < battles; chunk++) {
+          int n = Math.min(CHUNK, battles - chunk * CHUNK);
+          long chunkSeed = seedFor(seed, level, power, chunk);
+          futures.add(pool.submit(() -> {
+            total.merge(fight(level, power, n, weapon, chunkSeed));
+            return null;
+          }));
+        }
+      }
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    pool.shutdown();
+    double elapsed = (System.nanoTime() - start) / 1e9;
+    double rounds = 0;
+    for (Result r : results) {
+      rounds += r.mean() * r.battles;
+    }
+
+    System.out.println(String.format(
+      "battles: %d per level and power, weapon: %s, seed: %d, threads: %d",
+      battles, weaponName, seed, threads));
+    System.out.println(String.format("rounds: %.0f in %.1fs (%.0f/s)",
+      rounds, elapsed, rounds / elapsed));
+    System.out.println(String.format(
+      "round: %.1fs, target time to kill a power 35 mobile: %ds",
+      roundSeconds, Stats.BATTLE_TIME_P35));
+    System.out.println(String.format(
+      "%5s %5s %6s %6s %6s %6s %8s %8s %8s %8s %8s %7s",
+      "level", "power", "mob hp", "ch hp", "hit%", "mob%",
+      "p10 (s)", "p50 (s)", "p90 (s)", "mean (s)", "/target", "deaths%"));
+    for (Result r : results) {
+      double mean = r.mean() * roundSeconds;
+      System.out.println(String.format(
+        "%5d %5d %6d %6d %6.1f %6.1f %8.0f %8.0f %8.0f %8.1f %8.2f %7.2f",
+        r.level, r.power, r.mobileHp, r.characterHp,
+        100.0 * r.hits / r.attacks, 100.0 * r.mobileHits / r.mobileAttacks,
+        r.percentile(0.10) * roundSeconds, r.percentile(0.50) * roundSeconds,
+        r.percentile(0.90) * roundSeconds, mean, mean / Stats.BATTLE_TIME_P35,
+        100.0 * r.deaths / r.battles));
+    }
+  }
+}
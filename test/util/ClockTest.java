@@ -0,0 +1,249 @@
+package util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.Before;
+import solace.util.Clock;
+import java.util.LinkedList;
+import java.util.List;
+
+public class ClockTest {
+  Clock clock;
+  List<String> log;
+
+  @Before
+  public void createClock() {
+    clock = Clock.simulated(100);
+    log = new LinkedList<>();
+  }
+
+  @Test
+  public void runsEventsWhenAdvanced() {
+    clock.schedule("once", 3, () -> log.add("once@" + clock.getTicks()));
+    clock.interval("every", 2, () -> log.add("every@" + clock.getTicks()));
+    clock.advance(6);
+    assertEquals(6, clock.getTicks());
+    assertEquals("[every@2, once@3, every@4, every@6]", log.toString());
+  }
+
+  @Test
+  public void cancelsEvents() {
+    Clock.Event event = clock.interval("every", 1, () -> log.add("tick"));
+    clock.advance(3);
+    event.cancel();
+    clock.advance(3);
+    assertEquals(3, log.size());
+    assertEquals(0, clock.getEventCount());
+  }
+
+  @Test
+  public void eventsMayScheduleEvents() {
+    clock.schedule("first", 2, () -> {
+      log.add("first@" + clock.getTicks());
+      clock.schedule("second", 2, () -> log.add("second@" + clock.getTicks()));
+    });
+    clock.advance(10);
+    assertEquals("[first@2, second@4]", log.toString());
+  }
+
+  @Test
+  public void runsHandOffsAfterPartitions() {
+    clock.schedule("a1", 1, () -> {
+      log.add("a1");
+      Clock.handOff(() -> log.add("a-handoff"));
+    }, "a");
+    clock.schedule("b1", 1, () -> log.add("b1"), "b");
+    clock.schedule("a2", 1, () -> log.add("a2"), "a");
+    clock.advance(1);
+    assertEquals("[a1, a2, b1, a-handoff]", log.toString());
+  }
+
+  @Test
+  public void findsPartitionsWhenEventsFire() {
+    String[] where = { "a" };
+    clock.interval("mover", 1, () -> log.add("mover@" + where[0]),
+      (Clock.Partitioner)() -> where[0]);
+    clock.schedule("a2", 2, () -> log.add("a2"), "a");
+    clock.schedule("b2", 2, () -> log.add("b2"), "b");
+    clock.advance(1);
+    where[0] = "b";
+    clock.advance(1);
+    assertEquals("[mover@a, a2, b2, mover@b]", log.toString());
+  }
+
+  @Test
+  public void runsPartitionsInParallel() {
+    List<String> synced = java.util.Collections.synchronizedList(log);
+    clock.setPartitionThreads(4);
+    for (String area : new String[] { "a", "b", "c", "d" }) {
+      clock.interval(area, 1, () -> synced.add(area), area);
+    }
+    clock.schedule("handoff", 2, () -> Clock.handOff(() -> synced.add("x")), "a");
+    clock.advance(2);
+    assertEquals(9, log.size());
+    assertEquals("x", log.get(8));
+  }
+
+  @Test
+  public void offsetsIntervalsByPhase() {
+    clock.interval("phased", 5, () -> log.add("at" + clock.getTicks()), null, 2, 0);
+    clock.advance(12);
+    assertEquals("[at2, at7, at12]", log.toString());
+  }
+
+  @Test
+  public void jittersIntervalsWithoutDrift() {
+    List<Long> runs = new LinkedList<>();
+    clock.interval("jittered", 10, () -> runs.add(clock.getTicks()), null, 10, 3);
+    clock.advance(1005);
+    assertEquals(100, runs.size());
+    for (int i = 0; i < runs.size(); i++) {
+      long nominal = 10 * (i + 1);
+      assertTrue(Math.abs(runs.get(i) - nominal) <= 3);
+    }
+  }
+
+  @Test
+  public void spreadsPhasesAcrossThePeriod() {
+    int[] counts = new int[10];
+    for (int i = 0; i < 1000; i++) {
+      long phase = Clock.phaseFor("item" + i, 10);
+      assertTrue(phase >= 0 && phase < 10);
+      counts[(int)phase]++;
+    }
+    for (int count : counts) {
+      assertTrue(count > 50);
+    }
+  }
+
+  @Test
+  public void runsEventsInPriorityOrder() {
+    Clock.setPriority("order-low", Clock.Priority.LOW);
+    Clock.setPriority("order-high", Clock.Priority.HIGH);
+    clock.schedule("order-low: a", 1, () -> log.add("low"));
+    clock.schedule("order-normal", 1, () -> log.add("normal"));
+    clock.schedule("order-high: b", 1, () -> log.add("high"));
+    clock.advance(1);
+    assertEquals("[high, normal, low]", log.toString());
+  }
+
+  @Test
+  public void defersLowPriorityEventsOverBudget() {
+    Clock.setPriority("budget-low", Clock.Priority.LOW);
+    clock.setBudgetMillis(1);
+    clock.schedule("busy", 1, () -> {
+      long end = System.nanoTime() + 3000000;
+      while (System.nanoTime() < end);
+      log.add("busy@" + clock.getTicks());
+    });
+    clock.schedule("budget-low", 1, () -> log.add("low@" + clock.getTicks()));
+    clock.advance(2);
+    assertEquals("[busy@1, low@2]", log.toString());
+  }
+
+  @Test
+  public void runsDeferredEventsEventually() {
+    Clock.setPriority("starved", Clock.Priority.LOW);
+    clock.setBudgetMillis(1);
+    clock.interval("hog", 1, () -> {
+      long end = System.nanoTime() + 2000000;
+      while (System.nanoTime() < end);
+    });
+    clock.schedule("starved", 1, () -> log.add("starved@" + clock.getTicks()));
+    clock.advance(Clock.MAX_DEFERRALS + 2);
+    assertEquals("[starved@" + (Clock.MAX_DEFERRALS + 1) + "]", log.toString());
+  }
+
+  @Test
+  public void runsStarvedIntervalsEventually() {
+    Clock.setPriority("starved-interval", Clock.Priority.LOW);
+    clock.setBudgetMillis(1);
+    clock.interval("hog", 1, () -> {
+      long end = System.nanoTime() + 2000000;
+      while (System.nanoTime() < end);
+    });
+    clock.interval("starved-interval", 1, () -> log.add("starved@" + clock.getTicks()));
+    clock.advance(Clock.MAX_DEFERRALS + 1);
+    assertEquals("[starved@" + (Clock.MAX_DEFERRALS + 1) + "]", log.toString());
+  }
+
+  @Test
+  public void dropsDeferredRunsOfCancelledEvents() {
+    Clock.setPriority("cancelled-low", Clock.Priority.LOW);
+    clock.setBudgetMillis(1);
+    clock.schedule("busy", 1, () -> {
+      long end = System.nanoTime() + 3000000;
+      while (System.nanoTime() < end);
+    });
+    Clock.Event event = clock.schedule("cancelled-low", 1, () -> log.add("low"));
+    clock.advance(1);
+    event.cancel();
+    clock.advance(2);
+    assertEquals("[]", log.toString());
+  }
+
+  @Test
+  public void mergesDeferredRunsWithTheNextRunOfAnInterval() {
+    Clock.setPriority("merged-low", Clock.Priority.LOW);
+    clock.setBudgetMillis(1);
+    clock.schedule("busy", 1, () -> {
+      long end = System.nanoTime() + 3000000;
+      while (System.nanoTime() < end);
+    });
+    clock.interval("merged-low", 1, () -> log.add("low@" + clock.getTicks()));
+    clock.advance(3);
+    assertEquals("[low@2, low@3]", log.toString());
+  }
+
+  @Test
+  public void profilesEventsByKind() {
+    Clock.Event interval = clock.interval("profiled: a", 1, () -> {});
+    clock.schedule("profiled: b", 2, () -> {});
+    clock.schedule("profiled: c", 100, () -> {});
+    clock.advance(3);
+    Clock.Profile profile = null;
+    for (Clock.Profile p : Clock.getProfiles()) {
+      if (p.getKind().equals("profiled")) profile = p;
+    }
+    assertEquals(4, profile.getFires());
+    assertEquals(2, profile.getLive());
+    interval.cancel();
+    for (Clock.Profile p : Clock.getProfiles()) {
+      if (p.getKind().equals("profiled")) profile = p;
+    }
+    assertEquals(1, profile.getLive());
+  }
+
+  @Test
+  public void runsTickListenersEachTick() {
+    clock.addTickListener(() -> log.add("listener"));
+    clock.advance(5);
+    assertEquals(5, log.size());
+  }
+
+  @Test
+  public void advancesSimulatedTime() {
+    clock.advance(10);
+    assertEquals(1000000000L, clock.getTimeSource().nanoTime());
+    assertEquals(0, clock.getLag());
+  }
+
+  @Test
+  public void stepsManyTicksQuickly() {
+    int[] fired = { 0 };
+    for (int i = 1; i <= 100; i++) {
+      clock.interval("load", i, () -> fired[0]++);
+    }
+    long start = System.nanoTime();
+    clock.advance(10000);
+    long elapsed = System.nanoTime() - start;
+    assertTrue(fired[0] > 10000);
+    assertTrue("10k ticks took " + elapsed / 1000000 + "ms", elapsed < 1000000000L);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void onlyAdvancesSimulatedClocks() {
+    new Clock().advance(1);
+  }
+}
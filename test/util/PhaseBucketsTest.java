@@ -0,0 +1,55 @@
+package util;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import solace.util.Clock;
+import solace.util.PhaseBuckets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PhaseBucketsTest {
+  static final int PERIOD = 10;
+
+  static PhaseBuckets<String> buckets(int n) {
+    PhaseBuckets<String> buckets = new PhaseBuckets<>(PERIOD, s -> s);
+    for (int i = 0; i < n; i++) {
+      buckets.add("player" + i);
+    }
+    return buckets;
+  }
+
+  @Test
+  public void visitsEachItemOnItsPhase() {
+    PhaseBuckets<String> buckets = buckets(50);
+    List<String> seen = new ArrayList<>();
+    for (long tick = 0; tick < PERIOD; tick++) {
+      final long t = tick;
+      buckets.forEachDue(tick, s -> {
+        assertEquals(t, Clock.phaseFor(s, PERIOD));
+        seen.add(s);
+      });
+    }
+    assertEquals(50, seen.size());
+  }
+
+  @Test
+  public void visitsSkippedPhasesOnce() {
+    PhaseBuckets<String> buckets = buckets(50);
+    List<String> seen = new ArrayList<>();
+    buckets.forEachDue(0, seen::add);
+    buckets.forEachDue(0, seen::add);
+    buckets.forEachDue(PERIOD - 1, seen::add);
+    buckets.forEachDue(5 * PERIOD, seen::add);
+    assertEquals(50 + 50, seen.size());
+  }
+
+  @Test
+  public void removedItemsAreNotVisited() {
+    PhaseBuckets<String> buckets = buckets(1);
+    buckets.remove("player0");
+    List<String> seen = new ArrayList<>();
+    buckets.forEachDue(PERIOD - 1, seen::add);
+    buckets.forEachDue(2 * PERIOD, seen::add);
+    assertEquals(0, seen.size());
+  }
+}
@@ -0,0 +1,120 @@
+package util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Test;
+import solace.util.Roll;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+public class RollTest {
+  static final int SAMPLES = 200000;
+  static final int MEAN = 600;
+
+  @After
+  public void unseed() {
+    Roll.unseed();
+  }
+
+  /**
+   * The mean, standard deviation and excess kurtosis of a sample.
+   */
+  static double[] moments(int[] samples) {
+    double mean = 0;
+    for (int x : samples) mean += x;
+    mean /= samples.length;
+    double m2 = 0;
+    double m4 = 0;
+    for (int x : samples) {
+      double d = x - mean;
+      m2 += d * d;
+      m4 += d * d * d * d;
+    }
+    m2 /= samples.length;
+    m4 /= samples.length;
+    return new double[] { mean, Math.sqrt(m2), m4 / (m2 * m2) - 3 };
+  }
+
+  /**
+   * Normal rolls as they were made before, by summing twelve doubles.
+   */
+  static int summedDoubles(Random random, int mean) {
+    double sum = 0.0;
+    for (int i = 0; i < 12; i++) {
+      sum += random.nextDouble();
+    }
+    return (int)(2 * mean * sum / 12);
+  }
+
+  @Test
+  public void normalMatchesSummedDoubles() {
+    Roll.seed(1);
+    Random random = new Random(1);
+    int[] rolls = new int[SAMPLES];
+    int[] before = new int[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      rolls[i] = Roll.normal(MEAN);
+      before[i] = summedDoubles(random, MEAN);
+    }
+    double[] actual = moments(rolls);
+    double[] expected = moments(before);
+    // Standard errors are about 0.22 for the mean, 0.16 for the deviation and
+    // 0.011 for the kurtosis
+    assertEquals(expected[0], actual[0], 1.0);
+    assertEquals(MEAN / 6.0, actual[1], 1.0);
+    assertEquals(expected[1], actual[1], 1.0);
+    assertEquals(expected[2], actual[2], 0.05);
+  }
+
+  @Test
+  public void normalStaysBetweenZeroAndTwiceTheMean() {
+    Roll.seed(2);
+    for (int mean : new int[] { 0, 1, 7, 100, 5000 }) {
+      for (int i = 0; i < 10000; i++) {
+        int roll = Roll.normal(mean);
+        assertTrue(roll >= 0);
+        assertTrue(roll <= 2 * mean);
+      }
+    }
+  }
+
+  @Test
+  public void sameSeedGivesTheSameRolls() {
+    int[] first = new int[100];
+    int[] second = new int[100];
+    Roll.seed(3);
+    for (int i = 0; i < first.length; i++) first[i] = Roll.normal(MEAN);
+    Roll.seed(3);
+    for (int i = 0; i < second.length; i++) second[i] = Roll.normal(MEAN);
+    assertArrayEquals(first, second);
+  }
+
+  @Test
+  public void useInstallsAndRestoresAGenerator() {
+    Roll.seed(4);
+    double expected = new SplittableRandom(4).nextDouble();
+    SplittableRandom previous = Roll.use(new SplittableRandom(5));
+    assertEquals(new SplittableRandom(5).nextDouble(), Roll.uniform(), 0.0);
+    Roll.use(previous);
+    assertEquals(expected, Roll.uniform(), 0.0);
+  }
+
+  @Test
+  public void threadsRollIndependently() throws InterruptedException {
+    double[][] rolls = new double[2][10];
+    Thread[] threads = new Thread[2];
+    for (int t = 0; t < threads.length; t++) {
+      final double[] out = rolls[t];
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < out.length; i++) out[i] = Roll.uniform();
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) thread.join();
+    assertFalse(Arrays.equals(rolls[0], rolls[1]));
+  }
+}
@@ -0,0 +1,149 @@
+package util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.Before;
+import solace.util.TimingWheel;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+public class TimingWheelTest {
+  TimingWheel wheel;
+  List<TestTimer> expired;
+
+  class TestTimer extends TimingWheel.Timer {
+    final String name;
+    long expiredAt = -1;
+    long interval = 0;
+
+    TestTimer(String n) {
+      name = n;
+    }
+
+    protected void expire() {
+      expiredAt = wheel.getTime();
+      expired.add(this);
+      if (interval > 0) {
+        wheel.add(this, interval);
+      }
+    }
+  }
+
+  @Before
+  public void createWheel() {
+    wheel = new TimingWheel();
+    expired = new LinkedList<>();
+  }
+
+  void advance(long ticks) {
+    for (long i = 0; i < ticks; i++) {
+      wheel.advance();
+    }
+  }
+
+  void assertExpiresAfter(long delay) {
+    createWheel();
+    TestTimer timer = new TestTimer("t");
+    wheel.add(timer, delay);
+    advance(delay - 1);
+    assertFalse("early for delay " + delay, timer.expiredAt >= 0);
+    wheel.advance();
+    assertEquals("delay " + delay, delay, timer.expiredAt);
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void expiresAtDeadlineOnEachLevel() {
+    long[] delays = { 1, 2, 255, 256, 257, 511, 65535, 65536, 65537, 100000,
+      (1 << 24) + 3 };
+    for (long delay : delays) {
+      assertExpiresAfter(delay);
+    }
+  }
+
+  @Test
+  public void treatsZeroDelayAsOneTick() {
+    TestTimer timer = new TestTimer("t");
+    wheel.add(timer, 0);
+    assertEquals(1, wheel.advance());
+    assertEquals(1, timer.expiredAt);
+  }
+
+  @Test
+  public void cancelsTimers() {
+    TestTimer a = new TestTimer("a");
+    TestTimer b = new TestTimer("b");
+    wheel.add(a, 300);
+    wheel.add(b, 300);
+    assertEquals(2, wheel.size());
+    assertTrue(wheel.cancel(a));
+    assertFalse(wheel.cancel(a));
+    assertFalse(a.isScheduled());
+    assertEquals(1, wheel.size());
+    advance(300);
+    assertEquals(1, expired.size());
+    assertEquals("b", expired.get(0).name);
+  }
+
+  @Test
+  public void reschedulesTimersThatAreAlreadyScheduled() {
+    TestTimer timer = new TestTimer("t");
+    wheel.add(timer, 10);
+    wheel.add(timer, 20);
+    assertEquals(1, wheel.size());
+    advance(20);
+    assertEquals(1, expired.size());
+    assertEquals(20, timer.expiredAt);
+  }
+
+  @Test
+  public void expiresTimersInTheOrderTheyWereAdded() {
+    for (String name : new String[] { "a", "b", "c" }) {
+      wheel.add(new TestTimer(name), 1000);
+    }
+    advance(1000);
+    assertEquals(3, expired.size());
+    assertEquals("a", expired.get(0).name);
+    assertEquals("b", expired.get(1).name);
+    assertEquals("c", expired.get(2).name);
+  }
+
+  @Test
+  public void timersMayRescheduleThemselves() {
+    TestTimer timer = new TestTimer("interval");
+    timer.interval = 100;
+    wheel.add(timer, 100);
+    advance(1000);
+    assertEquals(10, expired.size());
+    assertTrue(timer.isScheduled());
+    wheel.cancel(timer);
+    advance(1000);
+    assertEquals(10, expired.size());
+  }
+
+  @Test
+  public void expiresRandomTimersAtTheirDeadlines() {
+    Random random = new Random(42);
+    List<TestTimer> timers = new LinkedList<>();
+    List<Long> deadlines = new LinkedList<>();
+    for (int i = 0; i < 5000; i++) {
+      // Stagger when timers are added so they cascade from many positions
+      if (i % 10 == 0) {
+        advance(random.nextInt(50));
+      }
+      TestTimer timer = new TestTimer("t" + i);
+      long delay = 1 + random.nextInt(200000);
+      wheel.add(timer, delay);
+      timers.add(timer);
+      deadlines.add(wheel.getTime() + delay);
+    }
+    advance(250000);
+    assertEquals(5000, expired.size());
+    for (int i = 0; i < timers.size(); i++) {
+      assertEquals((long)deadlines.get(i), timers.get(i).expiredAt);
+    }
+  }
+}